@@ -1,28 +1,81 @@
 package redis.embedded;
 
+import com.google.common.base.Throwables;
+import com.google.common.io.Files;
 import org.apache.commons.io.IOUtils;
+import redis.embedded.affinity.Taskset;
 import redis.embedded.exceptions.EmbeddedRedisException;
+import redis.embedded.stop.TerminateStopStrategy;
+import redis.embedded.util.FileLinks;
+import redis.embedded.util.ProcessUtil;
+import redis.embedded.util.RespClient;
 
 import java.io.*;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.EnumMap;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 abstract class AbstractRedisInstance implements Redis {
+    private static final String DEFAULT_HOST = "127.0.0.1";
+    private static final long FAILED_START_EXIT_TIMEOUT_SECONDS = 5L;
+    static final String SEED_FILENAME = "seed.rdb";
+    static final int PORT_BIND_ATTEMPTS = 10;
+    // the plain startup line, or the logo printed with always-show-logo
+    private static final Pattern BOUND_PORT_PATTERN = Pattern.compile(".*(?:Running mode=\\w+, port=(\\d+)\\.|\\sPort: (\\d+)\\b).*");
+    // strerror texts differ between libcs: "Address already in use" on glibc and Darwin, "Address in use" on musl
+    private static final Pattern PORT_IN_USE = Pattern.compile("Could not create server TCP listening socket|Address (already )?in use");
 
     protected List<String> args = Collections.emptyList();
     private volatile boolean active = false;
-    private Process redisProcess;
-    private final int port;
+    private volatile Process redisProcess;
+    private volatile int port;
+    private PortProvider portCandidates;
     private final int tlsPort;
+    private Path unixSocket;
+    private CpuAffinity cpuAffinity;
+    private int cpus = 1;
+    private CpuSet cpuSet;
+    private boolean cpusHeld;
+    private MemoryBudget memoryBudget;
+    private long maxmemoryBytes;
+    private CompletableFuture<MemoryBudget.Reservation> pendingMemory;
+    private MemoryBudget.Reservation memoryReservation;
 
-    private ExecutorService executor;
+    private String host = DEFAULT_HOST;
+    private ReadinessStrategy readinessStrategy;
+    private ReadinessStrategy replicaSyncStrategy;
+
+    private Map<StartupPhase, Duration> buildPhases = new EnumMap<StartupPhase, Duration>(StartupPhase.class);
+    private long startupTimeoutMillis = 0L;
+    private StartupClock startupClock;
+    private File workingDirectory;
+    private Path seed;
+
+    private final LogRingBuffer logBuffer;
+    private RedisLogSink logSink;
+    private LogDrainer.Registration logs;
+    private StopStrategy stopStrategy;
+    private StopReport stopReport;
+    private CompletableFuture<? extends Redis> pendingStart;
+    private boolean startCancelled;
 
     protected AbstractRedisInstance(int port, int tlsPort) {
         this.port = port;
         this.tlsPort = tlsPort;
+        this.logBuffer = new LogRingBuffer(name());
     }
 
     protected AbstractRedisInstance(int port) {
@@ -33,73 +86,486 @@ abstract class AbstractRedisInstance implements Redis {
         return active;
     }
 
-    public synchronized void start() throws EmbeddedRedisException {
-        if (active) {
-            throw new EmbeddedRedisException("This redis server instance is already running...");
+    public void start() throws EmbeddedRedisException {
+        ParallelExecution.await(startAsync());
+    }
+
+    public synchronized CompletableFuture<? extends Redis> startAsync() {
+        if (active || isStarting()) {
+            return failedFuture(new EmbeddedRedisException("This redis server instance is already running..."));
         }
+        final StartupClock clock = new StartupClock(buildPhases, replicaSyncStrategy != null ? StartupPhase.REPLICA_SYNC : StartupPhase.READY);
+        startupClock = clock;
+        startCancelled = false;
+        // nothing of this start runs until it is spawned
+        redisProcess = null;
+        logBuffer.source(name());
         try {
-            redisProcess = createRedisProcessBuilder().start();
-            installExitHook();
-            logErrors();
-            awaitRedisServerReady();
-            active = true;
+            beforeStart();
         } catch (IOException e) {
-            throw new EmbeddedRedisException("Failed to start Redis instance", e);
+            return failedFuture(new EmbeddedRedisException("Failed to prepare Redis instance", e));
         }
+        if (seed != null) {
+            try {
+                FileLinks.materialize(seed, workingDirectory().toPath().resolve(SEED_FILENAME));
+            } catch (IOException e) {
+                return failedFuture(new EmbeddedRedisException("Failed to seed Redis instance from " + seed, e));
+            }
+            clock.completed(StartupPhase.SEED);
+        }
+        final CpuSet acquired = acquireCpus();
+        final CompletableFuture<MemoryBudget.Reservation> memory = reserveMemory();
+        pendingStart = memory.thenCompose(reservation -> {
+            holdMemory(reservation);
+            if (reservation != null) {
+                clock.completed(StartupPhase.QUEUE);
+            }
+            // the budget bounds the wait for memory itself, so the startup deadline only starts now
+            final ScheduledFuture<?> timeout = startupTimeoutMillis > 0 ? ParallelExecution.SCHEDULER.schedule(
+                    () -> onStartupTimeout(clock), startupTimeoutMillis, TimeUnit.MILLISECONDS) : null;
+            final CompletableFuture<Redis> started = startAttempt(clock, 1);
+            if (timeout != null) {
+                started.whenComplete((redis, failure) -> timeout.cancel(false));
+            }
+            return started;
+        });
+        pendingStart.whenComplete((redis, failure) -> {
+            if (failure != null) {
+                releaseCpus(acquired);
+                memory.thenAccept(this::releaseMemory);
+            }
+        });
+        return pendingStart;
     }
 
-    private void installExitHook() {
-        Runtime.getRuntime().addShutdownHook(new Thread(this::stop, "RedisInstanceCleaner"));
+    /**
+     * Spawns the process once. With port candidates, a process that fails to bind its candidate is
+     * replaced by one trying the next candidate, up to {@value #PORT_BIND_ATTEMPTS} times.
+     */
+    private synchronized CompletableFuture<Redis> startAttempt(StartupClock clock, int attempt) {
+        if (clock.overrunPhase() != null) {
+            return failedFuture(new EmbeddedRedisException("Redis instance did not become ready within " + startupTimeoutMillis + "ms: " + clock.report()));
+        }
+        if (startCancelled) {
+            return failedFuture(new EmbeddedRedisException("Redis instance was stopped while starting"));
+        }
+        if (portCandidates != null) {
+            try {
+                port = 0;
+                setArgument("--port", Integer.toString(portCandidates.next()));
+            } catch (RuntimeException e) {
+                return failedFuture(e);
+            }
+        }
+        final Process process;
+        try {
+            process = createRedisProcessBuilder().start();
+        } catch (IOException e) {
+            return failedFuture(new EmbeddedRedisException("Failed to start Redis instance", e));
+        }
+        clock.completed(StartupPhase.SPAWN);
+        redisProcess = process;
+        if (memoryReservation != null) {
+            memoryReservation.attach(ProcessUtil.pid(process));
+        }
+        RedisInstanceRegistry.register(this, process);
+        final LogDrainer.Registration processLogs = LogDrainer.register(process, logBuffer, logSink, clock);
+        logs = processLogs;
+        return CompletableFuture.supplyAsync(() -> {
+            awaitRedisServerReady(process, processLogs, clock);
+            return (Redis) this;
+        }, ParallelExecution.ASYNC_EXECUTOR).whenComplete((redis, failure) -> onStartCompleted(process, failure))
+                .handle((redis, failure) -> {
+                    if (failure == null) {
+                        return CompletableFuture.completedFuture(redis);
+                    }
+                    if (attempt < PORT_BIND_ATTEMPTS && Throwables.getRootCause(failure) instanceof PortInUseException) {
+                        return startAttempt(clock, attempt + 1);
+                    }
+                    return AbstractRedisInstance.<Redis>failedFuture(failure);
+                }).thenCompose(Function.identity());
     }
 
-    private void logErrors() {
-        final InputStream errorStream = redisProcess.getErrorStream();
-        BufferedReader reader = new BufferedReader(new InputStreamReader(errorStream));
-        Runnable printReaderTask = new PrintReaderRunnable(reader);
-        executor = Executors.newSingleThreadExecutor();
-        executor.submit(printReaderTask);
+    /**
+     * Called before every start, before anything is spawned; lets subclasses update arguments and files
+     * that depend on other instances.
+     */
+    protected void beforeStart() throws IOException {
     }
 
-    private void awaitRedisServerReady() throws IOException {
-        BufferedReader reader = new BufferedReader(new InputStreamReader(redisProcess.getInputStream()));
+    private synchronized void onStartCompleted(Process process, Throwable failure) {
+        if (process != redisProcess) {
+            return;
+        }
+        if (failure == null) {
+            active = true;
+        } else {
+            RedisInstanceRegistry.unregister(this, process);
+            process.destroy();
+            try {
+                // so that a retry finds the port released
+                process.waitFor(FAILED_START_EXIT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private synchronized void onStartupTimeout(StartupClock clock) {
+        final StartupPhase overrun = clock.expire();
+        if (overrun == null) {
+            return;
+        }
+        // before the spawn, the start fails as soon as it gets to spawning
+        if (overrun != StartupPhase.SPAWN && redisProcess != null) {
+            // unblocks the readiness strategy, which then fails the start
+            redisProcess.destroyForcibly();
+        }
+    }
+
+    /**
+     * Returns phase timings of the most recent start, or of the build if this instance was never started.
+     */
+    public synchronized StartupReport startupReport() {
+        return startupClock != null ? startupClock.report() : new StartupReport(buildPhases, null);
+    }
+
+    private boolean isStarting() {
+        return pendingStart != null && !pendingStart.isDone();
+    }
+
+    /**
+     * Returns the operating system pid of the Redis process, or {@link ProcessUtil#UNKNOWN_PID} if this
+     * instance has not been started.
+     */
+    public synchronized long pid() {
+        return redisProcess != null && (active || isStarting()) ? ProcessUtil.pid(redisProcess) : ProcessUtil.UNKNOWN_PID;
+    }
+
+    private void awaitRedisServerReady(Process process, LogDrainer.Registration processLogs, StartupClock clock) {
+        BufferedReader reader = new BufferedReader(processLogs.readinessOutput());
         try {
-            StringBuilder outputStringBuilder = new StringBuilder();
-            String outputLine;
-            do {
-                outputLine = reader.readLine();
-                if (outputLine == null) {
-                    // Something is wrong. Stream ended before server was activated.
-                    throw new EmbeddedRedisException("Redis server failed to become ready. Check logs for details. Redis process log: " + outputStringBuilder.toString());
-                } else {
-                    outputStringBuilder.append("\n");
-                    outputStringBuilder.append(outputLine);
+            if (portCandidates != null) {
+                port = awaitBoundPort(reader);
+                logBuffer.source(name());
+            }
+            final ReadinessContext context = new ProcessReadinessContext(process, reader);
+            readinessStrategy().awaitReady(context);
+            if (!clock.completed(StartupPhase.READY)) {
+                throw new EmbeddedRedisException("Redis instance did not become ready within " + startupTimeoutMillis + "ms: " + clock.report());
+            }
+            if (replicaSyncStrategy != null) {
+                replicaSyncStrategy.awaitReady(context);
+                if (!clock.completed(StartupPhase.REPLICA_SYNC)) {
+                    throw new EmbeddedRedisException("Redis replica did not sync within " + startupTimeoutMillis + "ms: " + clock.report());
                 }
-            } while (!outputLine.matches(redisReadyPattern()));
+            }
+        } catch (RuntimeException e) {
+            if (clock.overrunPhase() != null) {
+                throw new EmbeddedRedisException("Redis instance did not become ready within " + startupTimeoutMillis + "ms: " + clock.report(), e);
+            }
+            throw e;
         } finally {
             IOUtils.closeQuietly(reader, null);
         }
     }
 
-    protected abstract String redisReadyPattern();
+    /**
+     * Reads output up to the line reporting the port the process is listening on. Fails with a
+     * {@link PortInUseException} if the process exited because its port was taken.
+     */
+    private static int awaitBoundPort(BufferedReader output) {
+        boolean portInUse = false;
+        try {
+            String line;
+            while ((line = output.readLine()) != null) {
+                final Matcher matcher = BOUND_PORT_PATTERN.matcher(line);
+                if (matcher.matches()) {
+                    return Integer.parseInt(matcher.group(1) != null ? matcher.group(1) : matcher.group(2));
+                }
+                portInUse |= PORT_IN_USE.matcher(line).find();
+            }
+        } catch (IOException e) {
+            throw new EmbeddedRedisException("Failed to read Redis instance output", e);
+        }
+        if (portInUse) {
+            throw new PortInUseException();
+        }
+        throw new EmbeddedRedisException("Redis instance exited before reporting its port");
+    }
+
+    /**
+     * Replaces the value of a command line option, adding the option if it is missing.
+     */
+    void setArgument(String option, String value) {
+        final int index = args.indexOf(option);
+        if (index >= 0 && index + 1 < args.size()) {
+            args.set(index + 1, value);
+        } else {
+            args = new ArrayList<String>(args);
+            args.add(option);
+            args.add(value);
+        }
+    }
+
+    /**
+     * Ports to try, in order, when starting; the port the process actually listens on is read from its
+     * output. Until then {@link #ports()} is empty.
+     */
+    void setPortCandidates(PortProvider portCandidates) {
+        this.portCandidates = portCandidates;
+    }
+
+    void setBuildPhases(Map<StartupPhase, Duration> buildPhases) {
+        this.buildPhases = new EnumMap<StartupPhase, Duration>(buildPhases);
+    }
+
+    void setStartupTimeoutMillis(long startupTimeoutMillis) {
+        this.startupTimeoutMillis = startupTimeoutMillis;
+    }
+
+    /**
+     * Dump file to place in the working directory as {@value #SEED_FILENAME} before every start. The
+     * command line must point {@code dir} and {@code dbfilename} at it.
+     */
+    void setSeed(Path seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Pins the process to {@code cpus} CPUs chosen by {@code cpuAffinity} on every start.
+     */
+    void setCpuAffinity(CpuAffinity cpuAffinity, int cpus) {
+        this.cpuAffinity = cpuAffinity;
+        this.cpus = cpus;
+    }
+
+    /**
+     * CPUs the process is pinned to, as of the most recent start; empty if it is not pinned.
+     */
+    public synchronized Optional<CpuSet> cpuSet() {
+        return Optional.ofNullable(cpuSet);
+    }
+
+    private synchronized CpuSet acquireCpus() {
+        cpuSet = cpuAffinity != null ? cpuAffinity.acquire(cpus).orElse(null) : null;
+        cpusHeld = cpuSet != null;
+        return cpuSet;
+    }
+
+    private synchronized void releaseCpus(CpuSet held) {
+        if (cpusHeld && cpuSet == held) {
+            cpusHeld = false;
+            cpuAffinity.release(cpuSet);
+        }
+    }
+
+    /**
+     * Reserves {@code maxmemoryBytes} of {@code memoryBudget} before every start. The command line must
+     * set {@code maxmemory} accordingly.
+     */
+    void setMemoryBudget(MemoryBudget memoryBudget, long maxmemoryBytes) {
+        this.memoryBudget = memoryBudget;
+        this.maxmemoryBytes = maxmemoryBytes;
+    }
+
+    private synchronized CompletableFuture<MemoryBudget.Reservation> reserveMemory() {
+        pendingMemory = memoryBudget != null
+                ? memoryBudget.reserve(maxmemoryBytes, this::name)
+                : CompletableFuture.completedFuture(null);
+        return pendingMemory;
+    }
+
+    private synchronized void holdMemory(MemoryBudget.Reservation reservation) {
+        memoryReservation = reservation;
+    }
+
+    private synchronized void releaseMemory(MemoryBudget.Reservation reservation) {
+        if (reservation != null) {
+            reservation.release();
+            if (memoryReservation == reservation) {
+                memoryReservation = null;
+            }
+        }
+    }
+
+    /**
+     * Fails a start that is still waiting for memory, before anything was spawned, and returns whether
+     * there was one.
+     */
+    private synchronized boolean abandonPendingMemory(EmbeddedRedisException reason) {
+        return pendingMemory != null && pendingMemory.completeExceptionally(reason);
+    }
+
+    private ReadinessStrategy readinessStrategy() {
+        return readinessStrategy != null ? readinessStrategy : defaultReadinessStrategy();
+    }
+
+    void setReadinessStrategy(ReadinessStrategy readinessStrategy) {
+        this.readinessStrategy = readinessStrategy;
+    }
+
+    /**
+     * Makes a start wait, after the instance is ready, until {@code replicaSyncStrategy} considers its
+     * replication in sync. The wait is reported as {@link StartupPhase#REPLICA_SYNC}.
+     */
+    void setReplicaSyncStrategy(ReadinessStrategy replicaSyncStrategy) {
+        this.replicaSyncStrategy = replicaSyncStrategy;
+    }
+
+    /**
+     * Address clients can reach this instance on.
+     */
+    String host() {
+        return host;
+    }
+
+    /**
+     * Opens a connection for management commands to the instance's plain TCP port, or to its Unix domain
+     * socket if it has no such port.
+     */
+    RespClient connect(int timeoutMillis) throws IOException {
+        if (!RespClient.canConnect(port, unixSocketPath())) {
+            throw new EmbeddedRedisException("Redis instance has no plain TCP port or usable Unix domain socket to connect to");
+        }
+        return RespClient.connect(host, port, unixSocketPath(), timeoutMillis);
+    }
+
+    /**
+     * Unix domain socket to report; a relative path is relative to the instance's working directory, which
+     * is where the process resolves it.
+     */
+    void setUnixSocket(Path unixSocket) {
+        this.unixSocket = unixSocket;
+    }
+
+    private Path unixSocketPath() {
+        if (unixSocket == null || unixSocket.isAbsolute()) {
+            return unixSocket;
+        }
+        return workingDirectory().toPath().resolve(unixSocket);
+    }
+
+    /**
+     * Derives the address to reach this instance on from its {@code bind} setting.
+     */
+    void setBind(String bind) {
+        this.host = DEFAULT_HOST;
+        if (bind != null) {
+            for (String address : bind.trim().split("\\s+")) {
+                // "-" marks an optional address; wildcards are reachable through loopback
+                final String candidate = address.startsWith("-") ? address.substring(1) : address;
+                if (!candidate.isEmpty() && !candidate.equals("*") && !candidate.equals("0.0.0.0") && !candidate.equals("::*")) {
+                    this.host = candidate;
+                    break;
+                }
+            }
+        }
+    }
+
+    void setStopStrategy(StopStrategy stopStrategy) {
+        this.stopStrategy = stopStrategy;
+    }
+
+    void setLogSink(RedisLogSink logSink) {
+        this.logSink = logSink;
+    }
+
+    /**
+     * Lines of output that were not delivered to the log sink because it fell behind, since the most recent
+     * start.
+     */
+    public synchronized long droppedLogLines() {
+        return logs != null ? logs.dropped() : 0L;
+    }
+
+    /**
+     * Returns up to {@code n} of the most recent output lines, oldest first. Output of earlier starts of this
+     * instance is retained until it is evicted by newer output.
+     */
+    @Override
+    public List<RedisLogLine> recentLogs(int n) {
+        return logBuffer.recent(n);
+    }
+
+    @Override
+    public List<RedisLogLine> logsSince(Instant since) {
+        return logBuffer.since(since);
+    }
+
+    /**
+     * Strategy used unless the builder configured a different one.
+     */
+    protected abstract ReadinessStrategy defaultReadinessStrategy();
 
     private ProcessBuilder createRedisProcessBuilder() {
-        File executable = new File(args.get(0));
-        ProcessBuilder pb = new ProcessBuilder(args);
-        pb.directory(executable.getParentFile());
+        ProcessBuilder pb = new ProcessBuilder(cpuSet != null ? Taskset.pin(cpuSet, args) : args);
+        pb.directory(workingDirectory());
         return pb;
     }
 
-    public synchronized void stop() throws EmbeddedRedisException {
-        if (active) {
-            if (executor != null && !executor.isShutdown()) {
-                executor.shutdown();
+    /**
+     * Directory the process runs in, and hence where it writes RDB and AOF files by default. Executables
+     * are shared between instances, so each instance gets a directory of its own.
+     */
+    synchronized File workingDirectory() {
+        if (workingDirectory == null) {
+            workingDirectory = Files.createTempDir();
+            RedisInstanceRegistry.deleteOnExit(workingDirectory);
+        }
+        return workingDirectory;
+    }
+
+    public void stop() throws EmbeddedRedisException {
+        stop(stopStrategy != null ? stopStrategy : new TerminateStopStrategy());
+    }
+
+    /**
+     * Stops this instance with the given strategy instead of the configured one.
+     */
+    public synchronized void stop(StopStrategy strategy) throws EmbeddedRedisException {
+        if (abandonPendingMemory(new EmbeddedRedisException("Redis instance was stopped while waiting for memory"))) {
+            return;
+        }
+        if (active || isStarting()) {
+            if (!active) {
+                // a start that was admitted by its memory budget but has not spawned, or is about to retry
+                // on another port, gives up instead of spawning a process nobody stops
+                startCancelled = true;
+                if (redisProcess == null) {
+                    return;
+                }
+            }
+            final ProcessStopContext context = new ProcessStopContext(redisProcess);
+            final long begin = System.nanoTime();
+            try {
+                strategy.stop(context);
+                tryWaitFor();
+            } finally {
+                stopReport = new StopReport(strategy.getClass().getSimpleName(), Duration.ofNanos(System.nanoTime() - begin), context.killed);
+                if (!redisProcess.isAlive()) {
+                    RedisInstanceRegistry.unregister(this, redisProcess);
+                    releaseCpus(cpuSet);
+                    releaseMemory(memoryReservation);
+                    active = false;
+                }
             }
-            redisProcess.destroy();
-            tryWaitFor();
-            active = false;
         }
     }
 
+    /**
+     * Returns how the most recent stop went, or an empty value if this instance was never stopped.
+     */
+    public synchronized Optional<StopReport> stopReport() {
+        return Optional.ofNullable(stopReport);
+    }
+
+    private static <T> CompletableFuture<T> failedFuture(Throwable failure) {
+        CompletableFuture<T> future = new CompletableFuture<T>();
+        future.completeExceptionally(failure);
+        return future;
+    }
+
     private void tryWaitFor() {
         try {
             redisProcess.waitFor();
@@ -116,29 +582,123 @@ abstract class AbstractRedisInstance implements Redis {
         return tlsPort > 0 ? Collections.singletonList(tlsPort) : Collections.emptyList();
     }
 
-    private static class PrintReaderRunnable implements Runnable {
-        private final BufferedReader reader;
+    public List<Path> unixSockets() {
+        return unixSocket != null ? Collections.singletonList(unixSocketPath()) : Collections.emptyList();
+    }
 
-        private PrintReaderRunnable(BufferedReader reader) {
-            this.reader = reader;
+    /**
+     * Names this instance in logs and messages after the port it listens on, once that is known.
+     */
+    private String name() {
+        final String kind = getClass().getSimpleName();
+        if (port > 0 || tlsPort > 0) {
+            return kind + ":" + (port > 0 ? port : tlsPort);
         }
+        if (unixSocket != null) {
+            return kind + ":" + unixSocket;
+        }
+        return kind + "@" + Integer.toHexString(System.identityHashCode(this));
+    }
 
-        public void run() {
-            try {
-                readLines();
-            } finally {
-                IOUtils.closeQuietly(reader, null);
-            }
+    private static class PortInUseException extends EmbeddedRedisException {
+        private static final long serialVersionUID = 1L;
+
+        private PortInUseException() {
+            super("Redis instance could not bind its port");
+        }
+    }
+
+    private class ProcessReadinessContext implements ReadinessContext {
+        private final Process process;
+        private final BufferedReader output;
+
+        private ProcessReadinessContext(Process process, BufferedReader output) {
+            this.process = process;
+            this.output = output;
+        }
+
+        @Override
+        public long pid() {
+            return ProcessUtil.pid(process);
+        }
+
+        @Override
+        public boolean isProcessAlive() {
+            return process.isAlive();
+        }
+
+        @Override
+        public String host() {
+            return host;
+        }
+
+        @Override
+        public int port() {
+            return port;
+        }
+
+        @Override
+        public Optional<Path> unixSocket() {
+            return Optional.ofNullable(unixSocketPath());
+        }
+
+        @Override
+        public BufferedReader output() {
+            return output;
+        }
+    }
+
+    private class ProcessStopContext implements StopContext {
+        private final Process process;
+        private boolean killed;
+
+        private ProcessStopContext(Process process) {
+            this.process = process;
+        }
+
+        @Override
+        public long pid() {
+            return ProcessUtil.pid(process);
+        }
+
+        @Override
+        public boolean isProcessAlive() {
+            return process.isAlive();
+        }
+
+        @Override
+        public String host() {
+            return host;
         }
 
-        public void readLines() {
+        @Override
+        public int port() {
+            return port;
+        }
+
+        @Override
+        public Optional<Path> unixSocket() {
+            return Optional.ofNullable(unixSocketPath());
+        }
+
+        @Override
+        public void terminate() {
+            process.destroy();
+        }
+
+        @Override
+        public void kill() {
+            killed = true;
+            process.destroyForcibly();
+        }
+
+        @Override
+        public boolean awaitExit(long timeoutMillis) {
             try {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    System.out.println(line);
-                }
-            } catch (IOException e) {
-                e.printStackTrace();
+                return process.waitFor(timeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new EmbeddedRedisException("Interrupted while waiting for Redis instance to stop", e);
             }
         }
     }
@@ -0,0 +1,20 @@
+package redis.embedded;
+
+import java.util.Optional;
+
+/**
+ * Decides which CPUs instances are pinned to. An instance acquires its CPUs on every start and releases
+ * them when it stops.
+ */
+public interface CpuAffinity {
+    /**
+     * Reserves {@code cpus} CPUs for an instance about to start, or returns an empty value to leave it
+     * unpinned.
+     */
+    Optional<CpuSet> acquire(int cpus);
+
+    /**
+     * Gives back CPUs returned by {@link #acquire(int)} once the instance has stopped.
+     */
+    void release(CpuSet cpuSet);
+}
@@ -0,0 +1,98 @@
+package redis.embedded;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSortedSet;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.SortedSet;
+
+/**
+ * CPUs an instance is pinned to, and the NUMA nodes they belong to.
+ */
+public final class CpuSet {
+    private final SortedSet<Integer> cpus;
+    private final SortedSet<Integer> numaNodes;
+
+    public CpuSet(Collection<Integer> cpus, Collection<Integer> numaNodes) {
+        Preconditions.checkArgument(!cpus.isEmpty(), "A CPU set needs at least one CPU");
+        this.cpus = ImmutableSortedSet.copyOf(cpus);
+        this.numaNodes = ImmutableSortedSet.copyOf(numaNodes);
+    }
+
+    /**
+     * Parses a Linux CPU list such as {@code 0-3,8,10-11}.
+     */
+    public static SortedSet<Integer> parseList(String list) {
+        final ImmutableSortedSet.Builder<Integer> cpus = ImmutableSortedSet.naturalOrder();
+        for (String range : list.trim().split(",")) {
+            if (range.isEmpty()) {
+                continue;
+            }
+            final int dash = range.indexOf('-');
+            final int from = Integer.parseInt(range.substring(0, dash < 0 ? range.length() : dash).trim());
+            final int to = dash < 0 ? from : Integer.parseInt(range.substring(dash + 1).trim());
+            for (int cpu = from; cpu <= to; cpu++) {
+                cpus.add(cpu);
+            }
+        }
+        return cpus.build();
+    }
+
+    public SortedSet<Integer> cpus() {
+        return cpus;
+    }
+
+    /**
+     * NUMA nodes of the CPUs, empty if unknown.
+     */
+    public SortedSet<Integer> numaNodes() {
+        return numaNodes;
+    }
+
+    /**
+     * The CPUs as a Linux CPU list, e.g. {@code 0-3,8}, as {@code taskset -c} takes it.
+     */
+    public String toList() {
+        final List<String> ranges = new ArrayList<String>();
+        int from = -1;
+        int to = -1;
+        for (int cpu : cpus) {
+            if (from >= 0 && cpu == to + 1) {
+                to = cpu;
+                continue;
+            }
+            if (from >= 0) {
+                ranges.add(from == to ? Integer.toString(from) : from + "-" + to);
+            }
+            from = cpu;
+            to = cpu;
+        }
+        ranges.add(from == to ? Integer.toString(from) : from + "-" + to);
+        return Joiner.on(',').join(ranges);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof CpuSet)) {
+            return false;
+        }
+        final CpuSet other = (CpuSet) o;
+        return cpus.equals(other.cpus) && numaNodes.equals(other.numaNodes);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * cpus.hashCode() + numaNodes.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return numaNodes.isEmpty() ? "cpus " + toList() : "cpus " + toList() + " on NUMA nodes " + Joiner.on(',').join(numaNodes);
+    }
+}
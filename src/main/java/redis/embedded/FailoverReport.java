@@ -0,0 +1,107 @@
+package redis.embedded;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+
+/**
+ * Timeline of one failover of a replication group, from the trigger until clients could write to the new
+ * master. Phase boundaries come from the events the sentinels log ({@code +odown}, {@code +elected-leader},
+ * {@code +switch-master}); a phase whose event was not logged is reported as empty.
+ */
+public class FailoverReport {
+    private final String masterName;
+    private final FailoverTrigger trigger;
+    private final int oldMasterPort;
+    private final int newMasterPort;
+    private final Instant triggered;
+    private final Instant detected;
+    private final Instant elected;
+    private final Instant switched;
+    private final Instant completed;
+    private final Duration downtime;
+
+    FailoverReport(String masterName, FailoverTrigger trigger, int oldMasterPort, int newMasterPort, Instant triggered,
+                   Instant detected, Instant elected, Instant switched, Instant completed, Duration downtime) {
+        this.masterName = masterName;
+        this.trigger = trigger;
+        this.oldMasterPort = oldMasterPort;
+        this.newMasterPort = newMasterPort;
+        this.triggered = triggered;
+        this.detected = detected;
+        this.elected = elected;
+        this.switched = switched;
+        this.completed = completed;
+        this.downtime = downtime;
+    }
+
+    public String masterName() {
+        return masterName;
+    }
+
+    public FailoverTrigger trigger() {
+        return trigger;
+    }
+
+    public int oldMasterPort() {
+        return oldMasterPort;
+    }
+
+    public int newMasterPort() {
+        return newMasterPort;
+    }
+
+    /**
+     * From the trigger until the sentinels agreed that the master is down ({@code +odown}). Empty for
+     * {@link FailoverTrigger#SENTINEL_FAILOVER}, which skips detection.
+     */
+    public Optional<Duration> detection() {
+        return between(triggered, detected);
+    }
+
+    /**
+     * From detection, or the trigger, until a sentinel was elected to lead the failover
+     * ({@code +elected-leader}).
+     */
+    public Optional<Duration> election() {
+        return between(detected != null ? detected : triggered, elected);
+    }
+
+    /**
+     * From the election until the sentinels promoted a replica and advertised it as the new master
+     * ({@code +switch-master}).
+     */
+    public Optional<Duration> promotion() {
+        return between(elected, switched);
+    }
+
+    /**
+     * The longest stretch after the trigger in which writes to the master the sentinels advertised failed,
+     * from the last successful write before it until the next successful one.
+     */
+    public Duration downtime() {
+        return downtime;
+    }
+
+    /**
+     * From the trigger until the sentinels advertised the new master and it accepted writes.
+     */
+    public Duration total() {
+        return Duration.between(triggered, completed);
+    }
+
+    private static Optional<Duration> between(Instant from, Instant to) {
+        return from != null && to != null ? Optional.of(Duration.between(from, to)) : Optional.<Duration>empty();
+    }
+
+    @Override
+    public String toString() {
+        return "failover of " + masterName + " by " + trigger + " from port " + oldMasterPort + " to " + newMasterPort
+                + ": detection=" + millis(detection()) + ", election=" + millis(election()) + ", promotion=" + millis(promotion())
+                + ", downtime=" + downtime.toMillis() + "ms, total=" + total().toMillis() + "ms";
+    }
+
+    private static String millis(Optional<Duration> duration) {
+        return duration.isPresent() ? duration.get().toMillis() + "ms" : "-";
+    }
+}
@@ -0,0 +1,17 @@
+package redis.embedded;
+
+/**
+ * How {@link RedisCluster#failover(String, FailoverTrigger)} makes the sentinels fail over.
+ */
+public enum FailoverTrigger {
+    /**
+     * Kills the master process, so that the sentinels first have to notice that it is down. The killed
+     * master stays stopped; starting it again makes it rejoin as a replica.
+     */
+    KILL_MASTER,
+    /**
+     * Sends {@code SENTINEL FAILOVER} to a sentinel, which promotes a replica right away and turns the old
+     * master into a replica.
+     */
+    SENTINEL_FAILOVER
+}
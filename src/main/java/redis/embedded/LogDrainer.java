@@ -0,0 +1,336 @@
+package redis.embedded;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reads the output of every Redis process on one shared thread and hands complete lines to a second shared
+ * thread that calls the sinks.
+ *
+ * <p>Java 8 offers no selectable process pipes, so the reader polls {@link InputStream#available()} on each
+ * registered stream and only reads what is already buffered, backing off while all of them are idle. It
+ * never blocks on a sink: lines are queued in a bounded buffer and dropped, and counted, when the buffer is
+ * full, so a slow sink can never stall a Redis process on a full pipe.</p>
+ *
+ * <p>Every line is also copied into the instance's {@link LogRingBuffer}. Lines are only decoded into
+ * strings if a sink or a readiness strategy is listening.</p>
+ */
+final class LogDrainer {
+    static final int BUFFER_CAPACITY = 16384;
+    private static final int READINESS_BUFFER_CAPACITY = 1024;
+    private static final int MAX_LINE_BYTES = 16 * 1024;
+    private static final long MIN_IDLE_SLEEP_MILLIS = 1L;
+    private static final long MAX_IDLE_SLEEP_MILLIS = 10L;
+
+    private static final List<StreamSource> sources = new CopyOnWriteArrayList<StreamSource>();
+    private static final BlockingQueue<Delivery> deliveries = new ArrayBlockingQueue<Delivery>(BUFFER_CAPACITY);
+    private static Thread reader;
+    private static Thread dispatcher;
+
+    private LogDrainer() {
+    }
+
+    /**
+     * Starts draining both output streams of {@code process} until they end.
+     */
+    static Registration register(Process process, LogRingBuffer buffer, RedisLogSink sink, StartupClock clock) {
+        final Registration registration = new Registration(buffer, sink, clock);
+        clock.outputWatched();
+        sources.add(new StreamSource(registration, RedisLogLine.Stream.STDOUT, process.getInputStream(), process));
+        sources.add(new StreamSource(registration, RedisLogLine.Stream.STDERR, process.getErrorStream(), process));
+        ensureStarted();
+        synchronized (sources) {
+            sources.notifyAll();
+        }
+        return registration;
+    }
+
+    private static synchronized void ensureStarted() {
+        if (reader == null) {
+            reader = daemon(LogDrainer::readLoop, "embedded-redis-log-reader");
+            dispatcher = daemon(LogDrainer::dispatchLoop, "embedded-redis-log-dispatcher");
+        }
+    }
+
+    private static Thread daemon(Runnable task, String name) {
+        final Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    private static void readLoop() {
+        long idleSleep = MIN_IDLE_SLEEP_MILLIS;
+        while (true) {
+            try {
+                synchronized (sources) {
+                    while (sources.isEmpty()) {
+                        sources.wait();
+                    }
+                }
+                boolean progress = false;
+                for (StreamSource source : sources) {
+                    if (source.poll()) {
+                        progress = true;
+                    }
+                    if (source.finished) {
+                        sources.remove(source);
+                    }
+                }
+                if (progress) {
+                    idleSleep = MIN_IDLE_SLEEP_MILLIS;
+                } else {
+                    Thread.sleep(idleSleep);
+                    idleSleep = Math.min(idleSleep * 2, MAX_IDLE_SLEEP_MILLIS);
+                }
+            } catch (InterruptedException e) {
+                // daemon thread; keep draining
+            }
+        }
+    }
+
+    private static void dispatchLoop() {
+        while (true) {
+            try {
+                final Delivery delivery = deliveries.take();
+                delivery.sink.accept(delivery.line);
+            } catch (InterruptedException e) {
+                // daemon thread; keep dispatching
+            } catch (RuntimeException e) {
+                // a failing sink must not stop delivery to the others
+            }
+        }
+    }
+
+    /**
+     * Output of one started process.
+     */
+    static final class Registration {
+        private final LogRingBuffer buffer;
+        private final RedisLogSink sink;
+        private final StartupClock clock;
+        private final BlockingQueue<String> readinessLines = new LinkedBlockingQueue<String>(READINESS_BUFFER_CAPACITY);
+        private final AtomicLong dropped = new AtomicLong();
+        private volatile boolean readinessClosed;
+        private volatile boolean stdoutEnded;
+        private boolean firstOutputSeen;
+
+        private Registration(LogRingBuffer buffer, RedisLogSink sink, StartupClock clock) {
+            this.buffer = buffer;
+            this.sink = sink;
+            this.clock = clock;
+        }
+
+        /**
+         * Standard output lines for the readiness strategy, starting from the first line. Closing the reader
+         * stops buffering for it; output keeps flowing to the sink.
+         */
+        Reader readinessOutput() {
+            return new ReadinessReader();
+        }
+
+        /**
+         * Lines not delivered to the sink because the shared buffer was full.
+         */
+        long dropped() {
+            return dropped.get();
+        }
+
+        // called on the reader thread only
+        private void bytesRead(RedisLogLine.Stream stream) {
+            if (stream == RedisLogLine.Stream.STDOUT && !firstOutputSeen) {
+                firstOutputSeen = true;
+                clock.completed(StartupPhase.FIRST_OUTPUT);
+            }
+        }
+
+        // called on the reader thread only; only decodes the line if someone besides the buffer wants it
+        private void line(RedisLogLine.Stream stream, byte[] bytes, int length) {
+            final long now = System.currentTimeMillis();
+            buffer.append(stream, now, bytes, 0, length);
+            final boolean forReadiness = stream == RedisLogLine.Stream.STDOUT && !readinessClosed;
+            if (!forReadiness && sink == null) {
+                return;
+            }
+            final String text = new String(bytes, 0, length, Charset.defaultCharset());
+            if (forReadiness) {
+                while (!readinessLines.offer(text)) {
+                    // keep the newest lines; the readiness strategy is looking for what happens last
+                    readinessLines.poll();
+                }
+            }
+            if (sink != null && !deliveries.offer(new Delivery(sink, new RedisLogLine(buffer.source(), stream, Instant.ofEpochMilli(now), text)))) {
+                dropped.incrementAndGet();
+            }
+        }
+
+        // called on the reader thread only
+        private void ended(RedisLogLine.Stream stream) {
+            if (stream == RedisLogLine.Stream.STDOUT) {
+                stdoutEnded = true;
+            }
+        }
+
+        /**
+         * Presents the queued lines as a character stream. Returns end of stream once standard output has
+         * ended and every queued line was read.
+         */
+        private class ReadinessReader extends Reader {
+            private String current = "";
+            private int position;
+
+            @Override
+            public int read(char[] buffer, int offset, int length) throws IOException {
+                if (length == 0) {
+                    return 0;
+                }
+                while (position >= current.length()) {
+                    if (readinessClosed) {
+                        throw new IOException("Stream closed");
+                    }
+                    final String next = nextLine();
+                    if (next == null) {
+                        return -1;
+                    }
+                    current = next;
+                    position = 0;
+                }
+                final int count = Math.min(length, current.length() - position);
+                current.getChars(position, position + count, buffer, offset);
+                position += count;
+                return count;
+            }
+
+            private String nextLine() throws IOException {
+                try {
+                    while (true) {
+                        // checked before polling: lines queued before the end must still be returned
+                        final boolean ended = stdoutEnded;
+                        final String line = readinessLines.poll(MAX_IDLE_SLEEP_MILLIS, TimeUnit.MILLISECONDS);
+                        if (line != null) {
+                            return line + "\n";
+                        }
+                        if (ended) {
+                            return null;
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while reading Redis output", e);
+                }
+            }
+
+            @Override
+            public boolean ready() {
+                return position < current.length() || !readinessLines.isEmpty();
+            }
+
+            @Override
+            public void close() {
+                readinessClosed = true;
+                readinessLines.clear();
+            }
+        }
+    }
+
+    private static final class StreamSource {
+        private final Registration registration;
+        private final RedisLogLine.Stream stream;
+        private final InputStream in;
+        private final Process process;
+        private final byte[] buffer = new byte[8192];
+        private byte[] line = new byte[256];
+        private int lineLength;
+        private boolean finished;
+
+        private StreamSource(Registration registration, RedisLogLine.Stream stream, InputStream in, Process process) {
+            this.registration = registration;
+            this.stream = stream;
+            this.in = in;
+            this.process = process;
+        }
+
+        /**
+         * Reads whatever is buffered without blocking. Returns whether anything happened.
+         */
+        private boolean poll() {
+            try {
+                int available = in.available();
+                if (available <= 0) {
+                    if (process.isAlive()) {
+                        return false;
+                    }
+                    // the process may have written its last bytes between the two checks
+                    available = in.available();
+                    if (available <= 0) {
+                        finish();
+                        return true;
+                    }
+                }
+                final int read = in.read(buffer, 0, Math.min(available, buffer.length));
+                if (read < 0) {
+                    finish();
+                    return true;
+                }
+                registration.bytesRead(stream);
+                for (int i = 0; i < read; i++) {
+                    if (buffer[i] == '\n') {
+                        emitLine();
+                    } else {
+                        if (lineLength == line.length) {
+                            line = Arrays.copyOf(line, line.length * 2);
+                        }
+                        line[lineLength++] = buffer[i];
+                        if (lineLength >= MAX_LINE_BYTES) {
+                            emitLine();
+                        }
+                    }
+                }
+                return true;
+            } catch (IOException e) {
+                finish();
+                return true;
+            }
+        }
+
+        private void emitLine() {
+            final int length = lineLength > 0 && line[lineLength - 1] == '\r' ? lineLength - 1 : lineLength;
+            lineLength = 0;
+            registration.line(stream, line, length);
+        }
+
+        private void finish() {
+            if (lineLength > 0) {
+                emitLine();
+            }
+            finished = true;
+            registration.ended(stream);
+            try {
+                in.close();
+            } catch (IOException e) {
+                // nothing left to read anyway
+            }
+        }
+    }
+
+    private static final class Delivery {
+        private final RedisLogSink sink;
+        private final RedisLogLine line;
+
+        private Delivery(RedisLogSink sink, RedisLogLine line) {
+            this.sink = sink;
+            this.line = line;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package redis.embedded;
+
+import java.nio.charset.Charset;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the most recent output lines of one instance as raw bytes in preallocated arrays, so recording a
+ * line only copies its bytes. Lines are decoded into {@link RedisLogLine}s when queried. The oldest lines
+ * are evicted once either the line or the byte capacity is exhausted.
+ */
+final class LogRingBuffer {
+    static final int DEFAULT_MAX_LINES = 4096;
+    static final int DEFAULT_MAX_BYTES = 1024 * 1024;
+
+    private volatile String source;
+    private final byte[] data;
+    private final long[] starts;
+    private final int[] lengths;
+    private final long[] timestamps;
+    private final RedisLogLine.Stream[] streams;
+
+    // absolute positions; a slot is the position modulo the capacity
+    private long bytesWritten;
+    private long firstLine;
+    private long nextLine;
+
+    LogRingBuffer(String source) {
+        this(source, DEFAULT_MAX_LINES, DEFAULT_MAX_BYTES);
+    }
+
+    LogRingBuffer(String source, int maxLines, int maxBytes) {
+        this.source = source;
+        this.data = new byte[maxBytes];
+        this.starts = new long[maxLines];
+        this.lengths = new int[maxLines];
+        this.timestamps = new long[maxLines];
+        this.streams = new RedisLogLine.Stream[maxLines];
+    }
+
+    String source() {
+        return source;
+    }
+
+    /**
+     * Renames the instance the lines come from, e.g. once it has bound a port it picked at start. Applies
+     * to all retained lines.
+     */
+    void source(String source) {
+        this.source = source;
+    }
+
+    synchronized void append(RedisLogLine.Stream stream, long epochMillis, byte[] bytes, int offset, int length) {
+        final int stored = Math.min(length, data.length);
+        while (nextLine - firstLine == starts.length
+                || (nextLine > firstLine && bytesWritten + stored - starts[slot(firstLine)] > data.length)) {
+            firstLine++;
+        }
+
+        final int start = (int) (bytesWritten % data.length);
+        final int head = Math.min(stored, data.length - start);
+        System.arraycopy(bytes, offset, data, start, head);
+        System.arraycopy(bytes, offset + head, data, 0, stored - head);
+
+        final int slot = slot(nextLine);
+        starts[slot] = bytesWritten;
+        lengths[slot] = stored;
+        timestamps[slot] = epochMillis;
+        streams[slot] = stream;
+        bytesWritten += stored;
+        nextLine++;
+    }
+
+    /**
+     * Returns up to {@code n} of the most recent lines, oldest first.
+     */
+    synchronized List<RedisLogLine> recent(int n) {
+        return decode(Math.max(firstLine, nextLine - Math.max(n, 0)));
+    }
+
+    /**
+     * Returns the retained lines read at or after {@code since}, oldest first.
+     */
+    synchronized List<RedisLogLine> since(Instant since) {
+        final long sinceMillis = since.toEpochMilli();
+        long from = nextLine;
+        while (from > firstLine && timestamps[slot(from - 1)] >= sinceMillis) {
+            from--;
+        }
+        return decode(from);
+    }
+
+    private List<RedisLogLine> decode(long from) {
+        final List<RedisLogLine> lines = new ArrayList<RedisLogLine>((int) (nextLine - from));
+        for (long line = from; line < nextLine; line++) {
+            final int slot = slot(line);
+            final int start = (int) (starts[slot] % data.length);
+            final int length = lengths[slot];
+            final byte[] bytes = new byte[length];
+            final int head = Math.min(length, data.length - start);
+            System.arraycopy(data, start, bytes, 0, head);
+            System.arraycopy(data, 0, bytes, head, length - head);
+            lines.add(new RedisLogLine(source, streams[slot], Instant.ofEpochMilli(timestamps[slot]),
+                    new String(bytes, Charset.defaultCharset())));
+        }
+        return lines;
+    }
+
+    private int slot(long line) {
+        return (int) (line % starts.length);
+    }
+}
@@ -0,0 +1,377 @@
+package redis.embedded;
+
+import com.google.common.base.Preconditions;
+import redis.embedded.exceptions.EmbeddedRedisException;
+import redis.embedded.util.ProcessUtil;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Caps the memory of a set of instances. Every instance started under the budget gets a {@code maxmemory}
+ * and reserves that much of the budget until it stops. A start that would exceed the budget either fails
+ * right away or waits up to {@code maxWait} for other instances to stop.
+ *
+ * <p>{@code maxmemory} only limits the data set, so an instance may take more memory than it reserved. Each
+ * running instance therefore counts with the larger of its reservation and its resident set size, and
+ * {@link #usage()} reports both. Resident set sizes are sampled at most twice a second per instance, and
+ * never while the budget is locked. Waiting starts are admitted whenever a sample finds room for them.</p>
+ *
+ * <p>{@link #global()} is a budget for the whole JVM, which the builders apply when the
+ * {@value #BUDGET_PROPERTY} system property is set, e.g. to {@code 4gb}, so that CI hosts can cap tests
+ * without changing them.</p>
+ */
+public class MemoryBudget {
+    public static final String BUDGET_PROPERTY = "embedded.redis.memory.budget";
+    public static final String INSTANCE_PROPERTY = "embedded.redis.memory.instance";
+    public static final String WAIT_PROPERTY = "embedded.redis.memory.wait.ms";
+    public static final long DEFAULT_INSTANCE_BYTES = 64L * 1024 * 1024;
+    private static final Pattern SIZE = Pattern.compile("(\\d+)([kmg]b?)?");
+    private static final long RESIDENT_REFRESH_NANOS = TimeUnit.MILLISECONDS.toNanos(500L);
+
+    private final long totalBytes;
+    private final Duration maxWait;
+    private final List<Reservation> reservations = new ArrayList<Reservation>();
+    private final Deque<Waiter> waiting = new ArrayDeque<Waiter>();
+
+    /**
+     * A budget that fails starts that do not fit.
+     */
+    public MemoryBudget(long totalBytes) {
+        this(totalBytes, Duration.ZERO);
+    }
+
+    /**
+     * A budget that lets starts that do not fit wait up to {@code maxWait}, in order, for memory to be
+     * released.
+     */
+    public MemoryBudget(long totalBytes, Duration maxWait) {
+        Preconditions.checkArgument(totalBytes > 0, "A memory budget must be positive");
+        this.totalBytes = totalBytes;
+        this.maxWait = maxWait;
+    }
+
+    private static final class Global {
+        private static final MemoryBudget INSTANCE = fromProperties();
+
+        private static MemoryBudget fromProperties() {
+            final String budget = System.getProperty(BUDGET_PROPERTY);
+            if (budget == null || budget.isEmpty()) {
+                return null;
+            }
+            return new MemoryBudget(parseSize(budget), Duration.ofMillis(Long.getLong(WAIT_PROPERTY, 0L)));
+        }
+    }
+
+    /**
+     * The budget configured through the {@value #BUDGET_PROPERTY} and {@value #WAIT_PROPERTY} system
+     * properties, or an empty value if there is none.
+     */
+    public static Optional<MemoryBudget> global() {
+        return Optional.ofNullable(Global.INSTANCE);
+    }
+
+    /**
+     * {@code maxmemory} for instances under the global budget that set none themselves, from the
+     * {@value #INSTANCE_PROPERTY} system property.
+     */
+    static long globalInstanceBytes() {
+        final String configured = System.getProperty(INSTANCE_PROPERTY);
+        return configured != null && !configured.isEmpty() ? parseSize(configured) : DEFAULT_INSTANCE_BYTES;
+    }
+
+    /**
+     * Parses a memory size in Redis notation: {@code 1k} is 1000 bytes, {@code 1kb} is 1024 bytes, and
+     * likewise for {@code m} and {@code g}.
+     */
+    static long parseSize(String size) {
+        final Matcher matcher = SIZE.matcher(size.trim().toLowerCase(Locale.ROOT));
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException("Invalid memory size " + size);
+        }
+        final String unit = matcher.group(2);
+        try {
+            final long value = Long.parseLong(matcher.group(1));
+            if (unit == null) {
+                return value;
+            }
+            final long base = unit.endsWith("b") ? 1024L : 1000L;
+            switch (unit.charAt(0)) {
+                case 'k':
+                    return Math.multiplyExact(value, base);
+                case 'm':
+                    return Math.multiplyExact(value, base * base);
+                default:
+                    return Math.multiplyExact(value, base * base * base);
+            }
+        } catch (ArithmeticException | NumberFormatException e) {
+            throw new IllegalArgumentException("Memory size " + size + " is too large", e);
+        }
+    }
+
+    public long totalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * Reserves {@code bytes} for {@code instance}. The future completes once the reservation fits the
+     * budget, or fails with an {@link EmbeddedRedisException} if it does not fit in time.
+     */
+    CompletableFuture<Reservation> reserve(long bytes, String instance) {
+        return reserve(bytes, () -> instance);
+    }
+
+    /**
+     * Like {@link #reserve(long, String)}, for an instance whose name may change while it waits, e.g.
+     * because it picks its port only when it starts.
+     */
+    CompletableFuture<Reservation> reserve(long bytes, Supplier<String> name) {
+        final Waiter waiter = new Waiter(new Reservation(bytes, name));
+        final String instance = name.get();
+        sampleResidentMemory();
+        admitWaiting();
+        synchronized (this) {
+            if (bytes > totalBytes) {
+                waiter.future.completeExceptionally(new EmbeddedRedisException(
+                        instance + " needs " + bytes + " bytes, more than the whole memory budget: " + snapshot()));
+                return waiter.future;
+            }
+            if (waiting.isEmpty() && fits(bytes)) {
+                reservations.add(waiter.reservation);
+                waiter.future.complete(waiter.reservation);
+                return waiter.future;
+            }
+            if (maxWait.isZero() || maxWait.isNegative()) {
+                waiter.future.completeExceptionally(new EmbeddedRedisException(
+                        "Starting " + instance + " with " + bytes + " bytes would exceed the memory budget: " + snapshot()));
+                return waiter.future;
+            }
+            waiting.add(waiter);
+        }
+        ParallelExecution.SCHEDULER.schedule(() -> expire(waiter), maxWait.toMillis(), TimeUnit.MILLISECONDS);
+        // an abandoned start gives up its place
+        waiter.future.whenComplete((reservation, failure) -> {
+            if (failure != null) {
+                withdraw(waiter);
+            }
+        });
+        return waiter.future;
+    }
+
+    /**
+     * Reservations and resident memory of the instances currently under this budget.
+     */
+    public Usage usage() {
+        sampleResidentMemory();
+        admitWaiting();
+        return snapshot();
+    }
+
+    private synchronized Usage snapshot() {
+        long reserved = 0L;
+        long resident = 0L;
+        for (Reservation reservation : reservations) {
+            reserved += reservation.bytes;
+            resident += reservation.residentBytes().orElse(0L);
+        }
+        return new Usage(totalBytes, reserved, resident, reservations.size(), waiting.size());
+    }
+
+    private boolean fits(long bytes) {
+        long used = 0L;
+        for (Reservation reservation : reservations) {
+            used += Math.max(reservation.bytes, reservation.residentBytes().orElse(0L));
+        }
+        return used + bytes <= totalBytes;
+    }
+
+    /**
+     * Refreshes the resident set sizes that are due, outside the lock since off Linux each one forks
+     * {@code ps}.
+     */
+    private void sampleResidentMemory() {
+        final List<Reservation> current;
+        synchronized (this) {
+            current = new ArrayList<Reservation>(reservations);
+        }
+        for (Reservation reservation : current) {
+            reservation.sampleResidentBytes();
+        }
+    }
+
+    private void release(Reservation reservation) {
+        sampleResidentMemory();
+        synchronized (this) {
+            if (!reservations.remove(reservation)) {
+                return;
+            }
+        }
+        admitWaiting();
+    }
+
+    /**
+     * Admits waiting starts, in order, as long as they fit; called whenever memory may have become free,
+     * which includes instances whose resident memory shrank.
+     */
+    private void admitWaiting() {
+        final List<Waiter> admitted = new ArrayList<Waiter>();
+        synchronized (this) {
+            while (!waiting.isEmpty() && fits(waiting.peek().reservation.bytes)) {
+                final Waiter waiter = waiting.poll();
+                reservations.add(waiter.reservation);
+                admitted.add(waiter);
+            }
+        }
+        // completing runs the waiting start, which must not happen on the thread stopping another instance
+        for (Waiter waiter : admitted) {
+            ParallelExecution.ASYNC_EXECUTOR.execute(() -> {
+                if (!waiter.future.complete(waiter.reservation)) {
+                    release(waiter.reservation);
+                }
+            });
+        }
+    }
+
+    private void expire(Waiter waiter) {
+        // the memory may have become free without any instance stopping
+        sampleResidentMemory();
+        admitWaiting();
+        final boolean expired;
+        synchronized (this) {
+            expired = waiting.remove(waiter);
+        }
+        if (expired) {
+            waiter.future.completeExceptionally(new EmbeddedRedisException("Waited " + maxWait.toMillis()
+                    + "ms for " + waiter.reservation.bytes + " bytes of the memory budget for " + waiter.reservation.name.get() + ": " + usage()));
+        }
+    }
+
+    private synchronized void withdraw(Waiter waiter) {
+        waiting.remove(waiter);
+    }
+
+    /**
+     * Memory held by one instance under the budget.
+     */
+    final class Reservation {
+        private final long bytes;
+        private final Supplier<String> name;
+        private volatile long pid = ProcessUtil.UNKNOWN_PID;
+        private volatile OptionalLong residentBytes = OptionalLong.empty();
+        private volatile long sampledAt;
+
+        private Reservation(long bytes, Supplier<String> name) {
+            this.bytes = bytes;
+            this.name = name;
+        }
+
+        /**
+         * Tracks the resident memory of {@code pid} against the reservation from now on.
+         */
+        void attach(long pid) {
+            this.pid = pid;
+            this.residentBytes = OptionalLong.empty();
+            this.sampledAt = System.nanoTime() - RESIDENT_REFRESH_NANOS;
+        }
+
+        /**
+         * Resident memory as of the most recent sample.
+         */
+        private OptionalLong residentBytes() {
+            return residentBytes;
+        }
+
+        private void sampleResidentBytes() {
+            final long now = System.nanoTime();
+            if (pid != ProcessUtil.UNKNOWN_PID && now - sampledAt >= RESIDENT_REFRESH_NANOS) {
+                sampledAt = now;
+                residentBytes = ProcessUtil.residentBytes(pid);
+            }
+        }
+
+        void release() {
+            MemoryBudget.this.release(this);
+        }
+    }
+
+    private static final class Waiter {
+        private final Reservation reservation;
+        private final CompletableFuture<Reservation> future = new CompletableFuture<Reservation>();
+
+        private Waiter(Reservation reservation) {
+            this.reservation = reservation;
+        }
+    }
+
+    /**
+     * A snapshot of a budget.
+     */
+    public static final class Usage {
+        private final long totalBytes;
+        private final long reservedBytes;
+        private final long residentBytes;
+        private final int instances;
+        private final int waiting;
+
+        Usage(long totalBytes, long reservedBytes, long residentBytes, int instances, int waiting) {
+            this.totalBytes = totalBytes;
+            this.reservedBytes = reservedBytes;
+            this.residentBytes = residentBytes;
+            this.instances = instances;
+            this.waiting = waiting;
+        }
+
+        public long totalBytes() {
+            return totalBytes;
+        }
+
+        /**
+         * Sum of the {@code maxmemory} of the instances under the budget.
+         */
+        public long reservedBytes() {
+            return reservedBytes;
+        }
+
+        /**
+         * Sum of the resident set sizes of the running instances, as far as they could be read.
+         */
+        public long residentBytes() {
+            return residentBytes;
+        }
+
+        public int instances() {
+            return instances;
+        }
+
+        /**
+         * Starts waiting for memory to be released.
+         */
+        public int waiting() {
+            return waiting;
+        }
+
+        /**
+         * Whether the instances together take more memory than the budget allows.
+         */
+        public boolean isExceeded() {
+            return residentBytes > totalBytes;
+        }
+
+        @Override
+        public String toString() {
+            return reservedBytes + " of " + totalBytes + " bytes reserved, " + residentBytes + " resident, "
+                    + instances + " instances, " + waiting + " waiting";
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package redis.embedded;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Merges the retained output of several instances into one timeline, for clusters.
+ */
+final class MergedLogs {
+    private MergedLogs() {
+    }
+
+    /**
+     * Returns up to {@code n} of the most recent lines of all {@code instances}, oldest first.
+     */
+    static List<RedisLogLine> recent(Iterable<? extends Redis> instances, int n) {
+        final List<RedisLogLine> lines = new ArrayList<RedisLogLine>();
+        for (Redis redis : instances) {
+            lines.addAll(redis.recentLogs(n));
+        }
+        lines.sort(Comparator.comparing(RedisLogLine::timestamp));
+        return new ArrayList<RedisLogLine>(lines.subList(Math.max(0, lines.size() - Math.max(n, 0)), lines.size()));
+    }
+
+    /**
+     * Returns the lines of all {@code instances} captured at or after {@code since}, oldest first.
+     */
+    static List<RedisLogLine> since(Iterable<? extends Redis> instances, Instant since) {
+        final List<RedisLogLine> lines = new ArrayList<RedisLogLine>();
+        for (Redis redis : instances) {
+            lines.addAll(redis.logsSince(since));
+        }
+        lines.sort(Comparator.comparing(RedisLogLine::timestamp));
+        return lines;
+    }
+}
@@ -0,0 +1,66 @@
+package redis.embedded;
+
+import java.time.Duration;
+
+/**
+ * Outcome of moving hash slots between the shards of a {@link RedisShardedCluster}.
+ */
+public class MigrationReport {
+    private final int slots;
+    private final long keys;
+    private final long bytes;
+    private final Duration duration;
+
+    MigrationReport(int slots, long keys, long bytes, Duration duration) {
+        this.slots = slots;
+        this.keys = keys;
+        this.bytes = bytes;
+        this.duration = duration;
+    }
+
+    /**
+     * Slots that changed owner.
+     */
+    public int slots() {
+        return slots;
+    }
+
+    public long keys() {
+        return keys;
+    }
+
+    /**
+     * Approximate size of the moved keys as reported by {@code MEMORY USAGE}, or {@code -1} if it was not
+     * measured, see {@link RedisClusterResharder#measureBytes(boolean)}.
+     */
+    public long bytes() {
+        return bytes;
+    }
+
+    public Duration duration() {
+        return duration;
+    }
+
+    public double keysPerSecond() {
+        return perSecond(keys);
+    }
+
+    /**
+     * Throughput in bytes, or {@code -1} if the bytes were not measured.
+     */
+    public double bytesPerSecond() {
+        return bytes < 0 ? -1 : perSecond(bytes);
+    }
+
+    private double perSecond(long count) {
+        final long nanos = duration.toNanos();
+        return nanos > 0 ? count * 1e9 / nanos : 0;
+    }
+
+    @Override
+    public String toString() {
+        return slots + " slots, " + keys + " keys" + (bytes >= 0 ? ", " + bytes + " bytes" : "")
+                + " in " + duration.toMillis() + "ms (" + Math.round(keysPerSecond()) + " keys/s"
+                + (bytes >= 0 ? ", " + Math.round(bytesPerSecond()) + " bytes/s" : "") + ")";
+    }
+}
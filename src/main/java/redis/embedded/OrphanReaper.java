@@ -0,0 +1,243 @@
+package redis.embedded;
+
+import redis.embedded.util.ExecutableCache;
+import redis.embedded.util.ProcessUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cleans up Redis processes left behind by JVMs that died without running their shutdown hooks.
+ *
+ * <p>Each JVM holds an exclusive lock on an owner file in the runtime directory for as long as it lives, and
+ * records a pid file next to it for every process it starts. Owner files only appear under their final name
+ * once they are locked. The operating system releases the lock when the JVM dies, however it dies. The
+ * first start in a JVM scans the directory: a pid file whose owner lock can be acquired belongs to a dead
+ * JVM, and its process is killed after checking that it still runs the recorded executable, so that a
+ * recycled pid is left alone. The pid file is only removed once the process is gone, so a process that
+ * survives the kill is tried again by the next JVM.</p>
+ *
+ * <p>The runtime directory is {@code run} in the executable cache directory and can be changed with the
+ * {@value #RUNTIME_DIR_PROPERTY} system property. All of this is best effort: failures never prevent an
+ * instance from starting.</p>
+ */
+final class OrphanReaper {
+    static final String RUNTIME_DIR_PROPERTY = "embedded.redis.runtime.dir";
+    private static final String PID_SUFFIX = ".pid";
+    private static final String OWNER_PREFIX = "owner-";
+    private static final String OWNER_SUFFIX = ".lock";
+    private static final String OWNER_TEMP_SUFFIX = ".owner-tmp";
+    private static final long OWNER_TEMP_MAX_AGE_MILLIS = 60000L;
+    private static final long KILL_WAIT_MILLIS = 1000L;
+
+    private static String ownerName;
+    private static FileChannel ownerChannel;
+    private static FileLock ownerLock;
+    private static boolean reaped;
+
+    private OrphanReaper() {
+    }
+
+    static Path runtimeDirectory() {
+        String configured = System.getProperty(RUNTIME_DIR_PROPERTY);
+        if (configured != null && !configured.isEmpty()) {
+            return Paths.get(configured);
+        }
+        return ExecutableCache.cacheDirectory().resolve("run");
+    }
+
+    /**
+     * Records a started process, reaping orphans of dead JVMs first if this is the first one.
+     */
+    static synchronized void record(long pid, String executable) {
+        if (pid <= 0) {
+            return;
+        }
+        try {
+            final Path dir = runtimeDirectory();
+            Files.createDirectories(dir);
+            if (!reaped) {
+                reaped = true;
+                reap(dir);
+            }
+            final Properties properties = new Properties();
+            properties.setProperty("owner", owner(dir));
+            properties.setProperty("executable", executable);
+            try (OutputStream out = Files.newOutputStream(dir.resolve(pid + PID_SUFFIX))) {
+                properties.store(out, null);
+            }
+        } catch (IOException e) {
+            // orphans will not be reaped, which is no worse than before
+        }
+    }
+
+    static synchronized void forget(long pid) {
+        try {
+            Files.deleteIfExists(runtimeDirectory().resolve(pid + PID_SUFFIX));
+        } catch (IOException e) {
+            // a stale pid file is cleaned up by the next reaper, which finds its owner alive or the process gone
+        }
+    }
+
+    /**
+     * Kills the processes recorded by dead JVMs in {@code dir} and removes their files. Returns the number
+     * of processes killed.
+     */
+    static synchronized int reap(Path dir) throws IOException {
+        int killed = 0;
+        try (DirectoryStream<Path> pidFiles = Files.newDirectoryStream(dir, "*" + PID_SUFFIX)) {
+            for (Path pidFile : pidFiles) {
+                final Properties properties = new Properties();
+                try (InputStream in = Files.newInputStream(pidFile)) {
+                    properties.load(in);
+                } catch (IOException e) {
+                    continue;
+                }
+                final String owner = properties.getProperty("owner", "");
+                if (owner.equals(ownerName) || isOwnerAlive(dir.resolve(owner))) {
+                    continue;
+                }
+                final long pid = parsePid(pidFile);
+                if (pid > 0 && ProcessUtil.isAlive(pid) && runs(pid, properties.getProperty("executable"))) {
+                    if (!ProcessUtil.kill(pid) || !awaitExit(pid)) {
+                        // kept, so that the next reaper tries again
+                        continue;
+                    }
+                    killed++;
+                }
+                Files.deleteIfExists(pidFile);
+            }
+        }
+        try (DirectoryStream<Path> owners = Files.newDirectoryStream(dir, OWNER_PREFIX + "*" + OWNER_SUFFIX)) {
+            for (Path owner : owners) {
+                if (!owner.getFileName().toString().equals(ownerName) && !isOwnerAlive(owner)) {
+                    Files.deleteIfExists(owner);
+                }
+            }
+        }
+        // left behind by JVMs that died before renaming their owner file into place
+        try (DirectoryStream<Path> temps = Files.newDirectoryStream(dir, "*" + OWNER_TEMP_SUFFIX)) {
+            for (Path temp : temps) {
+                // a younger one may belong to a JVM that is about to lock it
+                if (isOlderThan(temp, OWNER_TEMP_MAX_AGE_MILLIS) && !isOwnerAlive(temp)) {
+                    Files.deleteIfExists(temp);
+                }
+            }
+        }
+        return killed;
+    }
+
+    private static boolean awaitExit(long pid) {
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(KILL_WAIT_MILLIS);
+        while (ProcessUtil.isAlive(pid)) {
+            if (System.nanoTime() - deadline > 0) {
+                return false;
+            }
+            try {
+                Thread.sleep(10L);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isOlderThan(Path file, long millis) {
+        try {
+            return System.currentTimeMillis() - Files.getLastModifiedTime(file).toMillis() > millis;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Creates and locks this JVM's owner file on first use. The file is locked under a temporary name and
+     * only then renamed into place, so a reaper never sees an owner file that is not locked yet and
+     * mistakes it for one left behind by a dead JVM.
+     */
+    private static String owner(Path dir) throws IOException {
+        if (ownerLock == null) {
+            final String id = UUID.randomUUID().toString();
+            final Path temp = dir.resolve(id + OWNER_TEMP_SUFFIX);
+            final Path path = dir.resolve(OWNER_PREFIX + id + OWNER_SUFFIX);
+            final FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            try {
+                ownerLock = channel.lock();
+                Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException | RuntimeException e) {
+                ownerLock = null;
+                channel.close();
+                Files.deleteIfExists(temp);
+                throw e;
+            }
+            ownerChannel = channel;
+            path.toFile().deleteOnExit();
+            ownerName = path.getFileName().toString();
+        }
+        return ownerName;
+    }
+
+    private static boolean isOwnerAlive(Path owner) {
+        if (!Files.exists(owner)) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(owner, StandardOpenOption.WRITE)) {
+            final FileLock lock = channel.tryLock();
+            if (lock == null) {
+                return true;
+            }
+            lock.release();
+            return false;
+        } catch (OverlappingFileLockException e) {
+            // held by this JVM
+            return true;
+        } catch (IOException e) {
+            // cannot tell; err on the side of leaving its processes alone
+            return true;
+        }
+    }
+
+    private static boolean runs(long pid, String executable) {
+        if (executable == null) {
+            return false;
+        }
+        final Optional<String> actual = ProcessUtil.executable(pid);
+        if (!actual.isPresent()) {
+            return false;
+        }
+        return canonical(actual.get()).equals(canonical(executable));
+    }
+
+    private static String canonical(String path) {
+        try {
+            return new File(path).getCanonicalPath();
+        } catch (IOException e) {
+            return path;
+        }
+    }
+
+    private static long parsePid(Path pidFile) {
+        final String name = pidFile.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(0, name.length() - PID_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return ProcessUtil.UNKNOWN_PID;
+        }
+    }
+}
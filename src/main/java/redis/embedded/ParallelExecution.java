@@ -0,0 +1,138 @@
+package redis.embedded;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import redis.embedded.exceptions.EmbeddedRedisException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Runs lifecycle work for several Redis instances on a bounded pool of daemon threads. Every task is
+ * allowed to finish before a failure is reported, so callers always know which instances were touched.
+ */
+final class ParallelExecution {
+    static final int DEFAULT_PARALLELISM = Math.max(4, Runtime.getRuntime().availableProcessors());
+
+    private static final ThreadFactory THREAD_FACTORY = new ThreadFactoryBuilder()
+            .setNameFormat("embedded-redis-lifecycle-%d")
+            .setDaemon(true)
+            .build();
+
+    /**
+     * Runs the blocking parts of asynchronous starts and stops, such as waiting for a process to become
+     * ready or to exit. Those threads mostly sit in blocking reads, so the pool is unbounded.
+     */
+    static final ExecutorService ASYNC_EXECUTOR = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+            .setNameFormat("embedded-redis-async-%d")
+            .setDaemon(true)
+            .build());
+
+    /**
+     * Fires lifecycle deadlines, such as startup timeouts, and periodic bookkeeping that must not block.
+     */
+    static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+            .setNameFormat("embedded-redis-scheduler-%d")
+            .setDaemon(true)
+            .build());
+
+    private ParallelExecution() {
+    }
+
+    static <T> void forEach(Collection<T> items, int parallelism, Consumer<? super T> action) {
+        map(items, parallelism, item -> {
+            action.accept(item);
+            return null;
+        });
+    }
+
+    /**
+     * Applies {@code function} to every item, returning results in iteration order. If any invocation
+     * fails, the first failure is rethrown once all invocations completed; later failures are attached to
+     * it as suppressed exceptions.
+     */
+    static <T, R> List<R> map(Collection<T> items, int parallelism, Function<? super T, ? extends R> function) {
+        final List<R> results = new ArrayList<R>(items.size());
+        if (items.size() <= 1 || parallelism <= 1) {
+            RuntimeException failure = null;
+            for (T item : items) {
+                try {
+                    results.add(function.apply(item));
+                } catch (RuntimeException e) {
+                    failure = merge(failure, e);
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            return results;
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, items.size()), THREAD_FACTORY);
+        try {
+            final List<Future<? extends R>> futures = new ArrayList<Future<? extends R>>(items.size());
+            for (final T item : items) {
+                futures.add(executor.submit(() -> function.apply(item)));
+            }
+
+            RuntimeException failure = null;
+            for (Future<? extends R> future : futures) {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException e) {
+                    failure = merge(failure, unwrap(e.getCause()));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    failure = merge(failure, new EmbeddedRedisException("Interrupted while waiting for redis instances", e));
+                    break;
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Waits for an asynchronous lifecycle operation, rethrowing its failure as it was raised.
+     */
+    static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw unwrap(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new EmbeddedRedisException("Interrupted while waiting for redis instance", e);
+        }
+    }
+
+    static RuntimeException merge(RuntimeException failure, RuntimeException next) {
+        if (failure == null) {
+            return next;
+        }
+        if (failure != next) {
+            failure.addSuppressed(next);
+        }
+        return failure;
+    }
+
+    private static RuntimeException unwrap(Throwable cause) {
+        if (cause instanceof RuntimeException) {
+            return (RuntimeException) cause;
+        }
+        return new EmbeddedRedisException("Redis lifecycle task failed", cause);
+    }
+}
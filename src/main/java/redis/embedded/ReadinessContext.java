@@ -0,0 +1,39 @@
+package redis.embedded;
+
+import java.io.BufferedReader;
+import java.nio.file.Path;
+import java.util.Optional;
+
+/**
+ * What a {@link ReadinessStrategy} may observe about a Redis process that is starting up.
+ */
+public interface ReadinessContext {
+    /**
+     * Operating system pid of the process, or a negative value if it is unknown.
+     */
+    long pid();
+
+    boolean isProcessAlive();
+
+    /**
+     * Address the instance is expected to accept plain (non-TLS) connections on.
+     */
+    String host();
+
+    /**
+     * Plain TCP port of the instance, or {@code 0} if it only listens for TLS connections.
+     */
+    int port();
+
+    /**
+     * Unix domain socket the instance listens on, if it was configured with one.
+     */
+    default Optional<Path> unixSocket() {
+        return Optional.empty();
+    }
+
+    /**
+     * The process' standard output. Strategies that do not read it must not close it.
+     */
+    BufferedReader output();
+}
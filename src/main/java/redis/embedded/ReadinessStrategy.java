@@ -0,0 +1,14 @@
+package redis.embedded;
+
+import redis.embedded.exceptions.EmbeddedRedisException;
+
+/**
+ * Decides when a freshly spawned Redis process is ready to accept connections.
+ */
+public interface ReadinessStrategy {
+    /**
+     * Blocks until the instance described by {@code context} is ready, or throws an
+     * {@link EmbeddedRedisException} once it is clear that it never will be.
+     */
+    void awaitReady(ReadinessContext context) throws EmbeddedRedisException;
+}
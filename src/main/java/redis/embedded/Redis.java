@@ -2,16 +2,71 @@ package redis.embedded;
 
 import redis.embedded.exceptions.EmbeddedRedisException;
 
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public interface Redis {
     boolean isActive();
 
     void start() throws EmbeddedRedisException;
 
+    /**
+     * Starts this instance without blocking the calling thread. The returned future completes with this
+     * instance once it is ready to accept connections, or exceptionally with an
+     * {@link EmbeddedRedisException} if it could not be started.
+     */
+    default CompletableFuture<? extends Redis> startAsync() {
+        return CompletableFuture.supplyAsync(() -> {
+            start();
+            return this;
+        }, ParallelExecution.ASYNC_EXECUTOR);
+    }
+
     void stop() throws EmbeddedRedisException;
 
+    /**
+     * Stops this instance with the given strategy instead of the configured one, e.g. a
+     * {@link redis.embedded.stop.ShutdownNoSaveStopStrategy} to skip the final snapshot. Implementations
+     * without pluggable stop strategies fall back to {@link #stop()}.
+     */
+    default void stop(StopStrategy strategy) throws EmbeddedRedisException {
+        stop();
+    }
+
+    /**
+     * Stops this instance without blocking the calling thread. The returned future completes once the
+     * instance has exited.
+     */
+    default CompletableFuture<Void> stopAsync() {
+        return CompletableFuture.runAsync(this::stop, ParallelExecution.ASYNC_EXECUTOR);
+    }
+
     List<Integer> ports();
 
     List<Integer> tlsPorts();
+
+    /**
+     * Unix domain sockets the instance listens on, empty unless it was configured with one.
+     */
+    default List<Path> unixSockets() {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Returns up to {@code n} of the most recently captured output lines, oldest first. Each instance
+     * retains its last few thousand lines; implementations that do not capture output return an empty list.
+     */
+    default List<RedisLogLine> recentLogs(int n) {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Returns the retained output lines captured at or after {@code since}, oldest first.
+     */
+    default List<RedisLogLine> logsSince(Instant since) {
+        return Collections.emptyList();
+    }
 }
@@ -1,19 +1,63 @@
 package redis.embedded;
 
 import com.google.common.collect.Lists;
+import org.apache.commons.io.IOUtils;
 import redis.embedded.exceptions.EmbeddedRedisException;
+import redis.embedded.stop.KillStopStrategy;
+import redis.embedded.util.RespClient;
 
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 public class RedisCluster implements Redis {
+    private static final long DEFAULT_CONVERGENCE_TIMEOUT_MILLIS = 30000L;
+    private static final int ADMIN_TIMEOUT_MILLIS = 5000;
+    private static final long MIN_POLL_DELAY_MILLIS = 1L;
+    private static final long MAX_POLL_DELAY_MILLIS = 100L;
+    private static final long FAILOVER_POLL_DELAY_MILLIS = 5L;
+    private static final int FAILOVER_PROBE_TIMEOUT_MILLIS = 1000;
+    static final String FAILOVER_PROBE_KEY = "embedded-redis:failover-probe";
+
     private final List<Redis> sentinels = new LinkedList<Redis>();
     private final List<Redis> servers = new LinkedList<Redis>();
+    private final List<Redis> masters = new LinkedList<Redis>();
+    private final List<Redis> replicas = new LinkedList<Redis>();
+    private final List<MonitoredGroup> groups = new ArrayList<MonitoredGroup>();
+    private final int parallelism;
 
     RedisCluster(List<Redis> sentinels, List<Redis> servers) {
+        this(sentinels, servers, Collections.<Redis>emptyList(), ParallelExecution.DEFAULT_PARALLELISM);
+    }
+
+    RedisCluster(List<Redis> sentinels, List<Redis> servers, List<Redis> replicas, int parallelism) {
+        this(sentinels, servers, replicas, Collections.<MonitoredGroup>emptyList(), parallelism);
+    }
+
+    RedisCluster(List<Redis> sentinels, List<Redis> servers, List<Redis> replicas, List<MonitoredGroup> groups, int parallelism) {
+        this.groups.addAll(groups);
         this.servers.addAll(servers);
         this.sentinels.addAll(sentinels);
+        this.replicas.addAll(replicas);
+        for (Redis server : servers) {
+            if (!replicas.contains(server)) {
+                this.masters.add(server);
+            }
+        }
+        this.parallelism = parallelism;
     }
 
     @Override
@@ -31,26 +75,80 @@ public class RedisCluster implements Redis {
         return true;
     }
 
+    /**
+     * Starts all masters, then all replicas, then all sentinels; instances within a phase are started
+     * concurrently. If any instance fails to start, every instance that did start is stopped again before
+     * the failure is rethrown.
+     */
     @Override
     public void start() throws EmbeddedRedisException {
-        for(Redis redis : sentinels) {
-            redis.start();
-        }
-        for(Redis redis : servers) {
-            redis.start();
+        final List<Redis> started = Collections.synchronizedList(new ArrayList<Redis>());
+        try {
+            for (List<Redis> phase : Arrays.asList(masters, replicas, sentinels)) {
+                ParallelExecution.forEach(phase, parallelism, redis -> {
+                    redis.start();
+                    started.add(redis);
+                });
+            }
+        } catch (RuntimeException e) {
+            try {
+                stop(started, Redis::stop);
+            } catch (RuntimeException rollbackFailure) {
+                e.addSuppressed(rollbackFailure);
+            }
+            throw e;
         }
     }
 
+    @Override
+    public CompletableFuture<RedisCluster> startAsync() {
+        return CompletableFuture.supplyAsync(() -> {
+            start();
+            return this;
+        }, ParallelExecution.ASYNC_EXECUTOR);
+    }
+
+    /**
+     * Stops all sentinels first, so that they do not react to the servers going away, then replicas and
+     * finally masters. Every instance is asked to stop even if stopping another one fails.
+     */
     @Override
     public void stop() throws EmbeddedRedisException {
-        for(Redis redis : sentinels) {
-            redis.stop();
+        stop(allInstances(), Redis::stop);
+    }
+
+    /**
+     * Stops every instance with the given strategy, in the same order as {@link #stop()}. For example,
+     * {@link redis.embedded.stop.ShutdownNoSaveStopStrategy} stops the whole cluster without any node writing
+     * a final snapshot.
+     */
+    @Override
+    public void stop(StopStrategy strategy) throws EmbeddedRedisException {
+        stop(allInstances(), redis -> redis.stop(strategy));
+    }
+
+    private void stop(Collection<Redis> instances, Consumer<Redis> stopper) {
+        RuntimeException failure = null;
+        for (List<Redis> phase : Arrays.asList(sentinels, replicas, masters)) {
+            final List<Redis> toStop = new ArrayList<Redis>(phase);
+            toStop.retainAll(instances);
+            try {
+                ParallelExecution.forEach(toStop, parallelism, stopper);
+            } catch (RuntimeException e) {
+                failure = ParallelExecution.merge(failure, e);
+            }
         }
-        for(Redis redis : servers) {
-            redis.stop();
+        if (failure != null) {
+            throw failure;
         }
     }
 
+    private List<Redis> allInstances() {
+        List<Redis> instances = new ArrayList<Redis>(sentinels);
+        instances.addAll(servers);
+        return instances;
+    }
+
     @Override
     public List<Integer> ports() {
         List<Integer> ports = new ArrayList<Integer>();
@@ -67,6 +165,363 @@ public class RedisCluster implements Redis {
         return ports;
     }
 
+    @Override
+    public List<Path> unixSockets() {
+        List<Path> sockets = new ArrayList<Path>();
+        for (Redis redis : allInstances()) {
+            sockets.addAll(redis.unixSockets());
+        }
+        return sockets;
+    }
+
+    /**
+     * Returns up to {@code n} of the most recent output lines of all instances, merged in capture order.
+     */
+    @Override
+    public List<RedisLogLine> recentLogs(int n) {
+        return MergedLogs.recent(allInstances(), n);
+    }
+
+    @Override
+    public List<RedisLogLine> logsSince(Instant since) {
+        return MergedLogs.since(allInstances(), since);
+    }
+
+    /**
+     * CPUs each pinned instance runs on, sentinels first; instances that are not pinned are left out.
+     */
+    public Map<Redis, CpuSet> cpuAssignments() {
+        final Map<Redis, CpuSet> assignments = new LinkedHashMap<Redis, CpuSet>();
+        for (Redis redis : allInstances()) {
+            if (redis instanceof AbstractRedisInstance) {
+                ((AbstractRedisInstance) redis).cpuSet().ifPresent(cpuSet -> assignments.put(redis, cpuSet));
+            }
+        }
+        return assignments;
+    }
+
+    /**
+     * Like {@link #awaitSentinelConvergence(Duration)}, waiting up to
+     * {@value #DEFAULT_CONVERGENCE_TIMEOUT_MILLIS}ms.
+     */
+    public void awaitSentinelConvergence() throws EmbeddedRedisException {
+        awaitSentinelConvergence(Duration.ofMillis(DEFAULT_CONVERGENCE_TIMEOUT_MILLIS));
+    }
+
+    /**
+     * Waits until the sentinels have discovered the whole topology: for every replication group, every
+     * sentinel reports the same master address, all of the group's replicas and all other sentinels. Right
+     * after {@link #start()}, sentinels have only been told about the masters and learn about replicas and
+     * each other over the following seconds. The sentinels are polled concurrently.
+     *
+     * @throws EmbeddedRedisException if the sentinels do not agree within {@code timeout}
+     */
+    public void awaitSentinelConvergence(Duration timeout) throws EmbeddedRedisException {
+        awaitSentinelConvergence(System.nanoTime() + timeout.toNanos(), timeout);
+    }
+
+    /**
+     * Like {@link #awaitSentinelConvergence(Duration)}, giving up at {@code deadline} in
+     * {@link System#nanoTime()} terms; {@code timeout} is only reported.
+     */
+    private void awaitSentinelConvergence(long deadline, Duration timeout) throws EmbeddedRedisException {
+        final List<AbstractRedisInstance> polled = pollableSentinels();
+        if (polled.isEmpty() || groups.isEmpty()) {
+            return;
+        }
+        long delay = MIN_POLL_DELAY_MILLIS;
+        while (true) {
+            final List<Map<String, SentinelView>> views = ParallelExecution.map(polled, parallelism, this::sentinelView);
+            final String disagreement = disagreement(views);
+            if (disagreement == null) {
+                return;
+            }
+            if (System.nanoTime() - deadline > 0) {
+                throw new EmbeddedRedisException("Sentinels did not converge within " + timeout.toMillis() + "ms: " + disagreement);
+            }
+            sleep(delay);
+            delay = Math.min(delay * 2, MAX_POLL_DELAY_MILLIS);
+        }
+    }
+
+    private List<AbstractRedisInstance> pollableSentinels() {
+        final List<AbstractRedisInstance> polled = new ArrayList<AbstractRedisInstance>();
+        for (Redis sentinel : sentinels) {
+            if (sentinel instanceof AbstractRedisInstance) {
+                polled.add((AbstractRedisInstance) sentinel);
+            }
+        }
+        return polled;
+    }
+
+    /**
+     * Like {@link #failover(String, FailoverTrigger, Duration)}, waiting up to the group's
+     * {@code down-after-milliseconds} plus {@code failover-timeout}.
+     */
+    public FailoverReport failover(String masterName, FailoverTrigger trigger) throws EmbeddedRedisException {
+        final MonitoredGroup group = group(masterName);
+        return failover(masterName, trigger, Duration.ofMillis(group.downAfterMillis + group.failoverTimeoutMillis));
+    }
+
+    /**
+     * Fails over the replication group {@code masterName} and waits until every sentinel advertises the
+     * new master and it accepts writes. Waits for the sentinels to converge first, since they can only
+     * promote replicas they know about. While waiting, the master the sentinels advertise is probed with
+     * writes to the key {@value #FAILOVER_PROBE_KEY} to measure the client-visible downtime.
+     *
+     * @throws EmbeddedRedisException if convergence and failover together do not complete within
+     *                                {@code timeout}
+     */
+    public FailoverReport failover(String masterName, FailoverTrigger trigger, Duration timeout) throws EmbeddedRedisException {
+        group(masterName);
+        final List<AbstractRedisInstance> polled = pollableSentinels();
+        if (polled.isEmpty()) {
+            throw new EmbeddedRedisException("A failover needs running sentinels");
+        }
+        final long deadline = System.nanoTime() + timeout.toNanos();
+        awaitSentinelConvergence(deadline, timeout);
+        final InetSocketAddress oldMaster = advertisedMaster(polled.get(0), masterName);
+        final WriteProbe probe = new WriteProbe();
+        try {
+            probe.write(oldMaster);
+            final Instant triggered = Instant.now();
+            if (trigger == FailoverTrigger.KILL_MASTER) {
+                serverOnPort(oldMaster.getPort()).stop(new KillStopStrategy());
+            } else {
+                try (RespClient client = polled.get(0).connect(ADMIN_TIMEOUT_MILLIS)) {
+                    client.call("SENTINEL", "FAILOVER", masterName);
+                } catch (IOException e) {
+                    throw new EmbeddedRedisException("Failed to ask a sentinel to fail over " + masterName, e);
+                }
+            }
+            while (true) {
+                final List<InetSocketAddress> advertised = ParallelExecution.map(polled, parallelism, sentinel -> advertisedMaster(sentinel, masterName));
+                final InetSocketAddress newMaster = advertised.get(0);
+                final boolean switched = newMaster != null && !newMaster.equals(oldMaster) && Collections.frequency(advertised, newMaster) == advertised.size();
+                probe.write(newMaster != null ? newMaster : oldMaster);
+                if (switched && probe.isUp(newMaster)) {
+                    final Instant completed = Instant.now();
+                    final Instant switchEvent = firstSentinelEvent(triggered, "+switch-master " + masterName + " ");
+                    return new FailoverReport(masterName, trigger, oldMaster.getPort(), newMaster.getPort(), triggered,
+                            firstSentinelEvent(triggered, "+odown master " + masterName + " "),
+                            firstSentinelEvent(triggered, "+elected-leader master " + masterName + " "),
+                            switchEvent != null ? switchEvent : completed,
+                            completed, probe.downtime(triggered));
+                }
+                if (System.nanoTime() - deadline > 0) {
+                    throw new EmbeddedRedisException("Failover of " + masterName + " did not complete within " + timeout.toMillis()
+                            + "ms; sentinels advertise " + advertised);
+                }
+                sleep(FAILOVER_POLL_DELAY_MILLIS);
+            }
+        } finally {
+            probe.close();
+        }
+    }
+
+    private MonitoredGroup group(String masterName) {
+        for (MonitoredGroup group : groups) {
+            if (group.name.equals(masterName)) {
+                return group;
+            }
+        }
+        throw new IllegalArgumentException("No replication group named " + masterName);
+    }
+
+    /**
+     * The master a sentinel currently advertises for {@code masterName}, or {@code null} if it cannot be
+     * asked right now.
+     */
+    private static InetSocketAddress advertisedMaster(AbstractRedisInstance sentinel, String masterName) {
+        try (RespClient client = sentinel.connect(ADMIN_TIMEOUT_MILLIS)) {
+            final List<?> address = (List<?>) client.call("SENTINEL", "GET-MASTER-ADDR-BY-NAME", masterName);
+            return address != null ? InetSocketAddress.createUnresolved((String) address.get(0), Integer.parseInt((String) address.get(1))) : null;
+        } catch (IOException | EmbeddedRedisException e) {
+            return null;
+        }
+    }
+
+    private Redis serverOnPort(int port) {
+        for (Redis server : servers) {
+            if (server.ports().contains(port)) {
+                return server;
+            }
+        }
+        throw new EmbeddedRedisException("No server of this cluster listens on the master port " + port);
+    }
+
+    /**
+     * When the first sentinel logged a line containing {@code event}, or {@code null} if none did.
+     */
+    private Instant firstSentinelEvent(Instant since, String event) {
+        Instant first = null;
+        for (Redis sentinel : sentinels) {
+            for (RedisLogLine line : sentinel.logsSince(since)) {
+                if (line.text().contains(event) && (first == null || line.timestamp().isBefore(first))) {
+                    first = line.timestamp();
+                }
+            }
+        }
+        return first;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new EmbeddedRedisException("Interrupted while waiting for sentinels", e);
+        }
+    }
+
+    /**
+     * Writes to whichever master it is pointed at and records the stretches in which writes failed.
+     */
+    private static final class WriteProbe {
+        private final WriteOutages outages = new WriteOutages();
+        private InetSocketAddress target;
+        private RespClient client;
+        private long writes;
+
+        private void write(InetSocketAddress master) {
+            try {
+                if (client == null || !master.equals(target)) {
+                    close();
+                    target = master;
+                    client = new RespClient(master.getHostString(), master.getPort(), FAILOVER_PROBE_TIMEOUT_MILLIS);
+                }
+                client.call("SET", FAILOVER_PROBE_KEY, Long.toString(++writes));
+                outages.succeeded(Instant.now());
+            } catch (IOException | EmbeddedRedisException e) {
+                // down, or already demoted to a read-only replica
+                close();
+                outages.failed(Instant.now());
+            }
+        }
+
+        private boolean isUp(InetSocketAddress master) {
+            return master.equals(target) && client != null;
+        }
+
+        /**
+         * The longest outage since {@code triggered}.
+         */
+        private Duration downtime(Instant triggered) {
+            return outages.longest(triggered, Instant.now());
+        }
+
+        private void close() {
+            if (client != null) {
+                IOUtils.closeQuietly(client, null);
+                client = null;
+            }
+        }
+    }
+
+    /**
+     * What one sentinel knows about each group, or an empty map if it cannot be asked right now.
+     */
+    private Map<String, SentinelView> sentinelView(AbstractRedisInstance sentinel) {
+        final Map<String, SentinelView> views = new LinkedHashMap<String, SentinelView>();
+        final List<String[]> commands = new ArrayList<String[]>();
+        commands.add(new String[]{"SENTINEL", "MASTERS"});
+        for (MonitoredGroup group : groups) {
+            commands.add(new String[]{"SENTINEL", "REPLICAS", group.name});
+            commands.add(new String[]{"SENTINEL", "SENTINELS", group.name});
+        }
+        final List<Object> replies;
+        try (RespClient client = sentinel.connect(ADMIN_TIMEOUT_MILLIS)) {
+            replies = client.pipeline(commands);
+        } catch (IOException e) {
+            return views;
+        }
+        if (!(replies.get(0) instanceof List)) {
+            return views;
+        }
+        final Map<String, String> addresses = new HashMap<String, String>();
+        for (Object master : (List<?>) replies.get(0)) {
+            final Map<String, String> fields = fields(master);
+            addresses.put(fields.get("name"), fields.get("ip") + ":" + fields.get("port"));
+        }
+        for (int i = 0; i < groups.size(); i++) {
+            final String name = groups.get(i).name;
+            if (addresses.containsKey(name)) {
+                views.put(name, new SentinelView(addresses.get(name), reachable(replies.get(1 + 2 * i)), reachable(replies.get(2 + 2 * i))));
+            }
+        }
+        return views;
+    }
+
+    /**
+     * Entries of a {@code SENTINEL REPLICAS} or {@code SENTINELS} reply that are not flagged as down or
+     * disconnected.
+     */
+    private static int reachable(Object reply) {
+        if (!(reply instanceof List)) {
+            return -1;
+        }
+        int reachable = 0;
+        for (Object entry : (List<?>) reply) {
+            final String flags = fields(entry).get("flags");
+            if (flags != null && !flags.contains("s_down") && !flags.contains("o_down") && !flags.contains("disconnected")) {
+                reachable++;
+            }
+        }
+        return reachable;
+    }
+
+    private static Map<String, String> fields(Object entry) {
+        final Map<String, String> fields = new HashMap<String, String>();
+        final List<?> list = (List<?>) entry;
+        for (int i = 0; i + 1 < list.size(); i += 2) {
+            fields.put(String.valueOf(list.get(i)), String.valueOf(list.get(i + 1)));
+        }
+        return fields;
+    }
+
+    /**
+     * Describes the first way in which the sentinels' views differ from each other or from the built
+     * topology, or returns {@code null} if they have converged.
+     */
+    private String disagreement(List<Map<String, SentinelView>> views) {
+        for (MonitoredGroup group : groups) {
+            String address = null;
+            for (int i = 0; i < views.size(); i++) {
+                final SentinelView view = views.get(i).get(group.name);
+                if (view == null) {
+                    return "sentinel " + i + " does not monitor " + group.name;
+                }
+                if (address == null) {
+                    address = view.masterAddress;
+                } else if (!address.equals(view.masterAddress)) {
+                    return "sentinels disagree on the master of " + group.name + ": " + address + " and " + view.masterAddress;
+                }
+                if (view.replicas != group.replicas) {
+                    return "sentinel " + i + " sees " + view.replicas + " of " + group.replicas + " replicas of " + group.name;
+                }
+                if (view.sentinels != views.size() - 1) {
+                    return "sentinel " + i + " sees " + view.sentinels + " of " + (views.size() - 1) + " other sentinels of " + group.name;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * How long each replica took to finish its initial sync in the most recent start, see
+     * {@link StartupPhase#REPLICA_SYNC}. Replicas that did not wait for their sync are left out.
+     */
+    public Map<Redis, Duration> replicaSyncTimes() {
+        final Map<Redis, Duration> syncTimes = new LinkedHashMap<Redis, Duration>();
+        for (Redis replica : replicas) {
+            if (replica instanceof AbstractRedisInstance) {
+                ((AbstractRedisInstance) replica).startupReport().duration(StartupPhase.REPLICA_SYNC)
+                        .ifPresent(syncTime -> syncTimes.put(replica, syncTime));
+            }
+        }
+        return syncTimes;
+    }
+
     public List<Redis> sentinels() {
         return Lists.newLinkedList(sentinels);
     }
@@ -110,4 +565,33 @@ public class RedisCluster implements Redis {
     public static RedisClusterBuilder builder() {
         return new RedisClusterBuilder();
     }
+
+    /**
+     * A replication group the sentinels monitor, as built.
+     */
+    static final class MonitoredGroup {
+        private final String name;
+        private final int replicas;
+        private final long downAfterMillis;
+        private final long failoverTimeoutMillis;
+
+        MonitoredGroup(String name, int replicas, long downAfterMillis, long failoverTimeoutMillis) {
+            this.name = name;
+            this.replicas = replicas;
+            this.downAfterMillis = downAfterMillis;
+            this.failoverTimeoutMillis = failoverTimeoutMillis;
+        }
+    }
+
+    private static final class SentinelView {
+        private final String masterAddress;
+        private final int replicas;
+        private final int sentinels;
+
+        private SentinelView(String masterAddress, int replicas, int sentinels) {
+            this.masterAddress = masterAddress;
+            this.replicas = replicas;
+            this.sentinels = sentinels;
+        }
+    }
 }
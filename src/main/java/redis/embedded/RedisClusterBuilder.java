@@ -1,5 +1,6 @@
 package redis.embedded;
 
+import redis.embedded.exceptions.EmbeddedRedisException;
 import redis.embedded.ports.EphemeralPortProvider;
 import redis.embedded.ports.PredefinedPortProvider;
 import redis.embedded.ports.SequencePortProvider;
@@ -8,6 +9,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.function.Supplier;
 
 public class RedisClusterBuilder {
     private RedisSentinelBuilder sentinelBuilder = new RedisSentinelBuilder();
@@ -16,6 +18,13 @@ public class RedisClusterBuilder {
     private int quorumSize = 1;
     private PortProvider sentinelPortProvider = new SequencePortProvider(26379);
     private PortProvider replicationGroupPortProvider = new SequencePortProvider(6379);
+    private boolean discoverSentinelPorts;
+    private boolean discoverServerPorts;
+    private int parallelism = ParallelExecution.DEFAULT_PARALLELISM;
+    private CpuAffinity cpuAffinity;
+    private MemoryBudget memoryBudget;
+    private long maxmemoryPerServer;
+    private boolean awaitReplicaSync = true;
     private final List<ReplicationGroup> groups = new LinkedList<ReplicationGroup>();
 
     public RedisClusterBuilder withSentinelBuilder(RedisSentinelBuilder sentinelBuilder) {
@@ -30,22 +39,38 @@ public class RedisClusterBuilder {
 
     public RedisClusterBuilder sentinelPorts(Collection<Integer> ports) {
         this.sentinelPortProvider = new PredefinedPortProvider(ports);
+        this.discoverSentinelPorts = false;
         this.sentinelCount = ports.size();
         return this;
     }
 
     public RedisClusterBuilder serverPorts(Collection<Integer> ports) {
         this.replicationGroupPortProvider = new PredefinedPortProvider(ports);
+        this.discoverServerPorts = false;
+        return this;
+    }
+
+    /**
+     * Takes sentinel and server ports from {@code portProvider}, e.g. a
+     * {@link redis.embedded.ports.LeasedPortProvider} to run clusters from several JVMs at once.
+     */
+    public RedisClusterBuilder portProvider(PortProvider portProvider) {
+        this.sentinelPortProvider = portProvider;
+        this.replicationGroupPortProvider = portProvider;
+        this.discoverSentinelPorts = false;
+        this.discoverServerPorts = false;
         return this;
     }
 
     public RedisClusterBuilder ephemeralSentinels() {
         this.sentinelPortProvider = new EphemeralPortProvider();
+        this.discoverSentinelPorts = false;
         return this;
     }
 
     public RedisClusterBuilder ephemeralServers() {
         this.replicationGroupPortProvider = new EphemeralPortProvider();
+        this.discoverServerPorts = false;
         return this;
     }
 
@@ -56,6 +81,31 @@ public class RedisClusterBuilder {
         return this;
     }
 
+    /**
+     * Like {@link #ephemeralSentinels()}, but each sentinel picks its port when it starts and retries if
+     * the port was taken in the meantime. Ports are known once the cluster has started.
+     */
+    public RedisClusterBuilder discoveredSentinels() {
+        this.discoverSentinelPorts = true;
+        return this;
+    }
+
+    /**
+     * Like {@link #ephemeralServers()}, but each server picks its port when it starts and retries if the
+     * port was taken in the meantime. Replicas and sentinels are pointed at the port their master actually
+     * listens on.
+     */
+    public RedisClusterBuilder discoveredServers() {
+        this.discoverServerPorts = true;
+        return this;
+    }
+
+    public RedisClusterBuilder discovered() {
+        discoveredSentinels();
+        discoveredServers();
+        return this;
+    }
+
     public RedisClusterBuilder sentinelCount(int sentinelCount) {
         this.sentinelCount = sentinelCount;
         return this;
@@ -63,6 +113,7 @@ public class RedisClusterBuilder {
 
     public RedisClusterBuilder sentinelStartingPort(int startingPort) {
         this.sentinelPortProvider = new SequencePortProvider(startingPort);
+        this.discoverSentinelPorts = false;
         return this;
     }
 
@@ -72,76 +123,237 @@ public class RedisClusterBuilder {
     }
 
     public RedisClusterBuilder replicationGroup(String masterName, int slaveCount) {
-        this.groups.add(new ReplicationGroup(masterName, slaveCount, this.replicationGroupPortProvider));
+        this.groups.add(discoverServerPorts
+                ? new ReplicationGroup(masterName, slaveCount)
+                : new ReplicationGroup(masterName, slaveCount, this.replicationGroupPortProvider));
         return this;
     }
 
-    public RedisCluster build() {
-        final List<Redis> sentinels = buildSentinels();
-        final List<Redis> servers = buildServers();
-        return new RedisCluster(sentinels, servers);
+    /**
+     * Like {@link #replicationGroup(String, int)}, with the sentinels' {@code down-after-milliseconds} and
+     * {@code failover-timeout} for this group instead of the sentinel builder's, e.g. to fail over within
+     * seconds in tests of {@link RedisCluster#failover(String, FailoverTrigger)}.
+     */
+    public RedisClusterBuilder replicationGroup(String masterName, int slaveCount, long downAfterMilliseconds, long failoverTimeoutMilliseconds) {
+        replicationGroup(masterName, slaveCount);
+        final ReplicationGroup group = groups.get(groups.size() - 1);
+        group.downAfterMillis = downAfterMilliseconds;
+        group.failoverTimeoutMillis = failoverTimeoutMilliseconds;
+        return this;
     }
 
-    private List<Redis> buildServers() {
-        List<Redis> servers = new ArrayList<Redis>();
-        for(ReplicationGroup g : groups) {
-            servers.add(buildMaster(g));
-            buildSlaves(servers, g);
+    /**
+     * Pins every sentinel and server to CPUs chosen by {@code cpuAffinity}, e.g.
+     * {@link redis.embedded.affinity.SpreadingCpuAffinity#shared()} to spread them over cores and NUMA
+     * nodes. Servers get one CPU per I/O thread of the server builder. See {@link RedisCluster#cpuAssignments()}.
+     */
+    public RedisClusterBuilder cpuAffinity(CpuAffinity cpuAffinity) {
+        this.cpuAffinity = cpuAffinity;
+        return this;
+    }
+
+    /**
+     * Caps every server at {@code maxmemoryPerServer} bytes under {@code budget}, see
+     * {@link RedisServerBuilder#memoryBudget(MemoryBudget, long)}. Sentinels hold no data and are not
+     * counted.
+     */
+    public RedisClusterBuilder memoryBudget(MemoryBudget budget, long maxmemoryPerServer) {
+        this.memoryBudget = budget;
+        this.maxmemoryPerServer = maxmemoryPerServer;
+        return this;
+    }
+
+    /**
+     * Whether a replica only counts as started once its initial sync with the master is done, which is the
+     * default. All replicas sync concurrently; see {@link RedisCluster#replicaSyncTimes()}.
+     */
+    public RedisClusterBuilder awaitReplicaSync(boolean awaitReplicaSync) {
+        this.awaitReplicaSync = awaitReplicaSync;
+        return this;
+    }
+
+    public RedisClusterBuilder parallelism(int parallelism) {
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    public RedisCluster build() {
+        final List<NodeSpec> specs = new ArrayList<NodeSpec>();
+        int toBuild = this.sentinelCount;
+        while (toBuild-- > 0) {
+            final int sentinelPort = discoverSentinelPorts ? 0 : nextSentinelPort();
+            specs.add(new NodeSpec(NodeRole.SENTINEL, () -> buildSentinel(sentinelPort)));
+        }
+        for (final ReplicationGroup g : groups) {
+            specs.add(new NodeSpec(NodeRole.MASTER, () -> buildMaster(g)));
+            for (final Integer slavePort : g.slavePorts) {
+                specs.add(new NodeSpec(NodeRole.REPLICA, () -> buildSlave(g, slavePort)));
+            }
+        }
+
+        final List<Redis> nodes = ParallelExecution.map(specs, parallelism, spec -> spec.builder.get());
+
+        final List<Redis> sentinels = new LinkedList<Redis>();
+        final List<Redis> servers = new ArrayList<Redis>();
+        final List<Redis> replicas = new ArrayList<Redis>();
+        for (int i = 0; i < specs.size(); i++) {
+            final Redis node = nodes.get(i);
+            switch (specs.get(i).role) {
+                case SENTINEL:
+                    sentinels.add(node);
+                    break;
+                case REPLICA:
+                    replicas.add(node);
+                    servers.add(node);
+                    break;
+                default:
+                    servers.add(node);
+            }
         }
-        return servers;
+        final List<RedisCluster.MonitoredGroup> monitored = new ArrayList<RedisCluster.MonitoredGroup>();
+        for (ReplicationGroup g : groups) {
+            monitored.add(new RedisCluster.MonitoredGroup(g.masterName, g.slavePorts.size(),
+                    g.downAfterMillis(sentinelBuilder), g.failoverTimeoutMillis(sentinelBuilder)));
+        }
+        return new RedisCluster(sentinels, servers, replicas, monitored, parallelism);
     }
 
-    private void buildSlaves(List<Redis> servers, ReplicationGroup g) {
-        for (Integer slavePort : g.slavePorts) {
-            serverBuilder.reset();
-            serverBuilder.port(slavePort);
-            serverBuilder.slaveOf("localhost", g.masterPort);
-            final RedisServer slave = serverBuilder.build();
-            servers.add(slave);
+    private Redis buildSlave(ReplicationGroup g, int slavePort) {
+        if (g.discoverPorts) {
+            return serverBuilder()
+                    .discoverPort()
+                    .slaveOf("localhost", g::currentMasterPort)
+                    .awaitReplicaSync(awaitReplicaSync)
+                    .build();
         }
+        return serverBuilder()
+                .port(slavePort)
+                .slaveOf("localhost", g.masterPort)
+                .awaitReplicaSync(awaitReplicaSync)
+                .build();
     }
 
     private Redis buildMaster(ReplicationGroup g) {
-        serverBuilder.reset();
-        return serverBuilder.port(g.masterPort).build();
+        if (g.discoverPorts) {
+            final Redis master = masterBuilder(g).discoverPort().build();
+            g.master = master;
+            return master;
+        }
+        return masterBuilder(g).port(g.masterPort).build();
     }
 
-    private List<Redis> buildSentinels() {
-        int toBuild = this.sentinelCount;
-        final List<Redis> sentinels = new LinkedList<Redis>();
-        while (toBuild-- > 0) {
-            sentinels.add(buildSentinel());
+    private RedisServerBuilder masterBuilder(ReplicationGroup g) {
+        final RedisServerBuilder builder = serverBuilder();
+        if (awaitReplicaSync && !g.slavePorts.isEmpty()) {
+            // sync as soon as all replicas are waiting rather than after repl-diskless-sync-delay
+            builder.setting("repl-diskless-sync-max-replicas " + g.slavePorts.size());
         }
-        return sentinels;
+        return builder;
     }
 
-    private Redis buildSentinel() {
-        sentinelBuilder.reset();
-        sentinelBuilder.port(nextSentinelPort());
+    private RedisServerBuilder serverBuilder() {
+        final RedisServerBuilder builder = serverBuilder.copy();
+        if (cpuAffinity != null) {
+            builder.cpuAffinity(cpuAffinity);
+        }
+        if (memoryBudget != null) {
+            builder.memoryBudget(memoryBudget, maxmemoryPerServer);
+        }
+        return builder;
+    }
+
+    private Redis buildSentinel(int sentinelPort) {
+        final RedisSentinelBuilder builder = sentinelBuilder.copy();
+        if (cpuAffinity != null) {
+            builder.cpuAffinity(cpuAffinity);
+        }
+        if (discoverSentinelPorts) {
+            builder.discoverPort();
+        } else {
+            builder.port(sentinelPort);
+        }
         for(ReplicationGroup g : groups) {
-            sentinelBuilder.masterName(g.masterName);
-            sentinelBuilder.masterPort(g.masterPort);
-            sentinelBuilder.quorumSize(quorumSize);
-            sentinelBuilder.addDefaultReplicationGroup();
+            builder.masterName(g.masterName);
+            builder.quorumSize(quorumSize);
+            builder.downAfterMilliseconds(g.downAfterMillis(sentinelBuilder));
+            builder.failoverTimeout(g.failoverTimeoutMillis(sentinelBuilder));
+            if (g.discoverPorts) {
+                builder.addReplicationGroup(g::currentMasterPort);
+            } else {
+                builder.masterPort(g.masterPort);
+                builder.addDefaultReplicationGroup();
+            }
         }
-        return sentinelBuilder.build();
+        return builder.build();
     }
 
     private int nextSentinelPort() {
         return sentinelPortProvider.next();
     }
 
+    private enum NodeRole {
+        SENTINEL,
+        MASTER,
+        REPLICA
+    }
+
+    private static class NodeSpec {
+        private final NodeRole role;
+        private final Supplier<Redis> builder;
+
+        private NodeSpec(NodeRole role, Supplier<Redis> builder) {
+            this.role = role;
+            this.builder = builder;
+        }
+    }
+
     private static class ReplicationGroup {
         private final String masterName;
         private final int masterPort;
         private final List<Integer> slavePorts = new LinkedList<Integer>();
+        private final boolean discoverPorts;
+        private volatile Redis master;
+        private Long downAfterMillis;
+        private Long failoverTimeoutMillis;
 
         private ReplicationGroup(String masterName, int slaveCount, PortProvider portProvider) {
             this.masterName = masterName;
+            this.discoverPorts = false;
             masterPort = portProvider.next();
             while (slaveCount-- > 0) {
                 slavePorts.add(portProvider.next());
             }
         }
+
+        private ReplicationGroup(String masterName, int slaveCount) {
+            this.masterName = masterName;
+            this.discoverPorts = true;
+            masterPort = 0;
+            while (slaveCount-- > 0) {
+                slavePorts.add(0);
+            }
+        }
+
+        private long downAfterMillis(RedisSentinelBuilder defaults) {
+            return downAfterMillis != null ? downAfterMillis : defaults.downAfterMillis();
+        }
+
+        private long failoverTimeoutMillis(RedisSentinelBuilder defaults) {
+            return failoverTimeoutMillis != null ? failoverTimeoutMillis : defaults.failoverTimeoutMillis();
+        }
+
+        /**
+         * The port the master listens on; with discovered ports, only known once the master has started.
+         */
+        private int currentMasterPort() {
+            if (!discoverPorts) {
+                return masterPort;
+            }
+            final List<Integer> ports = master.ports();
+            if (ports.isEmpty()) {
+                throw new EmbeddedRedisException("Master " + masterName + " has not been started");
+            }
+            return ports.get(0);
+        }
     }
 }
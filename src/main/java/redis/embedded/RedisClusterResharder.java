@@ -0,0 +1,376 @@
+package redis.embedded;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ContiguousSet;
+import com.google.common.collect.DiscreteDomain;
+import com.google.common.collect.ImmutableRangeSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Range;
+import com.google.common.collect.RangeSet;
+import redis.embedded.exceptions.EmbeddedRedisException;
+import redis.embedded.exceptions.RedisCommandException;
+import redis.embedded.util.RespClient;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Moves hash slots between the shards of a running {@link RedisShardedCluster}, the way
+ * {@code redis-cli --cluster reshard} does: each slot is marked {@code IMPORTING} on the target and
+ * {@code MIGRATING} on the source, its keys are moved in pipelined {@code MIGRATE} batches, and the slot is
+ * then assigned to the target on every master. Clients keep working throughout, following {@code ASK} and
+ * {@code MOVED} redirects.
+ *
+ * <p>Obtained from {@link RedisShardedCluster#resharder()}, which returns a new instance per call; the
+ * settings apply to later migrations run through that instance.</p>
+ */
+public class RedisClusterResharder {
+    private static final int ADMIN_TIMEOUT_MILLIS = 5000;
+
+    private final RedisShardedCluster cluster;
+    private volatile int batchSize = 100;
+    private volatile int pipelineDepth = 4;
+    private volatile int parallelism = 4;
+    private volatile int migrateTimeoutMillis = 5000;
+    private volatile boolean measureBytes = false;
+
+    RedisClusterResharder(RedisShardedCluster cluster) {
+        this.cluster = cluster;
+    }
+
+    /**
+     * Keys moved by one {@code MIGRATE} command.
+     */
+    public RedisClusterResharder batchSize(int batchSize) {
+        Preconditions.checkArgument(batchSize > 0, "batchSize must be positive");
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * {@code MIGRATE} commands sent to a source before their replies are read.
+     */
+    public RedisClusterResharder pipelineDepth(int pipelineDepth) {
+        Preconditions.checkArgument(pipelineDepth > 0, "pipelineDepth must be positive");
+        this.pipelineDepth = pipelineDepth;
+        return this;
+    }
+
+    /**
+     * Slots migrated concurrently.
+     */
+    public RedisClusterResharder parallelism(int parallelism) {
+        Preconditions.checkArgument(parallelism > 0, "parallelism must be positive");
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * Timeout of each {@code MIGRATE} command for transferring its keys to the target.
+     */
+    public RedisClusterResharder migrateTimeoutMilliseconds(int migrateTimeoutMillis) {
+        this.migrateTimeoutMillis = migrateTimeoutMillis;
+        return this;
+    }
+
+    /**
+     * Whether to size the moved keys with {@code MEMORY USAGE} for {@link MigrationReport#bytes()}, which
+     * costs one more round trip per batch.
+     */
+    public RedisClusterResharder measureBytes(boolean measureBytes) {
+        this.measureBytes = measureBytes;
+        return this;
+    }
+
+    /**
+     * Moves slots {@code fromSlot} to {@code toSlot}, both inclusive, to {@code target}.
+     */
+    public MigrationReport migrate(int fromSlot, int toSlot, RedisClusterShard target) {
+        return migrate(ImmutableRangeSet.of(Range.closed(fromSlot, toSlot)), target);
+    }
+
+    /**
+     * Moves {@code slots} to {@code target}. Slots the target already serves are skipped. A master that
+     * gives up all its slots becomes a replica of the master that took the last one, as Redis does with
+     * {@code cluster-allow-replica-migration}.
+     */
+    public MigrationReport migrate(RangeSet<Integer> slots, RedisClusterShard target) {
+        Preconditions.checkArgument(cluster.shards().contains(target), "%s is not part of this cluster", target);
+        cluster.refreshSlots();
+        final List<Move> moves = new ArrayList<Move>();
+        for (Range<Integer> range : slots.asRanges()) {
+            final Range<Integer> all = Range.closedOpen(0, RedisShardedCluster.SLOTS);
+            if (!range.isConnected(all)) {
+                continue;
+            }
+            final Range<Integer> valid = range.intersection(all);
+            for (int slot : ContiguousSet.create(valid, DiscreteDomain.integers())) {
+                final RedisClusterShard source = cluster.shardForSlot(slot);
+                if (source != target) {
+                    moves.add(new Move(slot, source, target));
+                }
+            }
+        }
+        return run(moves);
+    }
+
+    /**
+     * Starts one more shard and moves to it each existing shard's slots above its new fair share, so that
+     * all shards end up with about the same number of slots. The new shard is the last of
+     * {@link RedisShardedCluster#shards()}.
+     */
+    public MigrationReport addShard() {
+        final Stopwatch stopwatch = Stopwatch.createStarted();
+        final List<RedisClusterShard> existing = new ArrayList<RedisClusterShard>(cluster.shards());
+        final RedisClusterShard added = cluster.addShard();
+        cluster.refreshSlots();
+        final List<Move> moves = new ArrayList<Move>();
+        final int shards = existing.size() + 1;
+        for (int i = 0; i < existing.size(); i++) {
+            final RedisClusterShard source = existing.get(i);
+            final int share = (i + 1) * RedisShardedCluster.SLOTS / shards - i * RedisShardedCluster.SLOTS / shards;
+            final List<Integer> owned = slotList(source.slots());
+            // the highest slots, so that each shard keeps a contiguous range
+            for (int slot : owned.subList(Math.min(share, owned.size()), owned.size())) {
+                moves.add(new Move(slot, source, added));
+            }
+        }
+        final MigrationReport report = run(moves);
+        return new MigrationReport(report.slots(), report.keys(), report.bytes(), stopwatch.elapsed());
+    }
+
+    /**
+     * Spreads the slots of {@code shard} evenly over the other shards, then removes it from the cluster and
+     * stops its nodes.
+     */
+    public MigrationReport removeShard(RedisClusterShard shard) {
+        final List<RedisClusterShard> remaining = new ArrayList<RedisClusterShard>(cluster.shards());
+        Preconditions.checkArgument(remaining.remove(shard), "%s is not part of this cluster", shard);
+        Preconditions.checkArgument(!remaining.isEmpty(), "Cannot remove the last shard of a cluster");
+        final Stopwatch stopwatch = Stopwatch.createStarted();
+        cluster.refreshSlots();
+        final List<Integer> owned = slotList(shard.slots());
+        final List<Move> moves = new ArrayList<Move>();
+        for (int i = 0; i < remaining.size(); i++) {
+            final int from = i * owned.size() / remaining.size();
+            final int to = (i + 1) * owned.size() / remaining.size();
+            for (int slot : owned.subList(from, to)) {
+                moves.add(new Move(slot, shard, remaining.get(i)));
+            }
+        }
+        final MigrationReport report = run(moves);
+        cluster.removeShard(shard);
+        return new MigrationReport(report.slots(), report.keys(), report.bytes(), stopwatch.elapsed());
+    }
+
+    private static List<Integer> slotList(RangeSet<Integer> slots) {
+        final List<Integer> list = new ArrayList<Integer>();
+        for (Range<Integer> range : slots.asRanges()) {
+            list.addAll(ContiguousSet.create(range, DiscreteDomain.integers()));
+        }
+        return list;
+    }
+
+    private MigrationReport run(List<Move> moves) {
+        final Stopwatch stopwatch = Stopwatch.createStarted();
+        final AtomicLong keys = new AtomicLong();
+        final AtomicLong bytes = new AtomicLong(measureBytes ? 0L : -1L);
+        if (!moves.isEmpty()) {
+            final int workers = Math.min(parallelism, moves.size());
+            final List<List<Move>> partitions = Lists.partition(moves, (moves.size() + workers - 1) / workers);
+            try {
+                ParallelExecution.forEach(partitions, workers, partition -> {
+                    try (Migrator migrator = new Migrator(cluster.masters())) {
+                        for (Move move : partition) {
+                            migrator.migrate(move, keys, bytes);
+                        }
+                    }
+                });
+            } finally {
+                cluster.refreshSlots();
+            }
+        }
+        return new MigrationReport(moves.size(), keys.get(), bytes.get(), stopwatch.elapsed());
+    }
+
+    private static final class Move {
+        private final int slot;
+        private final RedisClusterShard source;
+        private final RedisClusterShard target;
+
+        private Move(int slot, RedisClusterShard source, RedisClusterShard target) {
+            this.slot = slot;
+            this.source = source;
+            this.target = target;
+        }
+    }
+
+    /**
+     * Migrates slots one after another over connections it keeps open to every master.
+     */
+    private final class Migrator implements Closeable {
+        private final List<RedisServer> masters;
+        private final Map<RedisServer, RespClient> clients = new HashMap<RedisServer, RespClient>();
+        private final int batchSize = RedisClusterResharder.this.batchSize;
+        private final int pipelineDepth = RedisClusterResharder.this.pipelineDepth;
+        private final int migrateTimeoutMillis = RedisClusterResharder.this.migrateTimeoutMillis;
+        private final boolean measureBytes = RedisClusterResharder.this.measureBytes;
+
+        private Migrator(List<RedisServer> masters) {
+            this.masters = masters;
+        }
+
+        private void migrate(Move move, AtomicLong keys, AtomicLong bytes) {
+            final String slot = Integer.toString(move.slot);
+            final RedisServer source = move.source.master();
+            final RedisServer target = move.target.master();
+            call(target, "CLUSTER", "SETSLOT", slot, "IMPORTING", move.source.masterId());
+            try {
+                call(source, "CLUSTER", "SETSLOT", slot, "MIGRATING", move.target.masterId());
+                List<?> previous = null;
+                while (true) {
+                    final List<?> batch = (List<?>) call(source, "CLUSTER", "GETKEYSINSLOT", slot, Integer.toString(batchSize * pipelineDepth));
+                    if (batch.isEmpty()) {
+                        break;
+                    }
+                    if (batch.equals(previous)) {
+                        // e.g. keys that are not valid UTF-8, which MIGRATE cannot find under their decoded names
+                        throw new EmbeddedRedisException("Migrating slot " + slot + " from " + move.source + " to " + move.target
+                                + " makes no progress, " + batch.size() + " keys stay on the source: " + batch);
+                    }
+                    previous = batch;
+                    if (measureBytes) {
+                        bytes.addAndGet(measure(source, batch));
+                    }
+                    final List<? extends List<?>> keysOfCommands = Lists.partition(batch, batchSize);
+                    final List<String[]> commands = new ArrayList<String[]>();
+                    for (List<?> keysOfCommand : keysOfCommands) {
+                        final List<String> command = Lists.newArrayList("MIGRATE", target.host(), Integer.toString(move.target.masterPort()),
+                                "", "0", Integer.toString(migrateTimeoutMillis), "REPLACE", "KEYS");
+                        for (Object key : keysOfCommand) {
+                            command.add((String) key);
+                        }
+                        commands.add(command.toArray(new String[0]));
+                    }
+                    final List<Object> replies = pipeline(source, commands);
+                    for (int i = 0; i < replies.size(); i++) {
+                        final Object reply = replies.get(i);
+                        if (reply instanceof RedisCommandException) {
+                            throw new EmbeddedRedisException("Failed to migrate slot " + slot + " from " + move.source
+                                    + " to " + move.target + ": " + ((RedisCommandException) reply).getMessage(), (RedisCommandException) reply);
+                        }
+                        // NOKEY: none of the keys exist anymore, e.g. because they expired meanwhile
+                        if (!"NOKEY".equals(reply)) {
+                            keys.addAndGet(keysOfCommands.get(i).size());
+                        }
+                    }
+                }
+            } catch (RuntimeException e) {
+                stabilize(slot, source, target, e);
+                throw e;
+            }
+            // the target first, so that the slot cannot end up without an owner if the source fails
+            call(target, "CLUSTER", "SETSLOT", slot, "NODE", move.target.masterId());
+            try {
+                call(source, "CLUSTER", "SETSLOT", slot, "NODE", move.target.masterId());
+            } catch (RedisCommandException e) {
+                // a source that gave up its last slot may already have become a replica of the target
+                if (!e.getMessage().contains("only with masters")) {
+                    throw e;
+                }
+            }
+            for (RedisServer master : masters) {
+                if (master != source && master != target) {
+                    try {
+                        call(master, "CLUSTER", "SETSLOT", slot, "NODE", move.target.masterId());
+                    } catch (RedisCommandException e) {
+                        // the master learns the new owner through the cluster bus anyway
+                    }
+                }
+            }
+        }
+
+        /**
+         * Closes the open slot on both ends after a failed migration, so that the source keeps owning it and
+         * it can be migrated again. Keys already moved stay on the target.
+         */
+        private void stabilize(String slot, RedisServer source, RedisServer target, RuntimeException failure) {
+            for (RedisServer node : Arrays.asList(target, source)) {
+                // the failed command may have left the connection in the middle of a reply
+                final RespClient broken = clients.remove(node);
+                if (broken != null) {
+                    try {
+                        broken.close();
+                    } catch (IOException e) {
+                        // replaced below anyway
+                    }
+                }
+                try {
+                    call(node, "CLUSTER", "SETSLOT", slot, "STABLE");
+                } catch (RuntimeException e) {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+
+        private long measure(RedisServer source, List<?> keys) {
+            final List<String[]> commands = new ArrayList<String[]>();
+            for (Object key : keys) {
+                commands.add(new String[]{"MEMORY", "USAGE", (String) key, "SAMPLES", "0"});
+            }
+            long total = 0L;
+            for (Object reply : pipeline(source, commands)) {
+                // null for keys deleted meanwhile
+                if (reply instanceof Long) {
+                    total += (Long) reply;
+                }
+            }
+            return total;
+        }
+
+        private Object call(RedisServer node, String... command) {
+            try {
+                return client(node).call(command);
+            } catch (IOException e) {
+                throw new EmbeddedRedisException("Failed to run " + command[0] + " " + command[1] + " on port " + node.ports(), e);
+            }
+        }
+
+        private List<Object> pipeline(RedisServer node, List<String[]> commands) {
+            try {
+                return client(node).pipeline(commands);
+            } catch (IOException e) {
+                throw new EmbeddedRedisException("Failed to run " + commands.size() + " " + commands.get(0)[0]
+                        + " commands on port " + node.ports(), e);
+            }
+        }
+
+        private RespClient client(RedisServer node) throws IOException {
+            RespClient client = clients.get(node);
+            if (client == null) {
+                // a pipeline of MIGRATE commands may take its full timeout per command
+                client = node.connect(ADMIN_TIMEOUT_MILLIS + migrateTimeoutMillis * pipelineDepth);
+                clients.put(node, client);
+            }
+            return client;
+        }
+
+        @Override
+        public void close() {
+            for (RespClient client : clients.values()) {
+                try {
+                    client.close();
+                } catch (IOException e) {
+                    // nothing left to do with it
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package redis.embedded;
+
+import com.google.common.collect.RangeSet;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One master of a {@link RedisShardedCluster} and its replicas.
+ */
+public class RedisClusterShard {
+    private final RedisShardedCluster cluster;
+    private final RedisServer master;
+    private final List<RedisServer> replicas;
+    private volatile String masterId;
+    private volatile List<String> replicaIds = Collections.emptyList();
+
+    RedisClusterShard(RedisShardedCluster cluster, RedisServer master, List<RedisServer> replicas) {
+        this.cluster = cluster;
+        this.master = master;
+        this.replicas = Collections.unmodifiableList(new ArrayList<RedisServer>(replicas));
+    }
+
+    public RedisServer master() {
+        return master;
+    }
+
+    public int masterPort() {
+        return master.ports().get(0);
+    }
+
+    public List<RedisServer> replicas() {
+        return replicas;
+    }
+
+    /**
+     * Cluster node ID of the master, or {@code null} before the cluster was started.
+     */
+    public String masterId() {
+        return masterId;
+    }
+
+    /**
+     * Cluster node IDs of the replicas, in the order of {@link #replicas()}; empty before the cluster was
+     * started.
+     */
+    public List<String> replicaIds() {
+        return replicaIds;
+    }
+
+    /**
+     * Hash slots the master serves, as of the cluster's last view of the slot table, as closed-open ranges.
+     */
+    public RangeSet<Integer> slots() {
+        return cluster.slotsOf(masterId);
+    }
+
+    public boolean ownsSlot(int slot) {
+        return slots().contains(slot);
+    }
+
+    void setNodeIds(String masterId, List<String> replicaIds) {
+        this.masterId = masterId;
+        this.replicaIds = Collections.unmodifiableList(new ArrayList<String>(replicaIds));
+    }
+
+    List<RedisServer> nodes() {
+        final List<RedisServer> nodes = new ArrayList<RedisServer>();
+        nodes.add(master);
+        nodes.addAll(replicas);
+        return nodes;
+    }
+
+    @Override
+    public String toString() {
+        return "shard " + masterId + " on port " + (master.ports().isEmpty() ? "?" : masterPort()) + " serving " + slots();
+    }
+}
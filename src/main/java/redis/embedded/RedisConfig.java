@@ -0,0 +1,506 @@
+package redis.embedded;
+
+import com.google.common.base.CharMatcher;
+import com.google.common.base.Joiner;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.MapDifference;
+import com.google.common.collect.Maps;
+import com.google.common.hash.Hashing;
+import redis.embedded.exceptions.RedisBuildingException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+/**
+ * An immutable Redis configuration: directives and their arguments, as they would appear in a
+ * {@code redis.conf} file.
+ *
+ * <p>Directive names are checked against the directives Redis 7.0 knows when they are set, so typos fail
+ * when the configuration is built instead of when the process dies. {@link Builder#custom(String, String...)}
+ * skips the check for directives of other Redis versions. The {@code setting(String)} methods of the server
+ * and sentinel builders skip it too, and check names only when the bundled Redis is going to run.</p>
+ *
+ * <p>{@link #render()} is deterministic: directives are written in name order, except that {@code include}
+ * and {@code loadmodule} come first, and repeatable directives such as {@code save} keep the order they were
+ * added in. Equal configurations therefore render, and {@link #hash() hash}, the same, however they were
+ * built.</p>
+ */
+public final class RedisConfig {
+    private static final Set<String> KNOWN_DIRECTIVES = ImmutableSet.of(
+            "acl-pubsub-default", "aclfile", "acllog-max-len", "active-defrag-cycle-max", "active-defrag-cycle-min", "active-defrag-ignore-bytes",
+            "active-defrag-max-scan-fields", "active-defrag-threshold-lower", "active-defrag-threshold-upper", "active-expire-effort", "activedefrag", "activerehashing",
+            "always-show-logo", "aof-disable-auto-gc", "aof-load-truncated", "aof-rewrite-incremental-fsync", "aof-timestamp-enabled", "aof-use-rdb-preamble",
+            "aof_rewrite_cpulist", "appenddirname", "appendfilename", "appendfsync", "appendonly", "auto-aof-rewrite-min-size",
+            "auto-aof-rewrite-percentage", "bgsave_cpulist", "bind", "bind-source-addr", "bio_cpulist", "busy-reply-threshold",
+            "client-output-buffer-limit", "client-query-buffer-limit", "cluster-allow-pubsubshard-when-down", "cluster-allow-reads-when-down", "cluster-allow-replica-migration", "cluster-announce-bus-port",
+            "cluster-announce-hostname", "cluster-announce-ip", "cluster-announce-port", "cluster-announce-tls-port", "cluster-config-file", "cluster-enabled",
+            "cluster-link-sendbuf-limit", "cluster-migration-barrier", "cluster-node-timeout", "cluster-port", "cluster-preferred-endpoint-type", "cluster-replica-no-failover",
+            "cluster-replica-validity-factor", "cluster-require-full-coverage", "cluster-slave-no-failover", "cluster-slave-validity-factor", "crash-log-enabled", "crash-memcheck-enabled",
+            "daemonize", "databases", "dbfilename", "dir", "disable-thp", "dynamic-hz",
+            "enable-debug-command", "enable-module-command", "enable-protected-configs", "hash-max-listpack-entries", "hash-max-listpack-value", "hash-max-ziplist-entries",
+            "hash-max-ziplist-value", "hll-sparse-max-bytes", "hz", "ignore-warnings", "io-threads", "io-threads-do-reads",
+            "jemalloc-bg-thread", "latency-monitor-threshold", "latency-tracking", "latency-tracking-info-percentiles", "lazyfree-lazy-eviction", "lazyfree-lazy-expire",
+            "lazyfree-lazy-server-del", "lazyfree-lazy-user-del", "lazyfree-lazy-user-flush", "lfu-decay-time", "lfu-log-factor", "list-compress-depth",
+            "list-max-listpack-size", "list-max-ziplist-size", "logfile", "loglevel", "lua-time-limit", "masterauth",
+            "masteruser", "maxclients", "maxmemory", "maxmemory-clients", "maxmemory-eviction-tenacity", "maxmemory-policy",
+            "maxmemory-samples", "min-replicas-max-lag", "min-replicas-to-write", "min-slaves-max-lag", "min-slaves-to-write", "no-appendfsync-on-rewrite",
+            "notify-keyspace-events", "oom-score-adj", "oom-score-adj-values", "pidfile", "port", "proc-title-template",
+            "propagation-error-behavior", "protected-mode", "proto-max-bulk-len", "rdb-del-sync-files", "rdb-save-incremental-fsync", "rdbchecksum",
+            "rdbcompression", "repl-backlog-size", "repl-backlog-ttl", "repl-disable-tcp-nodelay", "repl-diskless-load", "repl-diskless-sync",
+            "repl-diskless-sync-delay", "repl-diskless-sync-max-replicas", "repl-ping-replica-period", "repl-ping-slave-period", "repl-timeout", "replica-announce-ip",
+            "replica-announce-port", "replica-announced", "replica-ignore-disk-write-errors", "replica-ignore-maxmemory", "replica-lazy-flush", "replica-priority",
+            "replica-read-only", "replica-serve-stale-data", "replicaof", "requirepass", "sanitize-dump-payload", "save",
+            "server_cpulist", "set-max-intset-entries", "set-proc-title", "shutdown-on-sigint", "shutdown-on-sigterm", "shutdown-timeout",
+            "slave-announce-ip", "slave-announce-port", "slave-ignore-maxmemory", "slave-lazy-flush", "slave-priority", "slave-read-only",
+            "slave-serve-stale-data", "slaveof", "slowlog-log-slower-than", "slowlog-max-len", "socket-mark-id", "stop-writes-on-bgsave-error",
+            "stream-node-max-bytes", "stream-node-max-entries", "supervised", "syslog-enabled", "syslog-facility", "syslog-ident",
+            "tcp-backlog", "tcp-keepalive", "timeout", "tls-auth-clients", "tls-ca-cert-dir", "tls-ca-cert-file",
+            "tls-cert-file", "tls-ciphers", "tls-ciphersuites", "tls-client-cert-file", "tls-client-key-file", "tls-client-key-file-pass",
+            "tls-cluster", "tls-dh-params-file", "tls-key-file", "tls-key-file-pass", "tls-port", "tls-prefer-server-ciphers",
+            "tls-protocols", "tls-replication", "tls-session-cache-size", "tls-session-cache-timeout", "tls-session-caching", "tracking-table-max-keys",
+            "unixsocket", "unixsocketperm", "zset-max-listpack-entries", "zset-max-listpack-value", "zset-max-ziplist-entries", "zset-max-ziplist-value",
+            // only valid in configuration files
+            "include", "loadmodule", "rename-command", "sentinel", "user");
+    private static final Set<String> REPEATABLE_DIRECTIVES = ImmutableSet.of(
+            "client-output-buffer-limit", "include", "loadmodule", "rename-command", "save", "sentinel", "user");
+    private static final List<String> LEADING_DIRECTIVES = ImmutableList.of("include", "loadmodule");
+    private static final Pattern MEMORY_SIZE = Pattern.compile("\\d+([kmg]b?)?", Pattern.CASE_INSENSITIVE);
+    private static final CharMatcher NEEDS_QUOTES = CharMatcher.whitespace().or(CharMatcher.anyOf("\"'\\"));
+
+    public enum MaxmemoryPolicy {
+        VOLATILE_LRU,
+        ALLKEYS_LRU,
+        VOLATILE_LFU,
+        ALLKEYS_LFU,
+        VOLATILE_RANDOM,
+        ALLKEYS_RANDOM,
+        VOLATILE_TTL,
+        NOEVICTION;
+
+        String value() {
+            return name().toLowerCase(Locale.ROOT).replace('_', '-');
+        }
+    }
+
+    public enum AppendFsync {
+        ALWAYS,
+        EVERYSEC,
+        NO;
+
+        String value() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private final SortedMap<String, List<String>> directives;
+
+    private RedisConfig(SortedMap<String, List<String>> directives) {
+        this.directives = directives;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static RedisConfig empty() {
+        return new Builder().build();
+    }
+
+    /**
+     * Checks that Redis 7.0 knows every directive, including those set without a check.
+     *
+     * @throws RedisBuildingException for the first directive Redis does not know
+     */
+    RedisConfig checkKnown() {
+        for (String directive : directives.keySet()) {
+            Builder.checkKnown(directive);
+        }
+        return this;
+    }
+
+    /**
+     * Parses the contents of a {@code redis.conf} file. Blank lines and comments are skipped.
+     */
+    public static RedisConfig parse(String text) {
+        final Builder builder = new Builder();
+        for (String line : text.split("\\r?\\n")) {
+            final String trimmed = line.trim();
+            if (!trimmed.isEmpty() && !trimmed.startsWith("#")) {
+                builder.line(trimmed);
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * The arguments of {@code directive}, or the arguments of its first occurrence for repeatable
+     * directives.
+     */
+    public Optional<String> get(String directive) {
+        final List<String> values = directives.get(normalize(directive));
+        return values == null ? Optional.empty() : Optional.of(values.get(0));
+    }
+
+    /**
+     * The arguments of every occurrence of {@code directive}, in the order they were added.
+     */
+    public List<String> getAll(String directive) {
+        final List<String> values = directives.get(normalize(directive));
+        return values == null ? ImmutableList.of() : values;
+    }
+
+    public SortedMap<String, List<String>> directives() {
+        return directives;
+    }
+
+    public boolean isEmpty() {
+        return directives.isEmpty();
+    }
+
+    /**
+     * Layers {@code overrides} on top of this configuration. Each directive set in {@code overrides}
+     * replaces all occurrences of that directive here, repeatable directives included.
+     */
+    public RedisConfig with(RedisConfig overrides) {
+        final TreeMap<String, List<String>> merged = new TreeMap<String, List<String>>(directives);
+        merged.putAll(overrides.directives);
+        return new RedisConfig(ImmutableSortedMap.copyOfSorted(merged));
+    }
+
+    /**
+     * Which directives differ between this configuration, on the left, and {@code other}, on the right.
+     */
+    public MapDifference<String, List<String>> diff(RedisConfig other) {
+        return Maps.difference(directives, other.directives);
+    }
+
+    public Builder toBuilder() {
+        final Builder builder = new Builder();
+        for (Map.Entry<String, List<String>> directive : directives.entrySet()) {
+            builder.directives.put(directive.getKey(), new ArrayList<String>(directive.getValue()));
+        }
+        return builder;
+    }
+
+    /**
+     * The configuration as the contents of a {@code redis.conf} file, one directive per line.
+     */
+    public String render() {
+        final StringBuilder rendered = new StringBuilder();
+        for (String directive : LEADING_DIRECTIVES) {
+            render(rendered, directive);
+        }
+        for (String directive : directives.keySet()) {
+            if (!LEADING_DIRECTIVES.contains(directive)) {
+                render(rendered, directive);
+            }
+        }
+        return rendered.toString();
+    }
+
+    private void render(StringBuilder rendered, String directive) {
+        for (String arguments : getAll(directive)) {
+            rendered.append(directive).append(' ').append(arguments).append('\n');
+        }
+    }
+
+    /**
+     * SHA-256 of {@link #render()} in hex, usable as a cache key for anything derived from the configuration.
+     */
+    public String hash() {
+        return Hashing.sha256().hashString(render(), StandardCharsets.UTF_8).toString();
+    }
+
+    /**
+     * Writes the configuration to {@code <hash>.conf} in {@code directory}, unless that file already has the
+     * right contents, and returns the file. Instances with the same configuration share one file.
+     */
+    public Path writeTo(Path directory) throws IOException {
+        final String rendered = render();
+        final byte[] contents = rendered.getBytes(StandardCharsets.UTF_8);
+        final Path target = directory.resolve(hash() + ".conf");
+        if (Files.isRegularFile(target) && Arrays.equals(Files.readAllBytes(target), contents)) {
+            return target;
+        }
+        Files.createDirectories(directory);
+        final Path temp = Files.createTempFile(directory, "redis", ".conf.tmp");
+        try {
+            Files.write(temp, contents);
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        return target;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof RedisConfig && directives.equals(((RedisConfig) o).directives);
+    }
+
+    @Override
+    public int hashCode() {
+        return directives.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return render();
+    }
+
+    private static String normalize(String directive) {
+        return directive.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Quotes an argument the way Redis's configuration parser expects, if it needs quoting at all.
+     */
+    static String quote(String argument) {
+        if (!argument.isEmpty() && NEEDS_QUOTES.matchesNoneOf(argument)) {
+            return argument;
+        }
+        return '"' + argument.replace("\\", "\\\\").replace("\"", "\\\"") + '"';
+    }
+
+    public static final class Builder {
+        private final TreeMap<String, List<String>> directives = new TreeMap<String, List<String>>();
+
+        private Builder() {
+        }
+
+        /**
+         * Sets {@code directive}, replacing any earlier occurrences. Arguments are quoted where needed.
+         *
+         * @throws RedisBuildingException if Redis does not know {@code directive}
+         */
+        public Builder set(String directive, String... arguments) {
+            return put(checkKnown(directive), arguments(arguments), false);
+        }
+
+        /**
+         * Adds another occurrence of a repeatable directive such as {@code save} or {@code rename-command}.
+         *
+         * @throws RedisBuildingException if Redis does not know {@code directive} or it is not repeatable
+         */
+        public Builder add(String directive, String... arguments) {
+            final String name = checkKnown(directive);
+            if (!REPEATABLE_DIRECTIVES.contains(name)) {
+                throw new RedisBuildingException("Directive " + name + " can only be set once");
+            }
+            return put(name, arguments(arguments), true);
+        }
+
+        /**
+         * Sets a directive without checking that Redis knows it, e.g. one of a newer Redis version. Server and
+         * sentinel builders still check it if they run the bundled Redis, which would not start with it.
+         */
+        public Builder custom(String directive, String... arguments) {
+            return put(normalize(directive), arguments(arguments), false);
+        }
+
+        /**
+         * Applies one line of a {@code redis.conf} file, such as {@code maxmemory 128mb}. The arguments are
+         * taken as they are. Repeatable directives are added, all others replace earlier occurrences.
+         *
+         * @throws RedisBuildingException if Redis does not know the directive
+         */
+        public Builder line(String configLine) {
+            return line(configLine, true);
+        }
+
+        /**
+         * Like {@link #line(String)}, without checking that Redis knows the directive.
+         */
+        Builder uncheckedLine(String configLine) {
+            return line(configLine, false);
+        }
+
+        private Builder line(String configLine, boolean checked) {
+            final String trimmed = configLine.trim();
+            final int space = CharMatcher.whitespace().indexIn(trimmed);
+            final String directive = space < 0 ? trimmed : trimmed.substring(0, space);
+            final String name = checked ? checkKnown(directive) : normalize(directive);
+            final String arguments = space < 0 ? "" : trimmed.substring(space + 1).trim();
+            return put(name, arguments, REPEATABLE_DIRECTIVES.contains(name));
+        }
+
+        public Builder remove(String directive) {
+            directives.remove(normalize(directive));
+            return this;
+        }
+
+        /**
+         * Layers {@code overrides} on top of what has been set so far, see {@link RedisConfig#with(RedisConfig)}.
+         */
+        public Builder apply(RedisConfig overrides) {
+            for (Map.Entry<String, List<String>> directive : overrides.directives.entrySet()) {
+                directives.put(directive.getKey(), new ArrayList<String>(directive.getValue()));
+            }
+            return this;
+        }
+
+        public Builder port(int port) {
+            Preconditions.checkArgument(port >= 0 && port <= 65535, "Invalid port %s", port);
+            return set("port", Integer.toString(port));
+        }
+
+        public Builder bind(String... addresses) {
+            Preconditions.checkArgument(addresses.length > 0, "At least one address is required");
+            return set("bind", addresses);
+        }
+
+        public Builder maxmemory(long bytes) {
+            Preconditions.checkArgument(bytes >= 0, "maxmemory must not be negative");
+            return set("maxmemory", Long.toString(bytes));
+        }
+
+        /**
+         * Sets {@code maxmemory} in Redis notation, e.g. {@code 128mb} or {@code 1g}.
+         */
+        public Builder maxmemory(String size) {
+            if (!MEMORY_SIZE.matcher(size).matches()) {
+                throw new RedisBuildingException("Invalid maxmemory " + size);
+            }
+            return set("maxmemory", size);
+        }
+
+        public Builder maxmemoryPolicy(MaxmemoryPolicy policy) {
+            return set("maxmemory-policy", policy.value());
+        }
+
+        public Builder maxmemorySamples(int samples) {
+            Preconditions.checkArgument(samples >= 1 && samples <= 64, "maxmemory-samples must be between 1 and 64");
+            return set("maxmemory-samples", Integer.toString(samples));
+        }
+
+        /**
+         * Threads that write replies to clients, and read requests too if {@link #ioThreadsDoReads(boolean)}
+         * is enabled. {@code 1}, the Redis default, does all I/O on the main thread.
+         */
+        public Builder ioThreads(int threads) {
+            Preconditions.checkArgument(threads >= 1 && threads <= 128, "io-threads must be between 1 and 128");
+            return set("io-threads", Integer.toString(threads));
+        }
+
+        public Builder ioThreadsDoReads(boolean enabled) {
+            return set("io-threads-do-reads", yesNo(enabled));
+        }
+
+        public Builder appendonly(boolean enabled) {
+            return set("appendonly", yesNo(enabled));
+        }
+
+        public Builder appendfsync(AppendFsync fsync) {
+            return set("appendfsync", fsync.value());
+        }
+
+        /**
+         * Adds an RDB snapshot point: a snapshot is taken after {@code seconds} if at least {@code changes}
+         * keys changed.
+         */
+        public Builder save(int seconds, int changes) {
+            Preconditions.checkArgument(seconds > 0 && changes > 0, "Snapshot points must be positive");
+            if (ImmutableList.of("\"\"").equals(directives.get("save"))) {
+                directives.remove("save");
+            }
+            return add("save", Integer.toString(seconds), Integer.toString(changes));
+        }
+
+        /**
+         * Turns off RDB snapshots, replacing any snapshot points.
+         */
+        public Builder disableSnapshots() {
+            return set("save", "");
+        }
+
+        public Builder hashMaxListpackEntries(int entries) {
+            return set("hash-max-listpack-entries", nonNegative("hash-max-listpack-entries", entries));
+        }
+
+        public Builder hashMaxListpackValue(int bytes) {
+            return set("hash-max-listpack-value", nonNegative("hash-max-listpack-value", bytes));
+        }
+
+        public Builder zsetMaxListpackEntries(int entries) {
+            return set("zset-max-listpack-entries", nonNegative("zset-max-listpack-entries", entries));
+        }
+
+        public Builder zsetMaxListpackValue(int bytes) {
+            return set("zset-max-listpack-value", nonNegative("zset-max-listpack-value", bytes));
+        }
+
+        public Builder setMaxIntsetEntries(int entries) {
+            return set("set-max-intset-entries", nonNegative("set-max-intset-entries", entries));
+        }
+
+        /**
+         * Positive values limit list nodes to that many entries, {@code -1} to {@code -5} to 4 KB to 64 KB.
+         */
+        public Builder listMaxListpackSize(int size) {
+            Preconditions.checkArgument(size != 0 && size >= -5, "list-max-listpack-size must be positive or -1 to -5");
+            return set("list-max-listpack-size", Integer.toString(size));
+        }
+
+        public RedisConfig build() {
+            final TreeMap<String, List<String>> copy = new TreeMap<String, List<String>>();
+            for (Map.Entry<String, List<String>> directive : directives.entrySet()) {
+                copy.put(directive.getKey(), ImmutableList.copyOf(directive.getValue()));
+            }
+            return new RedisConfig(ImmutableSortedMap.copyOfSorted(copy));
+        }
+
+        private Builder put(String name, String arguments, boolean repeat) {
+            final List<String> values = repeat ? directives.get(name) : null;
+            if (values != null) {
+                values.add(arguments);
+            } else {
+                final List<String> fresh = new ArrayList<String>();
+                fresh.add(arguments);
+                directives.put(name, fresh);
+            }
+            return this;
+        }
+
+        private static String checkKnown(String directive) {
+            final String name = normalize(directive);
+            // module configurations are named <module>.<name>
+            if (!KNOWN_DIRECTIVES.contains(name) && name.indexOf('.') < 1) {
+                throw new RedisBuildingException("Unknown Redis configuration directive " + directive);
+            }
+            return name;
+        }
+
+        private static String arguments(String[] arguments) {
+            final List<String> quoted = new ArrayList<String>(arguments.length);
+            for (String argument : arguments) {
+                quoted.add(quote(argument));
+            }
+            return Joiner.on(' ').join(quoted);
+        }
+
+        private static String nonNegative(String directive, int value) {
+            Preconditions.checkArgument(value >= 0, "%s must not be negative", directive);
+            return Integer.toString(value);
+        }
+
+        private static String yesNo(boolean enabled) {
+            return enabled ? "yes" : "no";
+        }
+    }
+}
@@ -3,7 +3,7 @@ package redis.embedded;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Maps;
 import redis.embedded.util.Architecture;
-import redis.embedded.util.JarUtil;
+import redis.embedded.util.ExecutableCache;
 import redis.embedded.util.OS;
 import redis.embedded.util.OsArchitecture;
 
@@ -48,6 +48,15 @@ public class RedisExecProvider {
         return this;
     }
 
+    /**
+     * Whether {@link #get()} resolves to the Redis bundled with this library on the current platform.
+     */
+    boolean isBundled() {
+        final OsArchitecture osArch = OsArchitecture.detect();
+        final String executable = executables.get(osArch);
+        return executable != null && executable.equals(defaultProvider().executables.get(osArch)) && !fileExists(executable);
+    }
+
     public File get() throws IOException {
         OsArchitecture osArch = OsArchitecture.detect();
 
@@ -59,7 +68,7 @@ public class RedisExecProvider {
 
         return fileExists(executablePath) ?
                 new File(executablePath) :
-                JarUtil.extractExecutableFromJar(executablePath);
+                ExecutableCache.get(executablePath, redisVersion);
 
     }
 
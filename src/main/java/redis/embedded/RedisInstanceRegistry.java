@@ -0,0 +1,159 @@
+package redis.embedded;
+
+import org.apache.commons.io.FileUtils;
+import redis.embedded.util.ProcessUtil;
+
+import java.io.File;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Tracks every Redis process started by this JVM that has not been stopped yet.
+ *
+ * <p>A single shutdown hook, installed with the first start, stops all live instances in parallel when the
+ * JVM exits. Processes still running after {@value #SHUTDOWN_TIMEOUT_PROPERTY} milliseconds (10 seconds by
+ * default) are killed forcibly, and the instances' working directories are deleted afterwards. Processes
+ * left behind by JVMs that could not run the hook are reaped by the next JVM that starts an instance, see
+ * {@link OrphanReaper}.</p>
+ */
+public final class RedisInstanceRegistry {
+    public static final String SHUTDOWN_TIMEOUT_PROPERTY = "embedded.redis.shutdown.timeout.ms";
+    private static final long DEFAULT_SHUTDOWN_TIMEOUT_MILLIS = 10000L;
+
+    private static final Map<AbstractRedisInstance, LiveInstance> live = new ConcurrentHashMap<AbstractRedisInstance, LiveInstance>();
+    private static final Set<File> workingDirectories = ConcurrentHashMap.newKeySet();
+    private static boolean hookInstalled;
+
+    private RedisInstanceRegistry() {
+    }
+
+    /**
+     * Instances started and not yet stopped, including ones that are still starting.
+     */
+    public static List<LiveInstance> liveInstances() {
+        return Collections.unmodifiableList(new ArrayList<LiveInstance>(live.values()));
+    }
+
+    static void register(AbstractRedisInstance instance, Process process) {
+        installShutdownHook();
+        live.put(instance, new LiveInstance(instance, process, Instant.now()));
+        if (!instance.args.isEmpty()) {
+            OrphanReaper.record(ProcessUtil.pid(process), instance.args.get(0));
+        }
+    }
+
+    static void unregister(AbstractRedisInstance instance, Process process) {
+        final LiveInstance entry = live.get(instance);
+        if (entry != null && entry.process == process) {
+            live.remove(instance, entry);
+            OrphanReaper.forget(entry.pid());
+        }
+    }
+
+    /**
+     * Deletes {@code directory} and everything in it once the JVM exits and all instances were stopped.
+     * Unlike {@link File#deleteOnExit()}, this also removes directories that are not empty.
+     */
+    static void deleteOnExit(File directory) {
+        installShutdownHook();
+        workingDirectories.add(directory);
+    }
+
+    private static synchronized void installShutdownHook() {
+        if (!hookInstalled) {
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                stopAll();
+                deleteWorkingDirectories();
+            }, "RedisInstanceCleaner"));
+            hookInstalled = true;
+        }
+    }
+
+    /**
+     * Stops every live instance in parallel, and kills whatever is still running once the shutdown timeout
+     * has passed.
+     */
+    static void stopAll() {
+        final List<LiveInstance> instances = liveInstances();
+        final List<CompletableFuture<Void>> stops = new ArrayList<CompletableFuture<Void>>();
+        for (LiveInstance instance : instances) {
+            stops.add(instance.instance.stopAsync());
+        }
+        try {
+            CompletableFuture.allOf(stops.toArray(new CompletableFuture<?>[0]))
+                    .get(shutdownTimeoutMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            // fall through and make sure nothing outlives the JVM
+        }
+        for (LiveInstance instance : instances) {
+            if (instance.process.isAlive()) {
+                instance.process.destroyForcibly();
+            }
+        }
+    }
+
+    private static void deleteWorkingDirectories() {
+        for (File directory : workingDirectories) {
+            FileUtils.deleteQuietly(directory);
+        }
+    }
+
+    private static long shutdownTimeoutMillis() {
+        try {
+            return Long.parseLong(System.getProperty(SHUTDOWN_TIMEOUT_PROPERTY, Long.toString(DEFAULT_SHUTDOWN_TIMEOUT_MILLIS)));
+        } catch (NumberFormatException e) {
+            return DEFAULT_SHUTDOWN_TIMEOUT_MILLIS;
+        }
+    }
+
+    /**
+     * A started instance and the process running it.
+     */
+    public static final class LiveInstance {
+        private final AbstractRedisInstance instance;
+        private final Process process;
+        private final Instant startedAt;
+
+        private LiveInstance(AbstractRedisInstance instance, Process process, Instant startedAt) {
+            this.instance = instance;
+            this.process = process;
+            this.startedAt = startedAt;
+        }
+
+        public Redis instance() {
+            return instance;
+        }
+
+        public long pid() {
+            return ProcessUtil.pid(process);
+        }
+
+        public List<Integer> ports() {
+            return instance.ports();
+        }
+
+        public Instant startedAt() {
+            return startedAt;
+        }
+
+        public boolean isProcessAlive() {
+            return process.isAlive();
+        }
+
+        @Override
+        public String toString() {
+            return "LiveInstance{" + instance.getClass().getSimpleName() + ", pid=" + pid() + ", ports=" + ports() + "}";
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package redis.embedded;
+
+import java.time.Instant;
+
+/**
+ * One line written by a Redis process to its standard output or standard error.
+ */
+public final class RedisLogLine {
+    public enum Stream {
+        STDOUT,
+        STDERR
+    }
+
+    private final String source;
+    private final Stream stream;
+    private final Instant timestamp;
+    private final String text;
+
+    RedisLogLine(String source, Stream stream, Instant timestamp, String text) {
+        this.source = source;
+        this.stream = stream;
+        this.timestamp = timestamp;
+        this.text = text;
+    }
+
+    /**
+     * Identifies the instance that wrote the line, e.g. {@code RedisServer:6379}.
+     */
+    public String source() {
+        return source;
+    }
+
+    public Stream stream() {
+        return stream;
+    }
+
+    /**
+     * When the line was read from the process, which may be slightly after Redis wrote it.
+     */
+    public Instant timestamp() {
+        return timestamp;
+    }
+
+    public String text() {
+        return text;
+    }
+
+    @Override
+    public String toString() {
+        return "[" + source + "] " + text;
+    }
+}
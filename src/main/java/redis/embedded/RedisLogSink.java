@@ -0,0 +1,11 @@
+package redis.embedded;
+
+/**
+ * Receives the output of Redis processes. Sinks are called from a single shared thread, so a slow sink
+ * delays delivery to all others; lines that cannot be queued while it catches up are dropped rather than
+ * blocking the Redis process.
+ */
+@FunctionalInterface
+public interface RedisLogSink {
+    void accept(RedisLogLine line);
+}
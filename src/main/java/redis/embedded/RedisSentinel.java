@@ -1,19 +1,60 @@
 package redis.embedded;
 
+import com.google.common.io.Files;
+import redis.embedded.readiness.LogLineReadinessStrategy;
+import redis.embedded.readiness.PingReadinessStrategy;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
 
 public class RedisSentinel extends AbstractRedisInstance {
     private static final String REDIS_READY_PATTERN = ".*Sentinel (runid|ID) is.*";
 
+    private File configFile;
+    private Supplier<String> config;
+
     public RedisSentinel(List<String> args, int port) {
         super(port);
         this.args = new ArrayList<String>(args);
     }
 
+    /**
+     * Configuration to write to {@code configFile} on every start, for settings that depend on instances
+     * started before this sentinel.
+     */
+    void setConfig(File configFile, Supplier<String> config) {
+        this.configFile = configFile;
+        this.config = config;
+    }
+
+    @Override
+    protected void beforeStart() throws IOException {
+        if (config != null) {
+            Files.asCharSink(configFile, StandardCharsets.UTF_8).write(config.get());
+        }
+    }
+
     public static RedisSentinelBuilder builder() { return new RedisSentinelBuilder(); }
 
     @Override
+    public CompletableFuture<RedisSentinel> startAsync() {
+        return super.startAsync().thenApply(redis -> this);
+    }
+
+    /**
+     * Probes with {@code PING} when the instance has a plain TCP port and falls back to waiting for the
+     * readiness log line otherwise.
+     */
+    @Override
+    protected ReadinessStrategy defaultReadinessStrategy() {
+        return ports().isEmpty() ? new LogLineReadinessStrategy(redisReadyPattern()) : new PingReadinessStrategy();
+    }
+
     protected String redisReadyPattern() {
         return REDIS_READY_PATTERN;
     }
@@ -1,18 +1,24 @@
 package redis.embedded;
 
 import com.google.common.base.Preconditions;
+import com.google.common.base.Stopwatch;
 import com.google.common.io.Files;
 import redis.embedded.exceptions.RedisBuildingException;
+import redis.embedded.ports.EphemeralPortProvider;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
 
 public class RedisSentinelBuilder {
-    private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+    private static final String LINE_SEPARATOR = "\n";
     private static final String CONF_FILENAME = "embedded-redis-sentinel";
     private static final String MASTER_MONITOR_LINE = "sentinel monitor %s 127.0.0.1 %d %d";
     private static final String DOWN_AFTER_LINE = "sentinel down-after-milliseconds %s %d";
@@ -24,6 +30,8 @@ public class RedisSentinelBuilder {
     private RedisExecProvider redisExecProvider = RedisExecProvider.defaultProvider();
     private String bind="127.0.0.1";
     private Integer port = 26379;
+    private PortProvider portCandidates;
+    private CpuAffinity cpuAffinity;
     private int masterPort = 6379;
     private String masterName = "mymaster";
     private long downAfterMilliseconds = 60000L;
@@ -31,8 +39,14 @@ public class RedisSentinelBuilder {
     private int parallelSyncs = 1;
     private int quorumSize = 1;
     private String sentinelConf;
+    private ReadinessStrategy readinessStrategy;
+    private RedisLogSink logSink;
+    private StopStrategy stopStrategy;
+    private long startupTimeoutMillis = 0L;
+    private final Map<StartupPhase, Duration> buildPhases = new EnumMap<StartupPhase, Duration>(StartupPhase.class);
 
-    private StringBuilder redisConfigBuilder;
+    private RedisConfig.Builder config;
+    private final List<Supplier<String>> deferredReplicationGroups = new ArrayList<Supplier<String>>();
 
     public RedisSentinelBuilder redisExecProvider(RedisExecProvider redisExecProvider) {
         this.redisExecProvider = redisExecProvider;
@@ -49,6 +63,33 @@ public class RedisSentinelBuilder {
         return this;
     }
 
+    /**
+     * Lets the sentinel pick a free port when it starts instead of using a fixed one: it tries ports
+     * suggested by the operating system until it binds one. The port is known once the sentinel has
+     * started, see {@link Redis#ports()}.
+     */
+    public RedisSentinelBuilder discoverPort() {
+        return discoverPort(new EphemeralPortProvider());
+    }
+
+    /**
+     * Like {@link #discoverPort()}, but tries ports from {@code candidates}, e.g. a
+     * {@link redis.embedded.ports.RangePortProvider}.
+     */
+    public RedisSentinelBuilder discoverPort(PortProvider candidates) {
+        this.portCandidates = candidates;
+        return this;
+    }
+
+    /**
+     * Pins the sentinel to a CPU chosen by {@code cpuAffinity}, e.g. {@link redis.embedded.affinity.SpreadingCpuAffinity#shared()}.
+     * The assignment is reported by {@link RedisSentinel#cpuSet()}.
+     */
+    public RedisSentinelBuilder cpuAffinity(CpuAffinity cpuAffinity) {
+        this.cpuAffinity = cpuAffinity;
+        return this;
+    }
+
     public RedisSentinelBuilder masterPort(Integer masterPort) {
         this.masterPort = masterPort;
         return this;
@@ -74,53 +115,159 @@ public class RedisSentinelBuilder {
         return this;
     }
 
+    long downAfterMillis() {
+        return downAfterMilliseconds;
+    }
+
+    long failoverTimeoutMillis() {
+        return failoverTimeout;
+    }
+
     public RedisSentinelBuilder parallelSyncs(int parallelSyncs) {
         this.parallelSyncs = parallelSyncs;
         return this;
     }
 
+    /**
+     * Receives the instance's standard output and standard error as it is written. Output is always kept in
+     * the instance's log buffer, see {@link Redis#recentLogs(int)}; without a sink nothing is printed.
+     */
+    public RedisSentinelBuilder logSink(RedisLogSink logSink) {
+        this.logSink = logSink;
+        return this;
+    }
+
+    /**
+     * How {@code stop()} brings the instance down. Defaults to a {@link redis.embedded.stop.TerminateStopStrategy}.
+     */
+    public RedisSentinelBuilder stopStrategy(StopStrategy stopStrategy) {
+        this.stopStrategy = stopStrategy;
+        return this;
+    }
+
+    public RedisSentinelBuilder readinessStrategy(ReadinessStrategy readinessStrategy) {
+        this.readinessStrategy = readinessStrategy;
+        return this;
+    }
+
+    /**
+     * Fails and kills the sentinel if it is not ready this long after {@code start()}. {@code 0}, the
+     * default, waits indefinitely.
+     */
+    public RedisSentinelBuilder startupTimeoutMilliseconds(long startupTimeoutMillis) {
+        this.startupTimeoutMillis = startupTimeoutMillis;
+        return this;
+    }
+
     public RedisSentinelBuilder configFile(String redisConf) {
-        if (redisConfigBuilder != null) {
+        if (config != null) {
             throw new RedisBuildingException("Redis configuration is already partially build using setting(String) method!");
         }
         this.sentinelConf = redisConf;
         return this;
     }
 
+    /**
+     * Applies one line of sentinel configuration, e.g. {@code sentinel monitor mymaster 127.0.0.1 6379 1}.
+     * Any directive is accepted, so that executables of other Redis versions can be configured;
+     * {@link #build()} fails for directives the bundled Redis does not know if that is the one that runs.
+     */
     public RedisSentinelBuilder setting(String configLine) {
+        config().uncheckedLine(configLine);
+        return this;
+    }
+
+    /**
+     * Layers {@code overrides} on top of the configuration set so far: each directive in {@code overrides}
+     * replaces the same directive set before, all {@code sentinel} lines included.
+     */
+    public RedisSentinelBuilder config(RedisConfig overrides) {
+        config().apply(overrides);
+        return this;
+    }
+
+    private RedisConfig.Builder config() {
         if (sentinelConf != null) {
             throw new RedisBuildingException("Redis configuration is already set using redis conf file!");
         }
-
-        if (redisConfigBuilder == null) {
-            redisConfigBuilder = new StringBuilder();
+        if (config == null) {
+            config = RedisConfig.builder();
         }
-
-        redisConfigBuilder.append(configLine);
-        redisConfigBuilder.append(LINE_SEPARATOR);
-        return this;
+        return config;
     }
 
     public RedisSentinel build() {
         tryResolveConfAndExec();
         List<String> args = buildCommandArgs();
-        return new RedisSentinel(args, port);
+        RedisSentinel sentinel = new RedisSentinel(args, portCandidates != null ? 0 : port);
+        sentinel.setPortCandidates(portCandidates);
+        sentinel.setCpuAffinity(cpuAffinity, 1);
+        if (!deferredReplicationGroups.isEmpty() && config != null) {
+            final String baseConfig = config.build().render();
+            final List<Supplier<String>> groups = new ArrayList<Supplier<String>>(deferredReplicationGroups);
+            sentinel.setConfig(new File(sentinelConf), () -> {
+                final StringBuilder config = new StringBuilder(baseConfig);
+                for (Supplier<String> group : groups) {
+                    config.append(group.get());
+                }
+                return config.toString();
+            });
+        }
+        sentinel.setBind(bind);
+        sentinel.setReadinessStrategy(readinessStrategy);
+        sentinel.setStopStrategy(stopStrategy);
+        if (logSink != null) {
+            sentinel.setLogSink(logSink);
+        }
+        sentinel.setBuildPhases(buildPhases);
+        sentinel.setStartupTimeoutMillis(startupTimeoutMillis);
+        return sentinel;
     }
 
     private void tryResolveConfAndExec() {
         try {
+            buildPhases.clear();
             if (sentinelConf == null) {
+                Stopwatch stopwatch = Stopwatch.createStarted();
                 resolveSentinelConf();
+                buildPhases.put(StartupPhase.WRITE_CONFIG, stopwatch.elapsed());
             }
+            Stopwatch stopwatch = Stopwatch.createStarted();
             executable = redisExecProvider.get();
+            buildPhases.put(StartupPhase.RESOLVE_EXECUTABLE, stopwatch.elapsed());
         } catch (Exception e) {
             throw new RedisBuildingException("Could not build sentinel instance", e);
         }
     }
 
     public void reset() {
-        this.redisConfigBuilder = null;
+        this.config = null;
         this.sentinelConf = null;
+        this.deferredReplicationGroups.clear();
+    }
+
+    /**
+     * Creates an independent builder with this builder's settings, in the state {@link #reset()} would leave
+     * this builder. Used to build several sentinels concurrently from one template builder.
+     */
+    RedisSentinelBuilder copy() {
+        RedisSentinelBuilder copy = new RedisSentinelBuilder();
+        copy.redisExecProvider = redisExecProvider;
+        copy.bind = bind;
+        copy.port = port;
+        copy.portCandidates = portCandidates;
+        copy.cpuAffinity = cpuAffinity;
+        copy.masterPort = masterPort;
+        copy.masterName = masterName;
+        copy.downAfterMilliseconds = downAfterMilliseconds;
+        copy.failoverTimeout = failoverTimeout;
+        copy.parallelSyncs = parallelSyncs;
+        copy.quorumSize = quorumSize;
+        copy.readinessStrategy = readinessStrategy;
+        copy.logSink = logSink;
+        copy.stopStrategy = stopStrategy;
+        copy.startupTimeoutMillis = startupTimeoutMillis;
+        return copy;
     }
 
     public void addDefaultReplicationGroup() {
@@ -130,13 +277,34 @@ public class RedisSentinelBuilder {
         setting(String.format(PARALLEL_SYNCS_LINE, masterName, parallelSyncs));
     }
 
+    /**
+     * Like {@link #addDefaultReplicationGroup()}, for a master whose port is only known once it has
+     * started. The monitor settings are written to the configuration file on every start of the sentinel,
+     * with the port {@code masterPort} returns then.
+     */
+    void addReplicationGroup(IntSupplier masterPort) {
+        final String name = masterName;
+        final int quorum = quorumSize;
+        final long downAfter = downAfterMilliseconds;
+        final long failover = failoverTimeout;
+        final int syncs = parallelSyncs;
+        deferredReplicationGroups.add(() -> String.format(MASTER_MONITOR_LINE, name, masterPort.getAsInt(), quorum) + LINE_SEPARATOR
+                + String.format(DOWN_AFTER_LINE, name, downAfter) + LINE_SEPARATOR
+                + String.format(FAILOVER_LINE, name, failover) + LINE_SEPARATOR
+                + String.format(PARALLEL_SYNCS_LINE, name, syncs) + LINE_SEPARATOR);
+    }
+
     private void resolveSentinelConf() throws IOException {
-        if (redisConfigBuilder == null) {
+        if (config == null && deferredReplicationGroups.isEmpty()) {
             addDefaultReplicationGroup();
         }
         setting("bind "+bind);
         setting(String.format(PORT_LINE, port));
-        final String configString = redisConfigBuilder.toString();
+        final RedisConfig built = config.build();
+        if (redisExecProvider.isBundled()) {
+            built.checkKnown();
+        }
+        final String configString = built.render();
 
         File redisConfigFile = File.createTempFile(resolveConfigName(), ".conf");
         redisConfigFile.deleteOnExit();
@@ -1,15 +1,23 @@
 package redis.embedded;
 
+import redis.embedded.readiness.LogLineReadinessStrategy;
+import redis.embedded.readiness.PingReadinessStrategy;
+import redis.embedded.util.UnixSockets;
+
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.IntSupplier;
 
 public class RedisServer extends AbstractRedisInstance {
     private static final String REDIS_READY_PATTERN = ".*(R|r)eady to accept connections.*";
     private static final int DEFAULT_REDIS_PORT = 6379;
 
+    private IntSupplier masterPort;
+
     public RedisServer() {
         this(DEFAULT_REDIS_PORT);
     }
@@ -45,11 +53,40 @@ public class RedisServer extends AbstractRedisInstance {
         this.args = new ArrayList<>(args);
     }
 
+    /**
+     * Port of the master to replicate, looked up on every start.
+     */
+    void setMasterPort(IntSupplier masterPort) {
+        this.masterPort = masterPort;
+    }
+
+    @Override
+    protected void beforeStart() {
+        if (masterPort != null) {
+            final int index = args.indexOf("--slaveof");
+            args.set(index + 2, Integer.toString(masterPort.getAsInt()));
+        }
+    }
+
     public static RedisServerBuilder builder() {
         return new RedisServerBuilder();
     }
 
     @Override
+    public CompletableFuture<RedisServer> startAsync() {
+        return super.startAsync().thenApply(redis -> this);
+    }
+
+    /**
+     * Probes with {@code PING} when the instance has a plain TCP port, or a Unix domain socket this JVM can
+     * connect to, and falls back to waiting for the readiness log line otherwise.
+     */
+    @Override
+    protected ReadinessStrategy defaultReadinessStrategy() {
+        final boolean pingable = !ports().isEmpty() || (!unixSockets().isEmpty() && UnixSockets.isSupported());
+        return pingable ? new PingReadinessStrategy() : new LogLineReadinessStrategy(redisReadyPattern());
+    }
+
     protected String redisReadyPattern() {
         return REDIS_READY_PATTERN;
     }
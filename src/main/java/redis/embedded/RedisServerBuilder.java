@@ -1,30 +1,51 @@
 package redis.embedded;
 
+import com.google.common.base.Preconditions;
+import com.google.common.base.Stopwatch;
 import com.google.common.base.Strings;
-import com.google.common.io.Files;
 import redis.embedded.exceptions.RedisBuildingException;
+import redis.embedded.ports.EphemeralPortProvider;
+import redis.embedded.readiness.ReplicaSyncReadinessStrategy;
+import redis.embedded.util.ExecutableCache;
 
 import java.io.File;
 import java.io.IOException;
 import java.net.InetSocketAddress;
-import java.nio.charset.Charset;
-import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.IntSupplier;
 
 public class RedisServerBuilder {
-    private static final String LINE_SEPARATOR = System.getProperty("line.separator");
-    private static final String CONF_FILENAME = "embedded-redis-server";
-
     private File executable;
     private RedisExecProvider redisExecProvider = RedisExecProvider.defaultProvider();
     private String bind="127.0.0.1";
     private int port = 6379;
     private int tlsPort = 0;
+    private Path unixSocket;
+    private int ioThreads = 0;
+    private boolean ioThreadsDoReads;
+    private CpuAffinity cpuAffinity;
+    private int cpus = 0;
+    private MemoryBudget memoryBudget;
+    private long maxmemoryBytes;
+    private RedisConfig.MaxmemoryPolicy maxmemoryPolicy;
+    private PortProvider portCandidates;
     private InetSocketAddress slaveOf;
+    private IntSupplier slaveOfPort;
     private String redisConf;
+    private ReadinessStrategy readinessStrategy;
+    private boolean awaitReplicaSync;
+    private RedisLogSink logSink;
+    private StopStrategy stopStrategy;
+    private long startupTimeoutMillis = 0L;
+    private Path seed;
+    private final Map<StartupPhase, Duration> buildPhases = new EnumMap<StartupPhase, Duration>(StartupPhase.class);
 
-    private StringBuilder redisConfigBuilder;
+    private RedisConfig.Builder config;
 
     public RedisServerBuilder redisExecProvider(RedisExecProvider redisExecProvider) {
         this.redisExecProvider = redisExecProvider;
@@ -36,8 +57,30 @@ public class RedisServerBuilder {
         return this;
     }
 
+    /**
+     * Listens on the fixed {@code port}, overriding an earlier {@link #discoverPort()}.
+     */
     public RedisServerBuilder port(int port) {
         this.port = port;
+        this.portCandidates = null;
+        return this;
+    }
+
+    /**
+     * Lets the server pick a free port when it starts instead of using a fixed one: it tries ports
+     * suggested by the operating system until it binds one. The port is known once the server has
+     * started, see {@link Redis#ports()}.
+     */
+    public RedisServerBuilder discoverPort() {
+        return discoverPort(new EphemeralPortProvider());
+    }
+
+    /**
+     * Like {@link #discoverPort()}, but tries ports from {@code candidates}, e.g. a
+     * {@link redis.embedded.ports.RangePortProvider}.
+     */
+    public RedisServerBuilder discoverPort(PortProvider candidates) {
+        this.portCandidates = candidates;
         return this;
     }
 
@@ -46,6 +89,72 @@ public class RedisServerBuilder {
         return this;
     }
 
+    /**
+     * Also listens on a Unix domain socket, which has lower per-command latency than loopback TCP. Use
+     * {@code port(0)} to not listen on TCP at all. A relative path is relative to the instance's own working
+     * directory, so {@code Paths.get("redis.sock")} gives every instance a socket of its own.
+     *
+     * <p>Connecting to the socket from Java requires Java 16 or later. On older versions the server is
+     * still started, but readiness is detected from its log output.</p>
+     */
+    public RedisServerBuilder unixSocket(Path unixSocket) {
+        this.unixSocket = unixSocket;
+        return this;
+    }
+
+    /**
+     * Threads for client I/O, counting the main thread; see {@code io-threads} in {@code redis.conf}. Only
+     * writes are threaded unless {@link #ioThreadsDoReads(boolean)} is enabled.
+     */
+    public RedisServerBuilder ioThreads(int ioThreads) {
+        Preconditions.checkArgument(ioThreads >= 1 && ioThreads <= 128, "io-threads must be between 1 and 128");
+        this.ioThreads = ioThreads;
+        return this;
+    }
+
+    public RedisServerBuilder ioThreadsDoReads(boolean ioThreadsDoReads) {
+        this.ioThreadsDoReads = ioThreadsDoReads;
+        return this;
+    }
+
+    /**
+     * Pins the server to CPUs chosen by {@code cpuAffinity}, e.g. {@link redis.embedded.affinity.SpreadingCpuAffinity#shared()},
+     * one per I/O thread. The assignment is reported by {@link RedisServer#cpuSet()}.
+     */
+    public RedisServerBuilder cpuAffinity(CpuAffinity cpuAffinity) {
+        return cpuAffinity(cpuAffinity, 0);
+    }
+
+    /**
+     * Like {@link #cpuAffinity(CpuAffinity)}, with {@code cpus} CPUs per server.
+     */
+    public RedisServerBuilder cpuAffinity(CpuAffinity cpuAffinity, int cpus) {
+        Preconditions.checkArgument(cpus >= 0, "cpus must not be negative");
+        this.cpuAffinity = cpuAffinity;
+        this.cpus = cpus;
+        return this;
+    }
+
+    /**
+     * Caps the server at {@code maxmemory} bytes, evicting nothing, and reserves them of {@code budget} on
+     * every start. See {@link MemoryBudget} for what happens when the budget is used up.
+     */
+    public RedisServerBuilder memoryBudget(MemoryBudget budget, long maxmemory) {
+        return memoryBudget(budget, maxmemory, RedisConfig.MaxmemoryPolicy.NOEVICTION);
+    }
+
+    /**
+     * Like {@link #memoryBudget(MemoryBudget, long)}, evicting keys by {@code policy} once {@code maxmemory}
+     * is reached.
+     */
+    public RedisServerBuilder memoryBudget(MemoryBudget budget, long maxmemory, RedisConfig.MaxmemoryPolicy policy) {
+        Preconditions.checkArgument(maxmemory > 0, "maxmemory must be positive");
+        this.memoryBudget = budget;
+        this.maxmemoryBytes = maxmemory;
+        this.maxmemoryPolicy = policy;
+        return this;
+    }
+
     public RedisServerBuilder slaveOf(String hostname, int port) {
         this.slaveOf = new InetSocketAddress(hostname, port);
         return this;
@@ -56,42 +165,204 @@ public class RedisServerBuilder {
         return this;
     }
 
+    /**
+     * Replicates a master whose port is only known once it has started; {@code port} is read on every
+     * start of this server.
+     */
+    RedisServerBuilder slaveOf(String hostname, IntSupplier port) {
+        this.slaveOf = InetSocketAddress.createUnresolved(hostname, 0);
+        this.slaveOfPort = port;
+        return this;
+    }
+
+    /**
+     * Receives the instance's standard output and standard error as it is written. Output is always kept in
+     * the instance's log buffer, see {@link Redis#recentLogs(int)}; without a sink nothing is printed.
+     */
+    public RedisServerBuilder logSink(RedisLogSink logSink) {
+        this.logSink = logSink;
+        return this;
+    }
+
+    /**
+     * How {@code stop()} brings the instance down. Defaults to a {@link redis.embedded.stop.TerminateStopStrategy}.
+     */
+    public RedisServerBuilder stopStrategy(StopStrategy stopStrategy) {
+        this.stopStrategy = stopStrategy;
+        return this;
+    }
+
+    public RedisServerBuilder readinessStrategy(ReadinessStrategy readinessStrategy) {
+        this.readinessStrategy = readinessStrategy;
+        return this;
+    }
+
+    /**
+     * Makes {@code start()} of a replica return only once its initial sync with the master is done and it
+     * has caught up with the master's offset, see {@link ReplicaSyncReadinessStrategy}. The time this takes
+     * is reported as {@link StartupPhase#REPLICA_SYNC}. The master must be running by then.
+     */
+    public RedisServerBuilder awaitReplicaSync(boolean awaitReplicaSync) {
+        this.awaitReplicaSync = awaitReplicaSync;
+        return this;
+    }
+
+    /**
+     * Fails and kills the instance if it is not ready this long after {@code start()}, not counting the wait
+     * for its memory budget. {@code 0}, the default, waits indefinitely.
+     */
+    public RedisServerBuilder startupTimeoutMilliseconds(long startupTimeoutMillis) {
+        this.startupTimeoutMillis = startupTimeoutMillis;
+        return this;
+    }
+
+    /**
+     * Boots the server from a prepared RDB dump instead of an empty data set. The dump is hard linked (or
+     * cloned, or copied if neither is possible) into the instance's working directory before every start,
+     * so many instances can share one fixture. The instance's {@code dir} and {@code dbfilename} settings
+     * are overridden to point at it. Readiness waits for the dump to finish loading.
+     */
+    public RedisServerBuilder seedFrom(Path rdb) {
+        this.seed = rdb;
+        return this;
+    }
+
+    boolean isSeeded() {
+        return seed != null;
+    }
+
     public RedisServerBuilder configFile(String redisConf) {
-        if (redisConfigBuilder != null) {
+        if (config != null) {
             throw new RedisBuildingException("Redis configuration is already partially build using setting(String) method!");
         }
         this.redisConf = redisConf;
         return this;
     }
 
+    /**
+     * Applies one line of Redis configuration, e.g. {@code maxmemory 128mb}. Any directive is accepted, so
+     * that executables of other Redis versions can be configured; {@link #build()} fails for directives the
+     * bundled Redis does not know if that is the one that runs.
+     */
     public RedisServerBuilder setting(String configLine) {
+        config().uncheckedLine(configLine);
+        return this;
+    }
+
+    /**
+     * Layers {@code overrides} on top of the configuration set so far: each directive in {@code overrides}
+     * replaces the same directive set before. Servers with equal configurations share one configuration
+     * file, named after {@link RedisConfig#hash()}.
+     */
+    public RedisServerBuilder config(RedisConfig overrides) {
+        config().apply(overrides);
+        return this;
+    }
+
+    private RedisConfig.Builder config() {
         if (redisConf != null) {
             throw new RedisBuildingException("Redis configuration is already set using redis conf file!");
         }
-
-        if (redisConfigBuilder == null) {
-            redisConfigBuilder = new StringBuilder();
+        if (config == null) {
+            config = RedisConfig.builder();
         }
-
-        redisConfigBuilder.append(configLine);
-        redisConfigBuilder.append(LINE_SEPARATOR);
-        return this;
+        return config;
     }
 
     public RedisServer build() {
+        if (seed != null && !seed.toFile().isFile()) {
+            throw new RedisBuildingException("Seed dump file " + seed + " does not exist");
+        }
         setting("bind "+bind);
+        final MemoryBudget budget = memoryBudget != null ? memoryBudget : MemoryBudget.global().orElse(null);
+        final RedisConfig configured = config != null ? config.build() : RedisConfig.empty();
+        final long maxmemory = budget != null ? budgetedMaxmemory(configured) : 0L;
         tryResolveConfAndExec();
         List<String> args = buildCommandArgs();
-        return new RedisServer(args, port, tlsPort);
+        if (budget != null) {
+            args.add("--maxmemory");
+            args.add(Long.toString(maxmemory));
+            if (maxmemoryPolicy != null || !configured.get("maxmemory-policy").isPresent()) {
+                args.add("--maxmemory-policy");
+                args.add((maxmemoryPolicy != null ? maxmemoryPolicy : RedisConfig.MaxmemoryPolicy.NOEVICTION).value());
+            }
+        }
+        RedisServer server = new RedisServer(args, portCandidates != null ? 0 : port, tlsPort);
+        server.setPortCandidates(portCandidates);
+        server.setUnixSocket(unixSocket);
+        server.setCpuAffinity(cpuAffinity, cpus > 0 ? cpus : Math.max(1, ioThreads));
+        server.setMemoryBudget(budget, maxmemory);
+        server.setMasterPort(slaveOfPort);
+        server.setBind(bind);
+        server.setReadinessStrategy(readinessStrategy);
+        if (awaitReplicaSync && slaveOf != null) {
+            server.setReplicaSyncStrategy(new ReplicaSyncReadinessStrategy());
+        }
+        server.setStopStrategy(stopStrategy);
+        if (logSink != null) {
+            server.setLogSink(logSink);
+        }
+        server.setBuildPhases(buildPhases);
+        server.setStartupTimeoutMillis(startupTimeoutMillis);
+        server.setSeed(seed);
+        return server;
     }
 
     public void reset() {
         this.executable = null;
-        this.redisConfigBuilder = null;
+        this.config = null;
         this.slaveOf = null;
+        this.slaveOfPort = null;
         this.redisConf = null;
     }
 
+    /**
+     * Creates an independent builder with all of this builder's settings, including its configuration,
+     * except for replication ({@code slaveOf}). Used to build several instances concurrently from one
+     * template builder. A configuration file set with {@link #configFile(String)} is carried over as an
+     * {@code include}, so that the copy can still take further settings.
+     */
+    RedisServerBuilder copy() {
+        RedisServerBuilder copy = new RedisServerBuilder();
+        if (config != null) {
+            copy.config = RedisConfig.builder().apply(config.build());
+        } else if (redisConf != null) {
+            copy.config = RedisConfig.builder().add("include", new File(redisConf).getAbsolutePath());
+        }
+        copy.redisExecProvider = redisExecProvider;
+        copy.bind = bind;
+        copy.port = port;
+        copy.portCandidates = portCandidates;
+        copy.tlsPort = tlsPort;
+        copy.unixSocket = unixSocket;
+        copy.ioThreads = ioThreads;
+        copy.ioThreadsDoReads = ioThreadsDoReads;
+        copy.cpuAffinity = cpuAffinity;
+        copy.cpus = cpus;
+        copy.memoryBudget = memoryBudget;
+        copy.maxmemoryBytes = maxmemoryBytes;
+        copy.maxmemoryPolicy = maxmemoryPolicy;
+        copy.readinessStrategy = readinessStrategy;
+        copy.awaitReplicaSync = awaitReplicaSync;
+        copy.logSink = logSink;
+        copy.stopStrategy = stopStrategy;
+        copy.startupTimeoutMillis = startupTimeoutMillis;
+        copy.seed = seed;
+        return copy;
+    }
+
+    /**
+     * {@code maxmemory} to reserve: the one given with the budget, else a limit set through the
+     * configuration, else the default for instances under the global budget.
+     */
+    private long budgetedMaxmemory(RedisConfig configured) {
+        if (maxmemoryBytes > 0) {
+            return maxmemoryBytes;
+        }
+        final long fromConfig = configured.get("maxmemory").map(MemoryBudget::parseSize).orElse(0L);
+        return fromConfig > 0 ? fromConfig : MemoryBudget.globalInstanceBytes();
+    }
+
     private void tryResolveConfAndExec() {
         try {
             resolveConfAndExec();
@@ -101,24 +372,26 @@ public class RedisServerBuilder {
     }
 
     private void resolveConfAndExec() throws IOException {
-        if (redisConf == null && redisConfigBuilder != null) {
-            File redisConfigFile = File.createTempFile(resolveConfigName(), ".conf");
-            redisConfigFile.deleteOnExit();
-            Files.asCharSink(redisConfigFile, StandardCharsets.UTF_8).write(redisConfigBuilder.toString());
-            redisConf = redisConfigFile.getAbsolutePath();
+        buildPhases.clear();
+        if (redisConf == null && config != null) {
+            Stopwatch stopwatch = Stopwatch.createStarted();
+            final RedisConfig built = config.build();
+            if (redisExecProvider.isBundled()) {
+                built.checkKnown();
+            }
+            redisConf = built.writeTo(ExecutableCache.cacheDirectory().resolve("conf")).toAbsolutePath().toString();
+            buildPhases.put(StartupPhase.WRITE_CONFIG, stopwatch.elapsed());
         }
 
         try {
+            Stopwatch stopwatch = Stopwatch.createStarted();
             executable = redisExecProvider.get();
+            buildPhases.put(StartupPhase.RESOLVE_EXECUTABLE, stopwatch.elapsed());
         } catch (Exception e) {
             throw new RedisBuildingException("Failed to resolve executable", e);
         }
     }
 
-    private String resolveConfigName() {
-        return CONF_FILENAME + "_" + port;
-    }
-
     private List<String> buildCommandArgs() {
         List<String> args = new ArrayList<String>();
         args.add(executable.getAbsolutePath());
@@ -135,12 +408,37 @@ public class RedisServerBuilder {
             args.add(Integer.toString(tlsPort));
         }
 
+        if (unixSocket != null) {
+            args.add("--unixsocket");
+            args.add(unixSocket.toString());
+            args.add("--unixsocketperm");
+            args.add("700");
+        }
+
+        if (ioThreads > 0) {
+            args.add("--io-threads");
+            args.add(Integer.toString(ioThreads));
+        }
+
+        if (ioThreadsDoReads) {
+            args.add("--io-threads-do-reads");
+            args.add("yes");
+        }
+
         if (slaveOf != null) {
             args.add("--slaveof");
             args.add(slaveOf.getHostName());
             args.add(Integer.toString(slaveOf.getPort()));
         }
 
+        if (seed != null) {
+            // relative to the instance's working directory, where the seed is placed
+            args.add("--dir");
+            args.add(".");
+            args.add("--dbfilename");
+            args.add(RedisServer.SEED_FILENAME);
+        }
+
         return args;
     }
 }
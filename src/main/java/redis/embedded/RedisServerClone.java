@@ -0,0 +1,58 @@
+package redis.embedded;
+
+import java.time.Duration;
+
+/**
+ * A server created by {@link RedisServerCloner}, together with how long its initial synchronization from
+ * the template took.
+ */
+public class RedisServerClone {
+    private final RedisServer server;
+    private final Duration syncTime;
+    private final long syncBytes;
+
+    RedisServerClone(RedisServer server, Duration syncTime, long syncBytes) {
+        this.server = server;
+        this.syncTime = syncTime;
+        this.syncBytes = syncBytes;
+    }
+
+    public RedisServer server() {
+        return server;
+    }
+
+    public int port() {
+        return server.ports().get(0);
+    }
+
+    /**
+     * Time from issuing {@code REPLICAOF} until the replication link was up with the dataset loaded.
+     */
+    public Duration syncTime() {
+        return syncTime;
+    }
+
+    /**
+     * Bytes received from the template during the sync, or {@code -1} if the Redis version does not
+     * report them.
+     */
+    public long syncBytes() {
+        return syncBytes;
+    }
+
+    /**
+     * Sync throughput in bytes per second, or {@code -1} if the transferred size is unknown.
+     */
+    public double syncBytesPerSecond() {
+        if (syncBytes < 0) {
+            return -1;
+        }
+        final double seconds = syncTime.toNanos() / 1e9;
+        return seconds > 0 ? syncBytes / seconds : syncBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "RedisServerClone{port=" + port() + ", syncTime=" + syncTime.toMillis() + "ms, syncBytes=" + syncBytes + "}";
+    }
+}
@@ -0,0 +1,182 @@
+package redis.embedded;
+
+import redis.embedded.exceptions.EmbeddedRedisException;
+import redis.embedded.exceptions.RedisCommandException;
+import redis.embedded.ports.EphemeralPortProvider;
+import redis.embedded.util.RespClient;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creates independent copies of a running template server. Each clone is started empty, replicates the
+ * template's dataset over a diskless sync, and is then promoted with {@code REPLICAOF NO ONE}. Loading a
+ * large dataset into the template once and cloning it is much faster than loading it into every instance.
+ *
+ * <p>While cloning, the template is switched to diskless replication and waits until all concurrently
+ * started clones have connected, so that a single fork streams the dataset to all of them. Its previous
+ * replication settings are restored afterwards.</p>
+ */
+public class RedisServerCloner {
+    private static final int ADMIN_TIMEOUT_MILLIS = 5000;
+    private static final long MIN_POLL_DELAY_MILLIS = 1L;
+    private static final long MAX_POLL_DELAY_MILLIS = 100L;
+    private static final String DISKLESS_SYNC_DELAY_SECONDS = "1";
+
+    private final RedisServer template;
+    private RedisServerBuilder serverBuilder = new RedisServerBuilder();
+    private PortProvider portProvider = new EphemeralPortProvider();
+    private int parallelism = ParallelExecution.DEFAULT_PARALLELISM;
+    private long syncTimeoutMillis = 60000L;
+
+    public RedisServerCloner(RedisServer template) {
+        this.template = template;
+    }
+
+    /**
+     * Template for the clones. Each clone is built from a copy of it, including its configuration, with a
+     * port from the cloner's {@link PortProvider}.
+     */
+    public RedisServerCloner withServerBuilder(RedisServerBuilder serverBuilder) {
+        this.serverBuilder = serverBuilder;
+        return this;
+    }
+
+    public RedisServerCloner portProvider(PortProvider portProvider) {
+        this.portProvider = portProvider;
+        return this;
+    }
+
+    public RedisServerCloner parallelism(int parallelism) {
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    public RedisServerCloner syncTimeoutMilliseconds(long syncTimeoutMillis) {
+        this.syncTimeoutMillis = syncTimeoutMillis;
+        return this;
+    }
+
+    /**
+     * Starts {@code count} clones of the template and returns once all of them hold its dataset and have
+     * been promoted to masters. If any clone fails, the clones started so far are stopped again.
+     */
+    public List<RedisServerClone> clone(int count) throws EmbeddedRedisException {
+        if (!template.isActive()) {
+            throw new EmbeddedRedisException("Template Redis server must be started before it can be cloned");
+        }
+        if (template.ports().isEmpty()) {
+            throw new EmbeddedRedisException("Template Redis server has no plain TCP port to replicate from");
+        }
+        if (count <= 0) {
+            return Collections.emptyList();
+        }
+
+        final List<Integer> ports = new ArrayList<Integer>();
+        for (int i = 0; i < count; i++) {
+            ports.add(portProvider.next());
+        }
+
+        final List<RedisServer> started = Collections.synchronizedList(new ArrayList<RedisServer>());
+        final Map<String, String> templateConfig = prepareTemplate(Math.min(count, Math.max(1, parallelism)));
+        try {
+            return ParallelExecution.map(ports, parallelism, port -> cloneTo(port, started));
+        } catch (RuntimeException e) {
+            try {
+                ParallelExecution.forEach(started, parallelism, RedisServer::stop);
+            } catch (RuntimeException rollbackFailure) {
+                e.addSuppressed(rollbackFailure);
+            }
+            throw e;
+        } finally {
+            restoreTemplate(templateConfig);
+        }
+    }
+
+    private RedisServerClone cloneTo(int port, List<RedisServer> started) {
+        final RedisServer server = serverBuilder.copy()
+                .port(port)
+                .setting("repl-diskless-load on-empty-db")
+                .build();
+        server.start();
+        started.add(server);
+
+        try (RespClient client = server.connect(ADMIN_TIMEOUT_MILLIS)) {
+            final long begin = System.nanoTime();
+            client.call("REPLICAOF", template.host(), Integer.toString(template.ports().get(0)));
+            awaitSync(client, begin + TimeUnit.MILLISECONDS.toNanos(syncTimeoutMillis));
+            final Duration syncTime = Duration.ofNanos(System.nanoTime() - begin);
+            final String received = client.info("stats").get("total_net_repl_input_bytes");
+            client.call("REPLICAOF", "NO", "ONE");
+            return new RedisServerClone(server, syncTime, received != null ? Long.parseLong(received) : -1L);
+        } catch (IOException e) {
+            throw new EmbeddedRedisException("Failed to clone template Redis server to port " + port, e);
+        }
+    }
+
+    private void awaitSync(RespClient client, long deadline) throws IOException {
+        long delay = MIN_POLL_DELAY_MILLIS;
+        while (true) {
+            final Map<String, String> replication = client.info("replication");
+            if ("up".equals(replication.get("master_link_status")) && "0".equals(replication.get("master_sync_in_progress"))) {
+                return;
+            }
+            if (System.nanoTime() - deadline > 0) {
+                throw new EmbeddedRedisException("Clone did not finish syncing within " + syncTimeoutMillis + "ms: " + replication);
+            }
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new EmbeddedRedisException("Interrupted while waiting for clone to sync", e);
+            }
+            delay = Math.min(delay * 2, MAX_POLL_DELAY_MILLIS);
+        }
+    }
+
+    /**
+     * Switches the template to diskless sync that starts as soon as {@code replicas} clones are waiting.
+     * Returns the previous values of the changed settings.
+     */
+    private Map<String, String> prepareTemplate(int replicas) {
+        final Map<String, String> desired = new LinkedHashMap<String, String>();
+        desired.put("repl-diskless-sync", "yes");
+        desired.put("repl-diskless-sync-delay", DISKLESS_SYNC_DELAY_SECONDS);
+        desired.put("repl-diskless-sync-max-replicas", Integer.toString(replicas));
+
+        final Map<String, String> previous = new LinkedHashMap<String, String>();
+        try (RespClient client = template.connect(ADMIN_TIMEOUT_MILLIS)) {
+            for (Map.Entry<String, String> setting : desired.entrySet()) {
+                final List<?> current = (List<?>) client.call("CONFIG", "GET", setting.getKey());
+                if (current.size() < 2) {
+                    // not supported by this Redis version
+                    continue;
+                }
+                previous.put(setting.getKey(), String.valueOf(current.get(1)));
+                client.call("CONFIG", "SET", setting.getKey(), setting.getValue());
+            }
+        } catch (IOException e) {
+            throw new EmbeddedRedisException("Failed to configure template Redis server for cloning", e);
+        }
+        return previous;
+    }
+
+    private void restoreTemplate(Map<String, String> previous) {
+        if (!template.isActive()) {
+            return;
+        }
+        try (RespClient client = template.connect(ADMIN_TIMEOUT_MILLIS)) {
+            for (Map.Entry<String, String> setting : previous.entrySet()) {
+                client.call("CONFIG", "SET", setting.getKey(), setting.getValue());
+            }
+        } catch (IOException | RedisCommandException e) {
+            // the clones are complete; a template left with diskless sync enabled is still usable
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package redis.embedded;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A started {@link RedisServer} borrowed from a {@link RedisServerPool}. Closing the lease hands the
+ * server back to the pool, which wipes its data and configuration changes before leasing it again.
+ */
+public class RedisServerLease implements AutoCloseable {
+    private final RedisServerPool pool;
+    private final RedisServer server;
+    private final Duration waitTime;
+    private final boolean hit;
+    private final AtomicBoolean released = new AtomicBoolean(false);
+
+    RedisServerLease(RedisServerPool pool, RedisServer server, Duration waitTime, boolean hit) {
+        this.pool = pool;
+        this.server = server;
+        this.waitTime = waitTime;
+        this.hit = hit;
+    }
+
+    public RedisServer server() {
+        return server;
+    }
+
+    public int port() {
+        return server.ports().get(0);
+    }
+
+    /**
+     * How long {@link RedisServerPool#acquire()} waited for this server.
+     */
+    public Duration waitTime() {
+        return waitTime;
+    }
+
+    /**
+     * Whether the server was already started and idle when it was requested.
+     */
+    public boolean isHit() {
+        return hit;
+    }
+
+    @Override
+    public void close() {
+        if (released.compareAndSet(false, true)) {
+            pool.release(server);
+        }
+    }
+}
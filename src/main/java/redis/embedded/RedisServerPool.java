@@ -0,0 +1,332 @@
+package redis.embedded;
+
+import redis.embedded.exceptions.EmbeddedRedisException;
+import redis.embedded.exceptions.RedisCommandException;
+import redis.embedded.stop.ShutdownNoSaveStopStrategy;
+import redis.embedded.util.RespClient;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps {@link RedisServer} instances started in the background and hands them out as
+ * {@link RedisServerLease}s, so that callers pay for process spawn and readiness only when the pool runs
+ * dry.
+ *
+ * <p>The pool sizes itself to demand: it tracks a moving average of concurrently leased servers, updated on
+ * every lease and return and sampled every {@value #DEMAND_SAMPLE_MILLIS}ms, and keeps that many plus
+ * {@code minIdle} servers around, up to {@code maxSize}. Idle servers beyond that are stopped, so the pool
+ * shrinks back after a burst. Returned servers are reset with {@code FLUSHALL}, flushed scripts and
+ * functions, and any {@code CONFIG SET} changes reverted before they are leased again; servers that cannot
+ * be reset, or are no longer needed, are stopped. Servers built with {@link RedisServerBuilder#seedFrom}
+ * are never reused, since resetting would discard the seeded data.</p>
+ */
+public class RedisServerPool implements AutoCloseable {
+    private static final int ADMIN_TIMEOUT_MILLIS = 5000;
+    private static final double DEMAND_SMOOTHING = 0.2;
+    private static final long DEMAND_SAMPLE_MILLIS = 1000L;
+    // pooled data is disposable, so there is no point in saving it
+    private static final StopStrategy DISCARD = new ShutdownNoSaveStopStrategy();
+
+    private final RedisServerBuilder serverBuilder;
+    private final PortProvider portProvider;
+    private final int minIdle;
+    private final int maxSize;
+    private final long acquireTimeoutMillis;
+
+    private final BlockingDeque<RedisServer> idle = new LinkedBlockingDeque<RedisServer>();
+    private final Map<RedisServer, Map<String, String>> servers = new HashMap<RedisServer, Map<String, String>>();
+    private int starting;
+    private int resetting;
+    private int leased;
+    private int waiting;
+    private double demand;
+    private boolean closed;
+    private ScheduledFuture<?> demandSampling;
+    private RuntimeException lastStartFailure;
+
+    private long hits;
+    private long misses;
+    private long totalWaitNanos;
+    private long maxWaitNanos;
+    private long started;
+    private long retired;
+    private long startFailures;
+
+    RedisServerPool(RedisServerBuilder serverBuilder, PortProvider portProvider, int minIdle, int maxSize, long acquireTimeoutMillis) {
+        this.serverBuilder = serverBuilder;
+        this.portProvider = portProvider;
+        this.minIdle = minIdle;
+        this.maxSize = maxSize;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+    }
+
+    public static RedisServerPoolBuilder builder() {
+        return new RedisServerPoolBuilder();
+    }
+
+    /**
+     * Starts warming up {@code minIdle} servers in the background and returns immediately.
+     */
+    public synchronized void start() {
+        checkOpen();
+        if (demandSampling == null) {
+            demandSampling = ParallelExecution.SCHEDULER.scheduleWithFixedDelay(this::sampleDemand,
+                    DEMAND_SAMPLE_MILLIS, DEMAND_SAMPLE_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        replenish();
+    }
+
+    public RedisServerLease acquire() throws EmbeddedRedisException {
+        final long begin = System.nanoTime();
+        RedisServer server = idle.pollFirst();
+        final boolean hit = server != null;
+        if (!hit) {
+            server = awaitServer(begin);
+        }
+        final long waitNanos = System.nanoTime() - begin;
+        synchronized (this) {
+            if (hit) {
+                hits++;
+            } else {
+                misses++;
+            }
+            totalWaitNanos += waitNanos;
+            maxWaitNanos = Math.max(maxWaitNanos, waitNanos);
+            leased++;
+            updateDemand();
+            if (!closed) {
+                replenish();
+            }
+        }
+        return new RedisServerLease(this, server, Duration.ofNanos(waitNanos), hit);
+    }
+
+    private RedisServer awaitServer(long begin) {
+        synchronized (this) {
+            checkOpen();
+            waiting++;
+            replenish();
+        }
+        try {
+            final long deadline = begin + TimeUnit.MILLISECONDS.toNanos(acquireTimeoutMillis);
+            final RedisServer server = idle.pollFirst(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            if (server == null) {
+                synchronized (this) {
+                    throw new EmbeddedRedisException("No pooled Redis server became available within " + acquireTimeoutMillis + "ms", lastStartFailure);
+                }
+            }
+            return server;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new EmbeddedRedisException("Interrupted while waiting for a pooled Redis server", e);
+        } finally {
+            synchronized (this) {
+                waiting--;
+            }
+        }
+    }
+
+    void release(final RedisServer server) {
+        synchronized (this) {
+            leased--;
+            updateDemand();
+            // a flushed seeded server would no longer hold its fixture; a fresh one reloads it natively
+            if (closed || serverBuilder.isSeeded() || idle.size() + starting + resetting + leased >= desiredSize()) {
+                retire(server);
+                if (!closed) {
+                    replenish();
+                }
+                return;
+            }
+            resetting++;
+        }
+        ParallelExecution.ASYNC_EXECUTOR.execute(() -> {
+            final boolean reset = reset(server);
+            synchronized (this) {
+                resetting--;
+                if (reset && !closed) {
+                    idle.offerLast(server);
+                } else {
+                    retire(server);
+                    if (!closed) {
+                        replenish();
+                    }
+                }
+            }
+        });
+    }
+
+    public synchronized RedisServerPoolStats stats() {
+        return new RedisServerPoolStats(hits, misses, totalWaitNanos, maxWaitNanos, idle.size(), leased, starting,
+                started, retired, startFailures);
+    }
+
+    /**
+     * Stops every server started by this pool, including leased ones.
+     */
+    @Override
+    public void close() {
+        final List<RedisServer> toStop;
+        synchronized (this) {
+            closed = true;
+            if (demandSampling != null) {
+                demandSampling.cancel(false);
+            }
+            toStop = new ArrayList<RedisServer>(servers.keySet());
+            servers.clear();
+            idle.clear();
+        }
+        ParallelExecution.forEach(toStop, ParallelExecution.DEFAULT_PARALLELISM, server -> server.stop(DISCARD));
+    }
+
+    // guarded by this
+    private void updateDemand() {
+        demand += DEMAND_SMOOTHING * (leased - demand);
+    }
+
+    private synchronized void sampleDemand() {
+        if (closed) {
+            return;
+        }
+        updateDemand();
+        int current = idle.size() + starting + resetting + leased;
+        final int desired = desiredSize();
+        while (current > desired) {
+            final RedisServer surplus = idle.pollLast();
+            if (surplus == null) {
+                break;
+            }
+            retire(surplus);
+            current--;
+        }
+        replenish();
+    }
+
+    private int desiredSize() {
+        final int expected = Math.max((int) Math.ceil(demand), leased + waiting);
+        return Math.min(maxSize, expected + minIdle);
+    }
+
+    // guarded by this
+    private void replenish() {
+        int current = idle.size() + starting + resetting + leased;
+        final int desired = desiredSize();
+        while (current < desired) {
+            startServer();
+            current++;
+        }
+    }
+
+    // guarded by this
+    private void startServer() {
+        starting++;
+        ParallelExecution.ASYNC_EXECUTOR.execute(() -> {
+            RedisServer server = null;
+            try {
+                server = serverBuilder.copy().port(portProvider.next()).build();
+                server.start();
+                final Map<String, String> config = snapshotConfig(server);
+                onStarted(server, config);
+            } catch (RuntimeException e) {
+                onStartFailed(server, e);
+            }
+        });
+    }
+
+    private synchronized void onStarted(RedisServer server, Map<String, String> config) {
+        starting--;
+        started++;
+        if (closed) {
+            discard(server);
+            return;
+        }
+        servers.put(server, config);
+        idle.offerLast(server);
+    }
+
+    private synchronized void onStartFailed(RedisServer server, RuntimeException failure) {
+        starting--;
+        startFailures++;
+        lastStartFailure = failure;
+        if (server != null) {
+            discard(server);
+        }
+    }
+
+    // guarded by this
+    private void retire(RedisServer server) {
+        servers.remove(server);
+        retired++;
+        discard(server);
+    }
+
+    private static void discard(RedisServer server) {
+        ParallelExecution.ASYNC_EXECUTOR.execute(() -> server.stop(DISCARD));
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new EmbeddedRedisException("Redis server pool is closed");
+        }
+    }
+
+    private static Map<String, String> snapshotConfig(RedisServer server) {
+        try (RespClient client = server.connect(ADMIN_TIMEOUT_MILLIS)) {
+            return readConfig(client);
+        } catch (IOException e) {
+            throw new EmbeddedRedisException("Failed to read configuration of pooled Redis server", e);
+        }
+    }
+
+    private boolean reset(RedisServer server) {
+        final Map<String, String> original;
+        synchronized (this) {
+            original = servers.get(server);
+        }
+        if (original == null || !server.isActive()) {
+            return false;
+        }
+        try (RespClient client = server.connect(ADMIN_TIMEOUT_MILLIS)) {
+            client.call("CLIENT", "KILL", "TYPE", "normal", "SKIPME", "yes");
+            client.call("CLIENT", "KILL", "TYPE", "pubsub");
+            client.call("FLUSHALL");
+            callIgnoringErrors(client, "SCRIPT", "FLUSH");
+            callIgnoringErrors(client, "FUNCTION", "FLUSH");
+            for (Map.Entry<String, String> entry : readConfig(client).entrySet()) {
+                final String value = original.get(entry.getKey());
+                if (value != null && !value.equals(entry.getValue())) {
+                    callIgnoringErrors(client, "CONFIG", "SET", entry.getKey(), value);
+                }
+            }
+            return true;
+        } catch (IOException | RedisCommandException e) {
+            return false;
+        }
+    }
+
+    private static Map<String, String> readConfig(RespClient client) throws IOException {
+        final List<?> reply = (List<?>) client.call("CONFIG", "GET", "*");
+        final Map<String, String> config = new HashMap<String, String>();
+        for (int i = 0; i + 1 < reply.size(); i += 2) {
+            config.put(String.valueOf(reply.get(i)), String.valueOf(reply.get(i + 1)));
+        }
+        return config;
+    }
+
+    private static void callIgnoringErrors(RespClient client, String... command) throws IOException {
+        try {
+            client.call(command);
+        } catch (RedisCommandException e) {
+            // not supported by this Redis version, or not settable at runtime
+        }
+    }
+}
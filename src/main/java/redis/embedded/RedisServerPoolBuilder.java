@@ -0,0 +1,53 @@
+package redis.embedded;
+
+import redis.embedded.ports.EphemeralPortProvider;
+
+public class RedisServerPoolBuilder {
+    private RedisServerBuilder serverBuilder = new RedisServerBuilder();
+    private PortProvider portProvider = new EphemeralPortProvider();
+    private int minIdle = 1;
+    private int maxSize = ParallelExecution.DEFAULT_PARALLELISM;
+    private long acquireTimeoutMillis = 30000L;
+
+    /**
+     * Template for pooled servers. Every server is built from a copy of it with a port from the pool's
+     * {@link PortProvider}.
+     */
+    public RedisServerPoolBuilder withServerBuilder(RedisServerBuilder serverBuilder) {
+        this.serverBuilder = serverBuilder;
+        return this;
+    }
+
+    public RedisServerPoolBuilder portProvider(PortProvider portProvider) {
+        this.portProvider = portProvider;
+        return this;
+    }
+
+    /**
+     * Number of started servers kept ready on top of current demand.
+     */
+    public RedisServerPoolBuilder minIdle(int minIdle) {
+        this.minIdle = minIdle;
+        return this;
+    }
+
+    /**
+     * Upper bound for servers that are idle, leased or starting at the same time.
+     */
+    public RedisServerPoolBuilder maxSize(int maxSize) {
+        this.maxSize = maxSize;
+        return this;
+    }
+
+    public RedisServerPoolBuilder acquireTimeoutMilliseconds(long acquireTimeoutMillis) {
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        return this;
+    }
+
+    public RedisServerPool build() {
+        if (minIdle < 0 || maxSize < 1 || minIdle > maxSize) {
+            throw new IllegalArgumentException("Pool requires 0 <= minIdle <= maxSize and maxSize >= 1");
+        }
+        return new RedisServerPool(serverBuilder, portProvider, minIdle, maxSize, acquireTimeoutMillis);
+    }
+}
@@ -0,0 +1,96 @@
+package redis.embedded;
+
+import java.time.Duration;
+
+public class RedisServerPoolStats {
+    private final long hits;
+    private final long misses;
+    private final long totalWaitNanos;
+    private final long maxWaitNanos;
+    private final int idle;
+    private final int leased;
+    private final int starting;
+    private final long started;
+    private final long retired;
+    private final long startFailures;
+
+    RedisServerPoolStats(long hits, long misses, long totalWaitNanos, long maxWaitNanos, int idle, int leased,
+                         int starting, long started, long retired, long startFailures) {
+        this.hits = hits;
+        this.misses = misses;
+        this.totalWaitNanos = totalWaitNanos;
+        this.maxWaitNanos = maxWaitNanos;
+        this.idle = idle;
+        this.leased = leased;
+        this.starting = starting;
+        this.started = started;
+        this.retired = retired;
+        this.startFailures = startFailures;
+    }
+
+    /**
+     * Leases served by a server that was already idle.
+     */
+    public long hits() {
+        return hits;
+    }
+
+    /**
+     * Leases that had to wait for a server to start or to be returned.
+     */
+    public long misses() {
+        return misses;
+    }
+
+    public long leases() {
+        return hits + misses;
+    }
+
+    public Duration totalLeaseWait() {
+        return Duration.ofNanos(totalWaitNanos);
+    }
+
+    public Duration averageLeaseWait() {
+        return leases() == 0 ? Duration.ZERO : Duration.ofNanos(totalWaitNanos / leases());
+    }
+
+    public Duration maxLeaseWait() {
+        return Duration.ofNanos(maxWaitNanos);
+    }
+
+    public int idle() {
+        return idle;
+    }
+
+    public int leased() {
+        return leased;
+    }
+
+    public int starting() {
+        return starting;
+    }
+
+    /**
+     * Servers started by the pool so far.
+     */
+    public long started() {
+        return started;
+    }
+
+    /**
+     * Servers stopped because demand dropped or because they could not be reset.
+     */
+    public long retired() {
+        return retired;
+    }
+
+    public long startFailures() {
+        return startFailures;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("hits=%d, misses=%d, averageLeaseWait=%dms, maxLeaseWait=%dms, idle=%d, leased=%d, starting=%d, started=%d, retired=%d, startFailures=%d",
+                hits, misses, averageLeaseWait().toMillis(), maxLeaseWait().toMillis(), idle, leased, starting, started, retired, startFailures);
+    }
+}
@@ -0,0 +1,490 @@
+package redis.embedded;
+
+import com.google.common.collect.ImmutableRangeSet;
+import com.google.common.collect.Range;
+import com.google.common.collect.RangeSet;
+import com.google.common.collect.TreeRangeSet;
+import redis.embedded.exceptions.EmbeddedRedisException;
+import redis.embedded.exceptions.RedisCommandException;
+import redis.embedded.util.RespClient;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * A Redis Cluster: {@code cluster-enabled} masters that split the hash slots between them, each with its
+ * own replicas.
+ *
+ * <p>{@link #start()} starts all nodes concurrently, joins them with {@code CLUSTER MEET}, assigns each
+ * master an equal share of the slots, attaches the replicas and returns once every node reports
+ * {@code cluster_state:ok}.</p>
+ */
+public class RedisShardedCluster implements Redis {
+    public static final int SLOTS = 16384;
+    private static final int ADMIN_TIMEOUT_MILLIS = 5000;
+    private static final long MIN_POLL_DELAY_MILLIS = 1L;
+    private static final long MAX_POLL_DELAY_MILLIS = 100L;
+
+    private final List<RedisClusterShard> shards = new CopyOnWriteArrayList<RedisClusterShard>();
+    private final Supplier<List<RedisServer>> shardFactory;
+    private final int parallelism;
+    private final long clusterTimeoutMillis;
+    private volatile Map<String, RangeSet<Integer>> slotTable = Collections.emptyMap();
+
+    RedisShardedCluster(List<List<RedisServer>> shardNodes, Supplier<List<RedisServer>> shardFactory, int parallelism, long clusterTimeoutMillis) {
+        for (List<RedisServer> nodes : shardNodes) {
+            shards.add(new RedisClusterShard(this, nodes.get(0), nodes.subList(1, nodes.size())));
+        }
+        this.shardFactory = shardFactory;
+        this.parallelism = parallelism;
+        this.clusterTimeoutMillis = clusterTimeoutMillis;
+    }
+
+    public static RedisShardedClusterBuilder builder() {
+        return new RedisShardedClusterBuilder();
+    }
+
+    @Override
+    public boolean isActive() {
+        for (RedisServer node : nodes()) {
+            if (!node.isActive()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Starts all nodes concurrently and forms the cluster. If anything fails, every node that did start is
+     * stopped again before the failure is rethrown.
+     */
+    @Override
+    public void start() throws EmbeddedRedisException {
+        final List<RedisServer> started = Collections.synchronizedList(new ArrayList<RedisServer>());
+        try {
+            ParallelExecution.forEach(nodes(), parallelism, node -> {
+                node.start();
+                started.add(node);
+            });
+            form();
+        } catch (RuntimeException e) {
+            try {
+                stop(started, Redis::stop);
+            } catch (RuntimeException rollbackFailure) {
+                e.addSuppressed(rollbackFailure);
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public CompletableFuture<RedisShardedCluster> startAsync() {
+        return CompletableFuture.supplyAsync(() -> {
+            start();
+            return this;
+        }, ParallelExecution.ASYNC_EXECUTOR);
+    }
+
+    @Override
+    public void stop() throws EmbeddedRedisException {
+        stop(nodes(), Redis::stop);
+    }
+
+    @Override
+    public void stop(StopStrategy strategy) throws EmbeddedRedisException {
+        stop(nodes(), redis -> redis.stop(strategy));
+    }
+
+    private void stop(List<RedisServer> nodes, Consumer<Redis> stopper) {
+        ParallelExecution.forEach(nodes, parallelism, stopper);
+    }
+
+    public List<RedisClusterShard> shards() {
+        return Collections.unmodifiableList(shards);
+    }
+
+    public List<RedisServer> masters() {
+        final List<RedisServer> masters = new ArrayList<RedisServer>();
+        for (RedisClusterShard shard : shards) {
+            masters.add(shard.master());
+        }
+        return masters;
+    }
+
+    public List<RedisServer> replicas() {
+        final List<RedisServer> replicas = new ArrayList<RedisServer>();
+        for (RedisClusterShard shard : shards) {
+            replicas.addAll(shard.replicas());
+        }
+        return replicas;
+    }
+
+    /**
+     * All nodes, masters first.
+     */
+    public List<RedisServer> nodes() {
+        final List<RedisServer> nodes = masters();
+        nodes.addAll(replicas());
+        return nodes;
+    }
+
+    /**
+     * The shard whose master serves {@code slot}, as of the last view of the slot table.
+     */
+    public RedisClusterShard shardForSlot(int slot) {
+        for (RedisClusterShard shard : shards) {
+            if (shard.ownsSlot(slot)) {
+                return shard;
+            }
+        }
+        throw new EmbeddedRedisException("No shard serves slot " + slot);
+    }
+
+    public RedisClusterShard shardForKey(String key) {
+        return shardForSlot(slot(key));
+    }
+
+    /**
+     * Returns a new resharder, with default settings, to move slots between the shards of the running
+     * cluster and to add or remove shards. Its settings only affect migrations run through it.
+     */
+    public RedisClusterResharder resharder() {
+        return new RedisClusterResharder(this);
+    }
+
+    /**
+     * Re-reads the slot table from the cluster, e.g. after slots were migrated outside this class.
+     */
+    public void refreshSlots() {
+        for (RedisServer master : masters()) {
+            if (!master.isActive()) {
+                continue;
+            }
+            try (RespClient client = master.connect(ADMIN_TIMEOUT_MILLIS)) {
+                slotTable = parseSlots((List<?>) client.call("CLUSTER", "SLOTS"));
+                return;
+            } catch (IOException e) {
+                // try the next master
+            }
+        }
+        throw new EmbeddedRedisException("No master of the cluster is reachable to read the slot table from");
+    }
+
+    RangeSet<Integer> slotsOf(String nodeId) {
+        final RangeSet<Integer> slots = nodeId != null ? slotTable.get(nodeId) : null;
+        return slots != null ? slots : ImmutableRangeSet.<Integer>of();
+    }
+
+    /**
+     * The hash slot of {@code key}: CRC16 of the key, or of its hash tag, modulo {@value #SLOTS}.
+     */
+    public static int slot(String key) {
+        final byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        int from = 0;
+        int to = bytes.length;
+        for (int open = 0; open < bytes.length; open++) {
+            if (bytes[open] == '{') {
+                for (int close = open + 1; close < bytes.length; close++) {
+                    if (bytes[close] == '}') {
+                        // an empty tag "{}" hashes the whole key
+                        if (close > open + 1) {
+                            from = open + 1;
+                            to = close;
+                        }
+                        break;
+                    }
+                }
+                break;
+            }
+        }
+        return crc16(bytes, from, to) % SLOTS;
+    }
+
+    /**
+     * CRC16-CCITT (XMODEM), as used by Redis Cluster.
+     */
+    private static int crc16(byte[] bytes, int from, int to) {
+        int crc = 0;
+        for (int i = from; i < to; i++) {
+            crc ^= (bytes[i] & 0xff) << 8;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc & 0x8000) != 0 ? (crc << 1) ^ 0x1021 : crc << 1;
+            }
+        }
+        return crc & 0xffff;
+    }
+
+    /**
+     * Joins the started nodes into a cluster. Restarted nodes keep their cluster configuration, so slots
+     * and replicas are only assigned if they are missing.
+     */
+    private void form() {
+        final List<RedisServer> nodes = nodes();
+        final long deadline = deadline();
+        readNodeIds(shards);
+        final RedisServer first = nodes.get(0);
+        meet(nodes.subList(1, nodes.size()), first);
+        if (!Integer.toString(SLOTS).equals(clusterInfo(first).get("cluster_slots_assigned"))) {
+            ParallelExecution.forEach(shards, parallelism, this::assignSlots);
+        }
+        attachReplicas(nodes, shards, deadline);
+        awaitAll(nodes, "report cluster_state:ok", deadline, info -> "ok".equals(info.get("cluster_state")));
+        refreshSlots();
+    }
+
+    /**
+     * Starts the nodes of a new shard and joins them to the running cluster. The new master serves no
+     * slots until some are migrated to it.
+     */
+    RedisClusterShard addShard() {
+        final List<RedisServer> nodes = shardFactory.get();
+        final List<RedisServer> started = Collections.synchronizedList(new ArrayList<RedisServer>());
+        try {
+            ParallelExecution.forEach(nodes, parallelism, node -> {
+                node.start();
+                started.add(node);
+            });
+            final RedisClusterShard shard = new RedisClusterShard(this, nodes.get(0), nodes.subList(1, nodes.size()));
+            final long deadline = deadline();
+            readNodeIds(Collections.singletonList(shard));
+            meet(nodes, masters().get(0));
+            final List<RedisServer> all = nodes();
+            all.addAll(nodes);
+            attachReplicas(all, Collections.singletonList(shard), deadline);
+            awaitAll(all, "report cluster_state:ok", deadline, info -> "ok".equals(info.get("cluster_state")));
+            shards.add(shard);
+            return shard;
+        } catch (RuntimeException e) {
+            try {
+                stop(started, Redis::stop);
+            } catch (RuntimeException rollbackFailure) {
+                e.addSuppressed(rollbackFailure);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Makes the remaining nodes forget a shard that no longer serves any slots, and stops its nodes.
+     */
+    void removeShard(RedisClusterShard shard) {
+        if (!shard.slots().isEmpty()) {
+            throw new EmbeddedRedisException("Cannot remove " + shard + " while it still serves slots");
+        }
+        shards.remove(shard);
+        final List<String> forgotten = new ArrayList<String>(shard.replicaIds());
+        forgotten.add(shard.masterId());
+        ParallelExecution.forEach(nodes(), parallelism, node -> {
+            for (String id : forgotten) {
+                try {
+                    call(node, "CLUSTER", "FORGET", id);
+                } catch (RedisCommandException e) {
+                    // the node never heard of it
+                }
+            }
+        });
+        stop(shard.nodes(), Redis::stop);
+    }
+
+    long deadline() {
+        return System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(clusterTimeoutMillis);
+    }
+
+    private void readNodeIds(List<RedisClusterShard> shards) {
+        for (RedisClusterShard shard : shards) {
+            final List<String> replicaIds = new ArrayList<String>();
+            for (RedisServer replica : shard.replicas()) {
+                replicaIds.add((String) call(replica, "CLUSTER", "MYID"));
+            }
+            shard.setNodeIds((String) call(shard.master(), "CLUSTER", "MYID"), replicaIds);
+        }
+    }
+
+    private void meet(List<RedisServer> nodes, RedisServer member) {
+        ParallelExecution.forEach(nodes, parallelism,
+                node -> call(node, "CLUSTER", "MEET", member.host(), Integer.toString(member.ports().get(0))));
+    }
+
+    /**
+     * Waits until all {@code nodes} know each other, then lets the replicas of {@code shards} follow their
+     * masters.
+     */
+    private void attachReplicas(List<RedisServer> nodes, List<RedisClusterShard> shards, long deadline) {
+        // a replica can only follow a master it has heard of
+        awaitAll(nodes, "know all " + nodes.size() + " nodes", deadline,
+                info -> Integer.toString(nodes.size()).equals(info.get("cluster_known_nodes")));
+        ParallelExecution.forEach(shards, parallelism, shard -> {
+            for (RedisServer replica : shard.replicas()) {
+                replicate(replica, shard.masterId(), deadline);
+            }
+        });
+    }
+
+    private void assignSlots(RedisClusterShard shard) {
+        final int index = shards.indexOf(shard);
+        final int from = index * SLOTS / shards.size();
+        final int to = (index + 1) * SLOTS / shards.size() - 1;
+        try {
+            call(shard.master(), "CLUSTER", "ADDSLOTSRANGE", Integer.toString(from), Integer.toString(to));
+        } catch (RedisCommandException e) {
+            // ADDSLOTSRANGE is new in Redis 7.0
+            final String[] command = new String[to - from + 3];
+            command[0] = "CLUSTER";
+            command[1] = "ADDSLOTS";
+            for (int slot = from; slot <= to; slot++) {
+                command[slot - from + 2] = Integer.toString(slot);
+            }
+            call(shard.master(), command);
+        }
+    }
+
+    private void replicate(RedisServer replica, String masterId, long deadline) {
+        long delay = MIN_POLL_DELAY_MILLIS;
+        while (true) {
+            if (masterId.equals(followedMaster((String) call(replica, "CLUSTER", "NODES")))) {
+                // already following it, e.g. after a restart
+                return;
+            }
+            try {
+                call(replica, "CLUSTER", "REPLICATE", masterId);
+                return;
+            } catch (RedisCommandException e) {
+                // the replica has not learned the master's role yet
+                if (System.nanoTime() - deadline > 0) {
+                    throw new EmbeddedRedisException("Replica on port " + replica.ports().get(0) + " could not follow " + masterId
+                            + " within " + clusterTimeoutMillis + "ms", e);
+                }
+            }
+            delay = pause(delay);
+        }
+    }
+
+    /**
+     * The master ID in the {@code myself} line of a {@code CLUSTER NODES} reply, or {@code null} if the node
+     * is not a replica.
+     */
+    static String followedMaster(String clusterNodes) {
+        for (String line : clusterNodes.split("\n")) {
+            final String[] fields = line.trim().split(" ");
+            if (fields.length > 3 && fields[2].contains("myself")) {
+                return fields[2].contains("slave") && !"-".equals(fields[3]) ? fields[3] : null;
+            }
+        }
+        return null;
+    }
+
+    private interface InfoCondition {
+        boolean test(Map<String, String> clusterInfo);
+    }
+
+    /**
+     * Polls {@code CLUSTER INFO} of every node concurrently until {@code condition} holds for all of them.
+     */
+    private void awaitAll(List<RedisServer> nodes, String description, long deadline, InfoCondition condition) {
+        ParallelExecution.forEach(nodes, parallelism, node -> {
+            long delay = MIN_POLL_DELAY_MILLIS;
+            while (true) {
+                final Map<String, String> info = clusterInfo(node);
+                if (condition.test(info)) {
+                    return;
+                }
+                if (System.nanoTime() - deadline > 0) {
+                    throw new EmbeddedRedisException("Node on port " + node.ports().get(0) + " did not " + description
+                            + " within " + clusterTimeoutMillis + "ms: " + info);
+                }
+                delay = pause(delay);
+            }
+        });
+    }
+
+    private static long pause(long delay) {
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new EmbeddedRedisException("Interrupted while forming the cluster", e);
+        }
+        return Math.min(delay * 2, MAX_POLL_DELAY_MILLIS);
+    }
+
+    private static Map<String, String> clusterInfo(RedisServer node) {
+        return RespClient.parseInfo((String) call(node, "CLUSTER", "INFO"));
+    }
+
+    static Object call(RedisServer node, String... command) {
+        try (RespClient client = node.connect(ADMIN_TIMEOUT_MILLIS)) {
+            return client.call(command);
+        } catch (IOException e) {
+            throw new EmbeddedRedisException("Failed to run " + command[0] + " " + command[1] + " on port " + node.ports(), e);
+        }
+    }
+
+    /**
+     * Turns a {@code CLUSTER SLOTS} reply into the slots served by each master node ID. Ranges are
+     * closed-open, so that adjacent ranges merge.
+     */
+    static Map<String, RangeSet<Integer>> parseSlots(List<?> reply) {
+        final Map<String, RangeSet<Integer>> table = new HashMap<String, RangeSet<Integer>>();
+        for (Object entry : reply) {
+            final List<?> range = (List<?>) entry;
+            final List<?> master = (List<?>) range.get(2);
+            final String id = (String) master.get(2);
+            table.computeIfAbsent(id, any -> TreeRangeSet.<Integer>create())
+                    .add(Range.closedOpen(((Long) range.get(0)).intValue(), ((Long) range.get(1)).intValue() + 1));
+        }
+        final Map<String, RangeSet<Integer>> immutable = new HashMap<String, RangeSet<Integer>>();
+        for (Map.Entry<String, RangeSet<Integer>> slots : table.entrySet()) {
+            immutable.put(slots.getKey(), ImmutableRangeSet.copyOf(slots.getValue()));
+        }
+        return immutable;
+    }
+
+    @Override
+    public List<Integer> ports() {
+        final List<Integer> ports = new ArrayList<Integer>();
+        for (RedisServer node : nodes()) {
+            ports.addAll(node.ports());
+        }
+        return ports;
+    }
+
+    @Override
+    public List<Integer> tlsPorts() {
+        final List<Integer> ports = new ArrayList<Integer>();
+        for (RedisServer node : nodes()) {
+            ports.addAll(node.tlsPorts());
+        }
+        return ports;
+    }
+
+    @Override
+    public List<Path> unixSockets() {
+        final List<Path> sockets = new ArrayList<Path>();
+        for (RedisServer node : nodes()) {
+            sockets.addAll(node.unixSockets());
+        }
+        return sockets;
+    }
+
+    @Override
+    public List<RedisLogLine> recentLogs(int n) {
+        return MergedLogs.recent(nodes(), n);
+    }
+
+    @Override
+    public List<RedisLogLine> logsSince(Instant since) {
+        return MergedLogs.since(nodes(), since);
+    }
+}
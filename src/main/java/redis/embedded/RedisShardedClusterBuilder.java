@@ -0,0 +1,166 @@
+package redis.embedded;
+
+import com.google.common.base.Preconditions;
+import redis.embedded.exceptions.RedisBuildingException;
+import redis.embedded.ports.PredefinedPortProvider;
+import redis.embedded.ports.SequencePortProvider;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Builds a {@link RedisShardedCluster}. Nodes are built from a template server builder, by default on
+ * consecutive ports from 7000. Every node also listens on its cluster bus port, which Redis puts 10000
+ * above the client port.
+ */
+public class RedisShardedClusterBuilder {
+    static final int BUS_PORT_OFFSET = 10000;
+
+    private RedisServerBuilder serverBuilder = new RedisServerBuilder();
+    private PortProvider portProvider = new SequencePortProvider(7000);
+    private int shards = 3;
+    private int replicasPerShard = 0;
+    private long nodeTimeoutMillis = 5000L;
+    private long clusterTimeoutMillis = 30000L;
+    private int parallelism = ParallelExecution.DEFAULT_PARALLELISM;
+
+    public RedisShardedClusterBuilder withServerBuilder(RedisServerBuilder serverBuilder) {
+        this.serverBuilder = serverBuilder;
+        return this;
+    }
+
+    /**
+     * Number of masters; the slots are split evenly between them.
+     */
+    public RedisShardedClusterBuilder shards(int shards) {
+        Preconditions.checkArgument(shards > 0, "A cluster needs at least one shard");
+        this.shards = shards;
+        return this;
+    }
+
+    public RedisShardedClusterBuilder replicasPerShard(int replicasPerShard) {
+        Preconditions.checkArgument(replicasPerShard >= 0, "replicasPerShard must not be negative");
+        this.replicasPerShard = replicasPerShard;
+        return this;
+    }
+
+    public RedisShardedClusterBuilder startingPort(int startingPort) {
+        this.portProvider = new SequencePortProvider(startingPort);
+        return this;
+    }
+
+    /**
+     * Ports for the nodes: all masters first, then the replicas of the first shard, of the second and so on.
+     */
+    public RedisShardedClusterBuilder ports(Collection<Integer> ports) {
+        this.portProvider = new PredefinedPortProvider(ports);
+        return this;
+    }
+
+    /**
+     * Takes the node ports from {@code portProvider}, e.g. a {@link redis.embedded.ports.LeasedPortProvider}.
+     */
+    public RedisShardedClusterBuilder portProvider(PortProvider portProvider) {
+        this.portProvider = portProvider;
+        return this;
+    }
+
+    /**
+     * {@code cluster-node-timeout}: how long a node may be unreachable before it is considered failing.
+     */
+    public RedisShardedClusterBuilder nodeTimeoutMilliseconds(long nodeTimeoutMillis) {
+        this.nodeTimeoutMillis = nodeTimeoutMillis;
+        return this;
+    }
+
+    /**
+     * How long {@code start()} waits for the nodes to form a healthy cluster once they are running.
+     */
+    public RedisShardedClusterBuilder clusterTimeoutMilliseconds(long clusterTimeoutMillis) {
+        this.clusterTimeoutMillis = clusterTimeoutMillis;
+        return this;
+    }
+
+    /**
+     * Maximum number of nodes built, started, joined or stopped concurrently.
+     */
+    public RedisShardedClusterBuilder parallelism(int parallelism) {
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    public RedisShardedCluster build() {
+        final List<Integer> masterPorts = new ArrayList<Integer>();
+        for (int i = 0; i < shards; i++) {
+            masterPorts.add(nextPort());
+        }
+        final List<List<Integer>> shardPorts = new ArrayList<List<Integer>>();
+        for (int master : masterPorts) {
+            final List<Integer> ports = new ArrayList<Integer>();
+            ports.add(master);
+            shardPorts.add(ports);
+        }
+        for (List<Integer> ports : shardPorts) {
+            for (int i = 0; i < replicasPerShard; i++) {
+                ports.add(nextPort());
+            }
+        }
+
+        final List<Integer> allPorts = new ArrayList<Integer>();
+        for (List<Integer> ports : shardPorts) {
+            allPorts.addAll(ports);
+        }
+        final List<RedisServer> nodes = ParallelExecution.map(allPorts, parallelism, this::buildNode);
+
+        final List<List<RedisServer>> shardNodes = new ArrayList<List<RedisServer>>();
+        int next = 0;
+        for (List<Integer> ports : shardPorts) {
+            shardNodes.add(new ArrayList<RedisServer>(nodes.subList(next, next + ports.size())));
+            next += ports.size();
+        }
+        final RedisShardedClusterBuilder template = copy();
+        return new RedisShardedCluster(shardNodes, template::buildShard, parallelism, clusterTimeoutMillis);
+    }
+
+    /**
+     * Builds the nodes of one more shard, master first, for shards added while the cluster runs.
+     */
+    private synchronized List<RedisServer> buildShard() {
+        final List<Integer> ports = new ArrayList<Integer>();
+        for (int i = 0; i <= replicasPerShard; i++) {
+            ports.add(nextPort());
+        }
+        return ParallelExecution.map(ports, parallelism, this::buildNode);
+    }
+
+    private RedisShardedClusterBuilder copy() {
+        final RedisShardedClusterBuilder copy = new RedisShardedClusterBuilder();
+        copy.serverBuilder = serverBuilder.copy();
+        copy.portProvider = portProvider;
+        copy.shards = shards;
+        copy.replicasPerShard = replicasPerShard;
+        copy.nodeTimeoutMillis = nodeTimeoutMillis;
+        copy.clusterTimeoutMillis = clusterTimeoutMillis;
+        copy.parallelism = parallelism;
+        return copy;
+    }
+
+    private int nextPort() {
+        final int port = portProvider.next();
+        if (port <= 0 || port + BUS_PORT_OFFSET > 65535) {
+            throw new RedisBuildingException("Port " + port + " leaves no room for the cluster bus port " + (port + BUS_PORT_OFFSET));
+        }
+        return port;
+    }
+
+    private RedisServer buildNode(int port) {
+        return serverBuilder.copy()
+                .port(port)
+                .setting("cluster-enabled yes")
+                // relative to the node's own working directory
+                .setting("cluster-config-file nodes.conf")
+                .setting("cluster-node-timeout " + nodeTimeoutMillis)
+                .build();
+    }
+}
@@ -0,0 +1,79 @@
+package redis.embedded;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Records how long each {@link StartupPhase} of one start took. Each phase is measured from the end of
+ * the previously recorded phase.
+ */
+final class StartupClock {
+    private final Map<StartupPhase, Duration> durations = new EnumMap<StartupPhase, Duration>(StartupPhase.class);
+    private final StartupPhase lastPhase;
+    private long mark = System.nanoTime();
+    private boolean outputWatched;
+    private StartupPhase overrunPhase;
+
+    StartupClock(Map<StartupPhase, Duration> buildPhases) {
+        this(buildPhases, StartupPhase.READY);
+    }
+
+    /**
+     * A clock for a start that is complete once {@code lastPhase} has been recorded.
+     */
+    StartupClock(Map<StartupPhase, Duration> buildPhases, StartupPhase lastPhase) {
+        durations.putAll(buildPhases);
+        this.lastPhase = lastPhase;
+    }
+
+    /**
+     * Records the end of {@code phase}. Returns {@code false} if the startup deadline already expired, or
+     * if the phase has been recorded before.
+     */
+    synchronized boolean completed(StartupPhase phase) {
+        if (overrunPhase != null || durations.containsKey(phase) || durations.containsKey(lastPhase)) {
+            return false;
+        }
+        final long now = System.nanoTime();
+        durations.put(phase, Duration.ofNanos(now - mark));
+        mark = now;
+        return true;
+    }
+
+    /**
+     * Notes that something is waiting for process output, so a missing {@link StartupPhase#FIRST_OUTPUT}
+     * means the process has not written anything yet rather than that nobody looked.
+     */
+    synchronized void outputWatched() {
+        outputWatched = true;
+    }
+
+    /**
+     * Marks the deadline as expired unless the start is already complete. Returns the phase that was in
+     * progress, or {@code null} if the instance became ready in time.
+     */
+    synchronized StartupPhase expire() {
+        if (durations.containsKey(lastPhase)) {
+            return null;
+        }
+        if (!durations.containsKey(StartupPhase.SPAWN)) {
+            overrunPhase = StartupPhase.SPAWN;
+        } else if (outputWatched && !durations.containsKey(StartupPhase.FIRST_OUTPUT)) {
+            overrunPhase = StartupPhase.FIRST_OUTPUT;
+        } else if (!durations.containsKey(StartupPhase.READY)) {
+            overrunPhase = StartupPhase.READY;
+        } else {
+            overrunPhase = lastPhase;
+        }
+        return overrunPhase;
+    }
+
+    synchronized StartupPhase overrunPhase() {
+        return overrunPhase;
+    }
+
+    synchronized StartupReport report() {
+        return new StartupReport(durations, overrunPhase);
+    }
+}
@@ -0,0 +1,38 @@
+package redis.embedded;
+
+public enum StartupPhase {
+    /**
+     * Locating the Redis executable, including extracting it from the jar. Recorded at build time.
+     */
+    RESOLVE_EXECUTABLE,
+    /**
+     * Writing the generated configuration file. Recorded at build time.
+     */
+    WRITE_CONFIG,
+    /**
+     * Placing the seed dump file in the instance's working directory. Only recorded for seeded instances.
+     */
+    SEED,
+    /**
+     * Waiting for memory from the instance's {@link MemoryBudget}. Only recorded for instances under a budget.
+     * The budget limits this wait, so it does not count against the startup timeout.
+     */
+    QUEUE,
+    /**
+     * Spawning the Redis process.
+     */
+    SPAWN,
+    /**
+     * From spawn until the process first writes to standard output.
+     */
+    FIRST_OUTPUT,
+    /**
+     * Until the readiness strategy considers the instance ready.
+     */
+    READY,
+    /**
+     * From {@link #READY} until a replica has completed its initial sync and caught up with its master's
+     * replication offset. Only recorded for replicas that wait for their sync.
+     */
+    REPLICA_SYNC
+}
@@ -0,0 +1,59 @@
+package redis.embedded;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Time spent in each {@link StartupPhase} of the most recent start of an instance.
+ */
+public class StartupReport {
+    private final Map<StartupPhase, Duration> durations;
+    private final StartupPhase overrunPhase;
+
+    StartupReport(Map<StartupPhase, Duration> durations, StartupPhase overrunPhase) {
+        this.durations = Collections.unmodifiableMap(new EnumMap<StartupPhase, Duration>(durations));
+        this.overrunPhase = overrunPhase;
+    }
+
+    /**
+     * Returns how long the given phase took, or an empty value if it was not reached or not observed.
+     */
+    public Optional<Duration> duration(StartupPhase phase) {
+        return Optional.ofNullable(durations.get(phase));
+    }
+
+    public Map<StartupPhase, Duration> durations() {
+        return durations;
+    }
+
+    public Duration total() {
+        Duration total = Duration.ZERO;
+        for (Duration duration : durations.values()) {
+            total = total.plus(duration);
+        }
+        return total;
+    }
+
+    /**
+     * Returns the phase that was in progress when the startup timeout expired, if it did.
+     */
+    public Optional<StartupPhase> overrunPhase() {
+        return Optional.ofNullable(overrunPhase);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<StartupPhase, Duration> entry : durations.entrySet()) {
+            sb.append(entry.getKey()).append('=').append(entry.getValue().toMillis()).append("ms, ");
+        }
+        sb.append("total=").append(total().toMillis()).append("ms");
+        if (overrunPhase != null) {
+            sb.append(", overran ").append(overrunPhase);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,48 @@
+package redis.embedded;
+
+import java.nio.file.Path;
+import java.util.Optional;
+
+/**
+ * What a {@link StopStrategy} may do to a running Redis process.
+ */
+public interface StopContext {
+    /**
+     * Operating system pid of the process, or a negative value if it is unknown.
+     */
+    long pid();
+
+    boolean isProcessAlive();
+
+    /**
+     * Address the instance accepts plain (non-TLS) connections on.
+     */
+    String host();
+
+    /**
+     * Plain TCP port of the instance, or {@code 0} if it only listens for TLS connections.
+     */
+    int port();
+
+    /**
+     * Unix domain socket the instance listens on, if it was configured with one.
+     */
+    default Optional<Path> unixSocket() {
+        return Optional.empty();
+    }
+
+    /**
+     * Asks the process to terminate; on Unix this sends {@code SIGTERM}.
+     */
+    void terminate();
+
+    /**
+     * Kills the process without giving it a chance to clean up.
+     */
+    void kill();
+
+    /**
+     * Waits up to {@code timeoutMillis} for the process to exit and returns whether it did.
+     */
+    boolean awaitExit(long timeoutMillis);
+}
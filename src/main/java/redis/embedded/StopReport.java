@@ -0,0 +1,44 @@
+package redis.embedded;
+
+import java.time.Duration;
+
+/**
+ * Outcome of the most recent stop of an instance.
+ */
+public class StopReport {
+    private final String strategy;
+    private final Duration duration;
+    private final boolean killed;
+
+    StopReport(String strategy, Duration duration, boolean killed) {
+        this.strategy = strategy;
+        this.duration = duration;
+        this.killed = killed;
+    }
+
+    /**
+     * Simple class name of the {@link StopStrategy} used.
+     */
+    public String strategy() {
+        return strategy;
+    }
+
+    /**
+     * Time from the stop request until the process had exited.
+     */
+    public Duration duration() {
+        return duration;
+    }
+
+    /**
+     * Whether the process had to be killed, either directly or after a graceful stop timed out.
+     */
+    public boolean isKilled() {
+        return killed;
+    }
+
+    @Override
+    public String toString() {
+        return strategy + " took " + duration.toMillis() + "ms" + (killed ? " (killed)" : "");
+    }
+}
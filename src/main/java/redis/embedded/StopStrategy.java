@@ -0,0 +1,14 @@
+package redis.embedded;
+
+import redis.embedded.exceptions.EmbeddedRedisException;
+
+/**
+ * Decides how a running Redis process is brought down.
+ */
+public interface StopStrategy {
+    /**
+     * Returns once the process described by {@code context} has exited, or throws an
+     * {@link EmbeddedRedisException} if it could not be stopped.
+     */
+    void stop(StopContext context) throws EmbeddedRedisException;
+}
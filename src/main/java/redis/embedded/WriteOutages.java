@@ -0,0 +1,55 @@
+package redis.embedded;
+
+import com.google.common.collect.Range;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Stretches in which writes failed. Each one lasts from the last successful write before the first failed
+ * one, or from that failure if nothing succeeded before, until the next successful write.
+ */
+final class WriteOutages {
+    private final List<Range<Instant>> ended = new ArrayList<Range<Instant>>();
+    private Instant lastSuccess;
+    private Instant ongoingSince;
+
+    void succeeded(Instant at) {
+        if (ongoingSince != null) {
+            ended.add(Range.closed(ongoingSince, at));
+            ongoingSince = null;
+        }
+        lastSuccess = at;
+    }
+
+    void failed(Instant at) {
+        if (ongoingSince == null) {
+            ongoingSince = lastSuccess != null ? lastSuccess : at;
+        }
+    }
+
+    /**
+     * The longest outage, counting only its part from {@code since} on; one that is still going on lasts
+     * until {@code now}.
+     */
+    Duration longest(Instant since, Instant now) {
+        final List<Range<Instant>> outages = new ArrayList<Range<Instant>>(ended);
+        if (ongoingSince != null && !ongoingSince.isAfter(now)) {
+            outages.add(Range.closed(ongoingSince, now));
+        }
+        final Range<Instant> window = Range.atLeast(since);
+        Duration longest = Duration.ZERO;
+        for (Range<Instant> outage : outages) {
+            if (outage.isConnected(window)) {
+                final Range<Instant> counted = outage.intersection(window);
+                final Duration duration = Duration.between(counted.lowerEndpoint(), counted.upperEndpoint());
+                if (duration.compareTo(longest) > 0) {
+                    longest = duration;
+                }
+            }
+        }
+        return longest;
+    }
+}
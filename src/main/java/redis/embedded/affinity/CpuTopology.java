@@ -0,0 +1,144 @@
+package redis.embedded.affinity;
+
+import redis.embedded.CpuSet;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * The CPUs this JVM may run on, with their NUMA node and whether they are the first hardware thread of
+ * their core. Read from {@code /proc} and {@code /sys} on Linux; elsewhere every available processor is
+ * taken to be a core of its own on node 0.
+ */
+final class CpuTopology {
+    private static final String CPUS_ALLOWED = "Cpus_allowed_list:";
+
+    static final class Cpu {
+        final int id;
+        final int node;
+        /**
+         * Position among the hardware threads of the same core; {@code 0} for the first.
+         */
+        final int siblingRank;
+
+        Cpu(int id, int node, int siblingRank) {
+            this.id = id;
+            this.node = node;
+            this.siblingRank = siblingRank;
+        }
+    }
+
+    private final List<Cpu> cpus;
+
+    CpuTopology(List<Cpu> cpus) {
+        if (cpus.isEmpty()) {
+            throw new IllegalArgumentException("No CPUs to schedule on");
+        }
+        this.cpus = Collections.unmodifiableList(new ArrayList<Cpu>(cpus));
+    }
+
+    static CpuTopology detect() {
+        return detect(Paths.get("/sys/devices/system"), Paths.get("/proc/self/status"));
+    }
+
+    static CpuTopology detect(Path sysfs, Path status) {
+        final Map<Integer, Integer> nodes = nodes(sysfs.resolve("node"));
+        final List<Cpu> cpus = new ArrayList<Cpu>();
+        for (int id : allowedCpus(status)) {
+            final Integer node = nodes.get(id);
+            cpus.add(new Cpu(id, node != null ? node : 0, siblingRank(sysfs.resolve("cpu"), id)));
+        }
+        return new CpuTopology(cpus);
+    }
+
+    List<Cpu> cpus() {
+        return cpus;
+    }
+
+    CpuTopology restrictTo(Collection<Integer> ids) {
+        final List<Cpu> restricted = new ArrayList<Cpu>();
+        for (Cpu cpu : cpus) {
+            if (ids.contains(cpu.id)) {
+                restricted.add(cpu);
+            }
+        }
+        return new CpuTopology(restricted);
+    }
+
+    private static SortedSet<Integer> allowedCpus(Path status) {
+        final String allowed = readLine(status, CPUS_ALLOWED);
+        if (allowed != null) {
+            return CpuSet.parseList(allowed.substring(CPUS_ALLOWED.length()));
+        }
+        final SortedSet<Integer> cpus = new TreeSet<Integer>();
+        for (int id = 0; id < Runtime.getRuntime().availableProcessors(); id++) {
+            cpus.add(id);
+        }
+        return cpus;
+    }
+
+    private static Map<Integer, Integer> nodes(Path nodeDirectory) {
+        final Map<Integer, Integer> nodes = new HashMap<Integer, Integer>();
+        if (!Files.isDirectory(nodeDirectory)) {
+            return nodes;
+        }
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(nodeDirectory, "node[0-9]*")) {
+            for (Path entry : entries) {
+                final int node = Integer.parseInt(entry.getFileName().toString().substring("node".length()));
+                final String cpuList = readLine(entry.resolve("cpulist"), "");
+                if (cpuList != null) {
+                    for (int cpu : CpuSet.parseList(cpuList)) {
+                        nodes.put(cpu, node);
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // treat the machine as a single node
+            nodes.clear();
+        }
+        return nodes;
+    }
+
+    private static int siblingRank(Path cpuDirectory, int id) {
+        final String siblings = readLine(cpuDirectory.resolve("cpu" + id).resolve("topology").resolve("thread_siblings_list"), "");
+        if (siblings == null) {
+            return 0;
+        }
+        try {
+            return Math.max(0, new ArrayList<Integer>(CpuSet.parseList(siblings)).indexOf(id));
+        } catch (RuntimeException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Returns the first line of {@code file} starting with {@code prefix}, or {@code null}.
+     */
+    private static String readLine(Path file, String prefix) {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try {
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                if (line.startsWith(prefix)) {
+                    return line;
+                }
+            }
+        } catch (IOException e) {
+            // fall through to the default
+        }
+        return null;
+    }
+}
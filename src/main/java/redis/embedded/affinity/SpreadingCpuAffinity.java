@@ -0,0 +1,134 @@
+package redis.embedded.affinity;
+
+import com.google.common.base.Preconditions;
+import redis.embedded.CpuAffinity;
+import redis.embedded.CpuSet;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * Pins instances to disjoint sets of CPUs, spread over NUMA nodes and physical cores.
+ *
+ * <p>Each instance is placed on the NUMA node with the lowest load, taking turns between equally loaded
+ * nodes, and gets CPUs no other instance holds, one hardware thread per core before hyper-threading
+ * siblings. An instance only spans nodes if its node does not have enough free CPUs. Once every CPU is
+ * taken, instances share the least loaded CPUs.</p>
+ *
+ * <p>Pinning uses {@link Taskset}; where it is unavailable, instances are left unpinned. Instances only
+ * stay apart if they use the same scheduler, e.g. {@link #shared()}.</p>
+ */
+public class SpreadingCpuAffinity implements CpuAffinity {
+    private static final class Shared {
+        private static final SpreadingCpuAffinity INSTANCE = new SpreadingCpuAffinity();
+    }
+
+    private final CpuTopology topology;
+    private final boolean pinning;
+    private final Map<Integer, Integer> load = new HashMap<Integer, Integer>();
+    private int lastNode = -1;
+
+    /**
+     * Schedules on every CPU this JVM may run on.
+     */
+    public SpreadingCpuAffinity() {
+        this(CpuTopology.detect(), Taskset.isAvailable());
+    }
+
+    /**
+     * Schedules on {@code cpus} only, e.g. to keep the load generator's CPUs free.
+     */
+    public SpreadingCpuAffinity(Collection<Integer> cpus) {
+        this(CpuTopology.detect().restrictTo(cpus), Taskset.isAvailable());
+    }
+
+    SpreadingCpuAffinity(CpuTopology topology, boolean pinning) {
+        this.topology = topology;
+        this.pinning = pinning;
+    }
+
+    /**
+     * A scheduler for all CPUs of this JVM, shared by everyone who uses it.
+     */
+    public static SpreadingCpuAffinity shared() {
+        return Shared.INSTANCE;
+    }
+
+    @Override
+    public synchronized Optional<CpuSet> acquire(int cpus) {
+        Preconditions.checkArgument(cpus > 0, "An instance needs at least one CPU");
+        if (!pinning) {
+            return Optional.empty();
+        }
+        final int node = leastLoadedNode();
+        lastNode = node;
+        final List<CpuTopology.Cpu> candidates = new ArrayList<CpuTopology.Cpu>(topology.cpus());
+        candidates.sort(Comparator.<CpuTopology.Cpu>comparingInt(cpu -> load(cpu.id))
+                .thenComparingInt(cpu -> cpu.node == node ? 0 : 1)
+                .thenComparingInt(cpu -> cpu.siblingRank)
+                .thenComparingInt(cpu -> cpu.id));
+        final SortedSet<Integer> ids = new TreeSet<Integer>();
+        final SortedSet<Integer> nodes = new TreeSet<Integer>();
+        for (CpuTopology.Cpu cpu : candidates.subList(0, Math.min(cpus, candidates.size()))) {
+            ids.add(cpu.id);
+            nodes.add(cpu.node);
+            load.put(cpu.id, load(cpu.id) + 1);
+        }
+        return Optional.of(new CpuSet(ids, nodes));
+    }
+
+    @Override
+    public synchronized void release(CpuSet cpuSet) {
+        for (int cpu : cpuSet.cpus()) {
+            final int remaining = load(cpu) - 1;
+            if (remaining > 0) {
+                load.put(cpu, remaining);
+            } else {
+                load.remove(cpu);
+            }
+        }
+    }
+
+    private int load(int cpu) {
+        final Integer instances = load.get(cpu);
+        return instances != null ? instances : 0;
+    }
+
+    /**
+     * The node whose CPUs hold the fewest instances on average; among equal nodes, the first after the one
+     * chosen last.
+     */
+    private int leastLoadedNode() {
+        final Map<Integer, int[]> nodes = new HashMap<Integer, int[]>();
+        for (CpuTopology.Cpu cpu : topology.cpus()) {
+            final int[] loadAndSize = nodes.computeIfAbsent(cpu.node, n -> new int[2]);
+            loadAndSize[0] += load(cpu.id);
+            loadAndSize[1]++;
+        }
+        final List<Integer> order = new ArrayList<Integer>(new TreeSet<Integer>(nodes.keySet()));
+        // start right after the node chosen last
+        int start = 0;
+        while (start < order.size() && order.get(start) <= lastNode) {
+            start++;
+        }
+        int best = -1;
+        double bestLoad = Double.MAX_VALUE;
+        for (int i = 0; i < order.size(); i++) {
+            final int node = order.get((start + i) % order.size());
+            final int[] loadAndSize = nodes.get(node);
+            final double average = (double) loadAndSize[0] / loadAndSize[1];
+            if (average < bestLoad) {
+                best = node;
+                bestLoad = average;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,56 @@
+package redis.embedded.affinity;
+
+import redis.embedded.CpuSet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Pins processes to CPUs by starting them through {@code taskset}, from util-linux. {@code taskset} sets the
+ * affinity and then replaces itself with the actual command, so the process keeps its pid and every thread
+ * it creates inherits the affinity.
+ */
+public final class Taskset {
+    private static final String TASKSET = "taskset";
+    private static final boolean AVAILABLE = lookup();
+
+    private Taskset() {
+    }
+
+    /**
+     * Whether this is Linux and {@code taskset} is on the {@code PATH}.
+     */
+    public static boolean isAvailable() {
+        return AVAILABLE;
+    }
+
+    /**
+     * Returns {@code command} prefixed to run pinned to {@code cpuSet}.
+     */
+    public static List<String> pin(CpuSet cpuSet, List<String> command) {
+        final List<String> pinned = new ArrayList<String>(command.size() + 3);
+        pinned.add(TASKSET);
+        pinned.add("-c");
+        pinned.add(cpuSet.toList());
+        pinned.addAll(command);
+        return pinned;
+    }
+
+    private static boolean lookup() {
+        if (!System.getProperty("os.name").toLowerCase(Locale.ROOT).contains("linux")) {
+            return false;
+        }
+        final String path = System.getenv("PATH");
+        if (path == null) {
+            return false;
+        }
+        for (String directory : path.split(File.pathSeparator)) {
+            if (new File(directory, TASKSET).canExecute()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
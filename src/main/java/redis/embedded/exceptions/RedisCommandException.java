@@ -0,0 +1,21 @@
+package redis.embedded.exceptions;
+
+/**
+ * An error reply sent by a Redis instance in response to a command, e.g. {@code -LOADING ...}.
+ */
+public class RedisCommandException extends EmbeddedRedisException {
+    private final String errorCode;
+
+    public RedisCommandException(String message) {
+        super(message);
+        int space = message.indexOf(' ');
+        this.errorCode = space > 0 ? message.substring(0, space) : message;
+    }
+
+    /**
+     * Returns the leading word of the error reply, such as {@code LOADING} or {@code ERR}.
+     */
+    public String errorCode() {
+        return errorCode;
+    }
+}
@@ -0,0 +1,27 @@
+package redis.embedded.logging;
+
+import redis.embedded.RedisLogLine;
+import redis.embedded.RedisLogSink;
+
+/**
+ * Prints lines to {@code System.out}. By default only standard error is printed, since Redis writes its
+ * regular log to standard output.
+ */
+public class ConsoleLogSink implements RedisLogSink {
+    private final boolean includeStdout;
+
+    public ConsoleLogSink() {
+        this(false);
+    }
+
+    public ConsoleLogSink(boolean includeStdout) {
+        this.includeStdout = includeStdout;
+    }
+
+    @Override
+    public void accept(RedisLogLine line) {
+        if (includeStdout || line.stream() == RedisLogLine.Stream.STDERR) {
+            System.out.println(line.text());
+        }
+    }
+}
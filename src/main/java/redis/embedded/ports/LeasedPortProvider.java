@@ -0,0 +1,197 @@
+package redis.embedded.ports;
+
+import com.google.common.base.Preconditions;
+import redis.embedded.PortProvider;
+import redis.embedded.exceptions.RedisBuildingException;
+import redis.embedded.util.ExecutableCache;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Hands out ports from blocks leased through a directory shared by all JVMs on the machine, so that
+ * concurrent test JVMs, e.g. surefire forks, never hand out the same port.
+ *
+ * <p>A block is leased by holding an exclusive lock on its lease file. Lease files are never deleted, since
+ * another JVM could be about to lock the deleted file. The operating system releases the
+ * lock when the JVM exits or dies, which makes the block available to other JVMs again; {@link #release()}
+ * gives up the leases earlier. Ports are probed before they are returned and skipped if something is
+ * already listening on them. A new block is leased whenever the current one is used up.</p>
+ *
+ * <p>The directory defaults to {@code ports} in the executable cache directory and can be changed with the
+ * {@value #LEASE_DIR_PROPERTY} system property. JVMs sharing a directory must use the same range and block
+ * size.</p>
+ */
+public class LeasedPortProvider implements PortProvider {
+    public static final String LEASE_DIR_PROPERTY = "embedded.redis.port.lease.dir";
+    public static final int DEFAULT_FROM = 20000;
+    public static final int DEFAULT_TO = 29999;
+    public static final int DEFAULT_BLOCK_SIZE = 100;
+
+    private final Path directory;
+    private final int from;
+    private final int to;
+    private final int blockSize;
+    private final List<Lease> leases = new ArrayList<Lease>();
+    private int nextPort;
+    private int blockEnd;
+
+    public LeasedPortProvider() {
+        this(defaultDirectory(), DEFAULT_FROM, DEFAULT_TO, DEFAULT_BLOCK_SIZE);
+    }
+
+    public LeasedPortProvider(Path directory, int from, int to, int blockSize) {
+        Preconditions.checkArgument(from > 0 && from <= to && to <= 65535, "Invalid port range %s-%s", from, to);
+        Preconditions.checkArgument(blockSize > 0, "Block size must be positive");
+        this.directory = directory;
+        this.from = from;
+        this.to = to;
+        this.blockSize = blockSize;
+    }
+
+    public static Path defaultDirectory() {
+        final String configured = System.getProperty(LEASE_DIR_PROPERTY);
+        if (configured != null && !configured.isEmpty()) {
+            return Paths.get(configured);
+        }
+        return ExecutableCache.cacheDirectory().resolve("ports");
+    }
+
+    @Override
+    public synchronized int next() {
+        while (true) {
+            if (nextPort == 0 || nextPort > blockEnd) {
+                leaseBlock();
+            }
+            final int port = nextPort++;
+            if (isAvailable(port)) {
+                return port;
+            }
+        }
+    }
+
+    /**
+     * Gives up all blocks leased by this provider. Ports handed out before remain in use by whoever got
+     * them, but may be handed out again by other JVMs.
+     */
+    public synchronized void release() {
+        for (Lease lease : leases) {
+            lease.release();
+        }
+        leases.clear();
+        nextPort = 0;
+    }
+
+    private void leaseBlock() {
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new RedisBuildingException("Could not create port lease directory " + directory, e);
+        }
+        for (int blockStart = from; blockStart <= to; blockStart += blockSize) {
+            final Lease lease = Lease.tryAcquire(directory.resolve(blockStart + ".lease"));
+            if (lease != null) {
+                leases.add(lease);
+                nextPort = blockStart;
+                blockEnd = Math.min(to, blockStart + blockSize - 1);
+                return;
+            }
+        }
+        throw new RedisBuildingException("All port blocks between " + from + " and " + to + " are leased");
+    }
+
+    private static boolean isAvailable(int port) {
+        try (ServerSocket socket = new ServerSocket()) {
+            socket.setReuseAddress(false);
+            socket.bind(new InetSocketAddress(port));
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static final class Lease {
+        // closing any channel to a file drops this JVM's lock on it, so held files must not even be opened
+        private static final Set<Path> held = new HashSet<Path>();
+
+        private final Path file;
+        private final FileChannel channel;
+        private final FileLock lock;
+
+        private Lease(Path file, FileChannel channel, FileLock lock) {
+            this.file = file;
+            this.channel = channel;
+            this.lock = lock;
+        }
+
+        /**
+         * Locks {@code file}, or returns {@code null} if another provider, in this JVM or another one,
+         * holds it.
+         *
+         * @throws RedisBuildingException if the lease file cannot be opened, locked or written
+         */
+        private static synchronized Lease tryAcquire(Path file) {
+            if (held.contains(file)) {
+                return null;
+            }
+            FileChannel channel = null;
+            try {
+                channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                final FileLock lock = channel.tryLock();
+                if (lock == null) {
+                    channel.close();
+                    return null;
+                }
+                // for whoever wonders who holds the block
+                channel.truncate(0);
+                channel.write(ByteBuffer.wrap(ManagementFactory.getRuntimeMXBean().getName().getBytes(StandardCharsets.UTF_8)));
+                held.add(file);
+                return new Lease(file, channel, lock);
+            } catch (OverlappingFileLockException e) {
+                // held by a channel of this JVM that is not tracked, e.g. of another class loader
+                closeQuietly(channel);
+                return null;
+            } catch (IOException e) {
+                closeQuietly(channel);
+                throw new RedisBuildingException("Could not lease port block " + file, e);
+            }
+        }
+
+        private void release() {
+            synchronized (Lease.class) {
+                try {
+                    lock.release();
+                } catch (IOException e) {
+                    // closing the channel below releases the lock anyway
+                }
+                closeQuietly(channel);
+                held.remove(file);
+            }
+        }
+
+        private static void closeQuietly(FileChannel channel) {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    // nothing left to release
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package redis.embedded.ports;
+
+import com.google.common.base.Preconditions;
+import redis.embedded.PortProvider;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Cycles through the ports of an inclusive range, starting at a random one so that concurrent test JVMs
+ * sharing the range are unlikely to try the same ports in the same order.
+ */
+public class RangePortProvider implements PortProvider {
+    private final int from;
+    private final int size;
+    private final AtomicInteger offset;
+
+    public RangePortProvider(int from, int to) {
+        Preconditions.checkArgument(from > 0 && from <= to && to <= 65535, "Invalid port range %s-%s", from, to);
+        this.from = from;
+        this.size = to - from + 1;
+        this.offset = new AtomicInteger(ThreadLocalRandom.current().nextInt(size));
+    }
+
+    @Override
+    public int next() {
+        return from + Math.floorMod(offset.getAndIncrement(), size);
+    }
+}
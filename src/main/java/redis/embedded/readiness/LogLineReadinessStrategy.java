@@ -0,0 +1,40 @@
+package redis.embedded.readiness;
+
+import redis.embedded.ReadinessContext;
+import redis.embedded.ReadinessStrategy;
+import redis.embedded.exceptions.EmbeddedRedisException;
+
+import java.io.IOException;
+import java.util.regex.Pattern;
+
+/**
+ * Considers an instance ready once a line of its standard output matches a pattern. Depends on the log
+ * format and verbosity of the Redis version in use, but works for any listener type.
+ */
+public class LogLineReadinessStrategy implements ReadinessStrategy {
+    private final Pattern readyPattern;
+
+    public LogLineReadinessStrategy(String readyPattern) {
+        this.readyPattern = Pattern.compile(readyPattern);
+    }
+
+    @Override
+    public void awaitReady(ReadinessContext context) {
+        StringBuilder outputStringBuilder = new StringBuilder();
+        try {
+            String outputLine;
+            do {
+                outputLine = context.output().readLine();
+                if (outputLine == null) {
+                    // Something is wrong. Stream ended before server was activated.
+                    throw new EmbeddedRedisException("Redis server failed to become ready. Check logs for details. Redis process log: " + outputStringBuilder.toString());
+                } else {
+                    outputStringBuilder.append("\n");
+                    outputStringBuilder.append(outputLine);
+                }
+            } while (!readyPattern.matcher(outputLine).matches());
+        } catch (IOException e) {
+            throw new EmbeddedRedisException("Failed to read Redis process output", e);
+        }
+    }
+}
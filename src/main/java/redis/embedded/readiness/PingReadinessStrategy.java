@@ -0,0 +1,147 @@
+package redis.embedded.readiness;
+
+import com.google.common.collect.ImmutableSet;
+import redis.embedded.ReadinessContext;
+import redis.embedded.ReadinessStrategy;
+import redis.embedded.exceptions.EmbeddedRedisException;
+import redis.embedded.exceptions.RedisCommandException;
+import redis.embedded.util.RespClient;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Considers an instance ready once it answers a RESP {@code PING}, independently of what it logs.
+ *
+ * <p>While the port is not yet open the probe backs off exponentially from {@code minDelayMillis} to
+ * {@code maxDelayMillis}. While the instance replies {@code -LOADING}, the delay follows the
+ * {@code loading_eta_seconds} Redis reports, shrinking as the load nears completion so that the end of a
+ * large RDB load is noticed promptly. Transient error replies such as {@code BUSY} are retried after
+ * {@code maxDelayMillis}. Authentication errors (e.g. {@code NOAUTH} from a password-protected instance)
+ * mean the instance is accepting commands and count as ready; any other error reply fails startup.</p>
+ */
+public class PingReadinessStrategy implements ReadinessStrategy {
+    private static final long DEFAULT_MIN_DELAY_MILLIS = 1L;
+    private static final long DEFAULT_MAX_DELAY_MILLIS = 100L;
+    private static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 1000;
+    private static final Set<String> RETRIED_ERRORS = ImmutableSet.of("BUSY", "MASTERDOWN", "TRYAGAIN");
+    private static final Set<String> AUTH_ERRORS = ImmutableSet.of("NOAUTH", "WRONGPASS", "NOPERM");
+
+    private final long minDelayMillis;
+    private final long maxDelayMillis;
+    private final int connectTimeoutMillis;
+
+    public PingReadinessStrategy() {
+        this(DEFAULT_MIN_DELAY_MILLIS, DEFAULT_MAX_DELAY_MILLIS, DEFAULT_CONNECT_TIMEOUT_MILLIS);
+    }
+
+    public PingReadinessStrategy(long minDelayMillis, long maxDelayMillis, int connectTimeoutMillis) {
+        this.minDelayMillis = minDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.connectTimeoutMillis = connectTimeoutMillis;
+    }
+
+    @Override
+    public void awaitReady(ReadinessContext context) {
+        final Path unixSocket = context.unixSocket().orElse(null);
+        if (!RespClient.canConnect(context.port(), unixSocket)) {
+            throw new EmbeddedRedisException("PING readiness requires a plain TCP port, or a Unix domain socket on Java 16 or later");
+        }
+        long delayMillis = minDelayMillis;
+        while (true) {
+            if (!context.isProcessAlive()) {
+                throw new EmbeddedRedisException("Redis server failed to become ready. Check logs for details. Redis process log: " + remainingOutput(context));
+            }
+
+            final long nextDelayMillis;
+            try (RespClient client = RespClient.connect(context.host(), context.port(), unixSocket, connectTimeoutMillis)) {
+                nextDelayMillis = probe(client, context);
+            } catch (IOException e) {
+                // not listening yet
+                delayMillis = Math.min(delayMillis * 2, maxDelayMillis);
+                sleep(delayMillis);
+                continue;
+            }
+            if (nextDelayMillis < 0) {
+                return;
+            }
+            delayMillis = nextDelayMillis;
+            sleep(delayMillis);
+        }
+    }
+
+    /**
+     * Returns a negative value if the instance is ready, or how long to wait before probing again.
+     */
+    private long probe(RespClient client, ReadinessContext context) throws IOException {
+        try {
+            client.call("PING");
+        } catch (RedisCommandException e) {
+            if ("LOADING".equals(e.errorCode())) {
+                return loadingDelay(client);
+            }
+            if (RETRIED_ERRORS.contains(e.errorCode())) {
+                return maxDelayMillis;
+            }
+            if (AUTH_ERRORS.contains(e.errorCode())) {
+                return -1;
+            }
+            throw new EmbeddedRedisException("Redis server answered PING with an error: " + e.getMessage(), e);
+        }
+        return isSameProcess(client, context) ? -1 : maxDelayMillis;
+    }
+
+    private long loadingDelay(RespClient client) throws IOException {
+        try {
+            String eta = client.info("persistence").get("loading_eta_seconds");
+            if (eta == null) {
+                return minDelayMillis;
+            }
+            long etaMillis = TimeUnit.SECONDS.toMillis(Long.parseLong(eta));
+            return Math.max(minDelayMillis, Math.min(maxDelayMillis, etaMillis / 4));
+        } catch (RedisCommandException | NumberFormatException e) {
+            return minDelayMillis;
+        }
+    }
+
+    /**
+     * Guards against a different process already listening on the port we were told to probe.
+     */
+    private boolean isSameProcess(RespClient client, ReadinessContext context) throws IOException {
+        if (context.pid() <= 0) {
+            return true;
+        }
+        try {
+            String processId = client.info("server").get("process_id");
+            return processId == null || Long.parseLong(processId) == context.pid();
+        } catch (RedisCommandException | NumberFormatException e) {
+            return true;
+        }
+    }
+
+    private static String remainingOutput(ReadinessContext context) {
+        StringBuilder output = new StringBuilder();
+        try {
+            BufferedReader reader = context.output();
+            String line;
+            while (reader.ready() && (line = reader.readLine()) != null) {
+                output.append("\n").append(line);
+            }
+        } catch (IOException e) {
+            // best effort only
+        }
+        return output.toString();
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new EmbeddedRedisException("Interrupted while waiting for Redis to become ready", e);
+        }
+    }
+}
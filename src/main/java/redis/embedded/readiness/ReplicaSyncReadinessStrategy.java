@@ -0,0 +1,119 @@
+package redis.embedded.readiness;
+
+import redis.embedded.ReadinessContext;
+import redis.embedded.ReadinessStrategy;
+import redis.embedded.exceptions.EmbeddedRedisException;
+import redis.embedded.exceptions.RedisCommandException;
+import redis.embedded.util.RespClient;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * Considers a replica ready once its initial sync is done: {@code INFO replication} reports
+ * {@code master_link_status:up} with no sync in progress, and the replica's offset has reached the
+ * master's {@code master_repl_offset} as of the moment the link came up. Instances that are not replicas
+ * are ready right away.
+ *
+ * <p>Meant to run after a strategy that waits for the process to accept connections, such as
+ * {@link PingReadinessStrategy}. Polling backs off exponentially from {@code minDelayMillis} to
+ * {@code maxDelayMillis}.</p>
+ */
+public class ReplicaSyncReadinessStrategy implements ReadinessStrategy {
+    private static final long DEFAULT_MIN_DELAY_MILLIS = 1L;
+    private static final long DEFAULT_MAX_DELAY_MILLIS = 100L;
+    private static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 1000;
+
+    private final long minDelayMillis;
+    private final long maxDelayMillis;
+    private final int connectTimeoutMillis;
+
+    public ReplicaSyncReadinessStrategy() {
+        this(DEFAULT_MIN_DELAY_MILLIS, DEFAULT_MAX_DELAY_MILLIS, DEFAULT_CONNECT_TIMEOUT_MILLIS);
+    }
+
+    public ReplicaSyncReadinessStrategy(long minDelayMillis, long maxDelayMillis, int connectTimeoutMillis) {
+        this.minDelayMillis = minDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.connectTimeoutMillis = connectTimeoutMillis;
+    }
+
+    @Override
+    public void awaitReady(ReadinessContext context) {
+        final Path unixSocket = context.unixSocket().orElse(null);
+        if (!RespClient.canConnect(context.port(), unixSocket)) {
+            throw new EmbeddedRedisException("Replica sync readiness requires a plain TCP port, or a Unix domain socket on Java 16 or later");
+        }
+        long delayMillis = minDelayMillis;
+        long targetOffset = -1L;
+        while (true) {
+            if (!context.isProcessAlive()) {
+                throw new EmbeddedRedisException("Redis replica exited before it finished syncing with its master");
+            }
+            try (RespClient client = RespClient.connect(context.host(), context.port(), unixSocket, connectTimeoutMillis)) {
+                while (true) {
+                    final Map<String, String> replication = client.info("replication");
+                    if (!"slave".equals(replication.get("role"))) {
+                        return;
+                    }
+                    if (isLinkUp(replication)) {
+                        if (targetOffset < 0) {
+                            // fixed once, so that writes to the master cannot keep the replica from counting as synced
+                            targetOffset = masterOffset(replication);
+                        }
+                        if (targetOffset >= 0 && offset(replication, "slave_repl_offset") >= targetOffset) {
+                            return;
+                        }
+                    }
+                    if (!context.isProcessAlive()) {
+                        throw new EmbeddedRedisException("Redis replica exited before it finished syncing with its master");
+                    }
+                    delayMillis = Math.min(delayMillis * 2, maxDelayMillis);
+                    sleep(delayMillis);
+                }
+            } catch (IOException | RedisCommandException e) {
+                // the connection was lost, e.g. because the replica is going down; the next round tells
+                delayMillis = Math.min(delayMillis * 2, maxDelayMillis);
+                sleep(delayMillis);
+            }
+        }
+    }
+
+    private static boolean isLinkUp(Map<String, String> replication) {
+        return "up".equals(replication.get("master_link_status")) && "0".equals(replication.get("master_sync_in_progress"));
+    }
+
+    /**
+     * The master's current replication offset, or {@code -1} if it cannot be read right now.
+     */
+    private long masterOffset(Map<String, String> replication) {
+        final String host = replication.get("master_host");
+        final long port = offset(replication, "master_port");
+        if (host == null || port <= 0) {
+            return -1L;
+        }
+        try (RespClient master = new RespClient(host, (int) port, connectTimeoutMillis)) {
+            return offset(master.info("replication"), "master_repl_offset");
+        } catch (IOException | RedisCommandException e) {
+            return -1L;
+        }
+    }
+
+    private static long offset(Map<String, String> fields, String name) {
+        try {
+            return Long.parseLong(fields.get(name));
+        } catch (NumberFormatException e) {
+            return -1L;
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new EmbeddedRedisException("Interrupted while waiting for Redis replica to sync", e);
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package redis.embedded.stop;
+
+import redis.embedded.StopContext;
+import redis.embedded.StopStrategy;
+
+/**
+ * Kills the process immediately. Redis neither saves nor closes client connections gracefully.
+ */
+public class KillStopStrategy implements StopStrategy {
+    @Override
+    public void stop(StopContext context) {
+        context.kill();
+        context.awaitExit(Long.MAX_VALUE);
+    }
+}
@@ -0,0 +1,72 @@
+package redis.embedded.stop;
+
+import redis.embedded.StopContext;
+import redis.embedded.StopStrategy;
+import redis.embedded.exceptions.RedisCommandException;
+import redis.embedded.util.RespClient;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends {@code SHUTDOWN NOSAVE NOW} over the wire, so Redis exits without writing a final snapshot and
+ * without waiting for lagging replicas. Falls back to {@link TerminateStopStrategy} if the instance cannot
+ * be reached, and kills it if it has not exited within the timeout.
+ */
+public class ShutdownNoSaveStopStrategy implements StopStrategy {
+    private static final long DEFAULT_TIMEOUT_MILLIS = 10000L;
+    private static final int CONNECT_TIMEOUT_MILLIS = 1000;
+    private static final long RETRY_INTERVAL_MILLIS = 200L;
+
+    private final long timeoutMillis;
+
+    public ShutdownNoSaveStopStrategy() {
+        this(DEFAULT_TIMEOUT_MILLIS);
+    }
+
+    public ShutdownNoSaveStopStrategy(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    @Override
+    public void stop(StopContext context) {
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (context.isProcessAlive()) {
+            final long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remainingMillis <= 0) {
+                context.kill();
+                context.awaitExit(Long.MAX_VALUE);
+                return;
+            }
+            if (!RespClient.canConnect(context.port(), context.unixSocket().orElse(null)) || !requestShutdown(context)) {
+                new TerminateStopStrategy(remainingMillis).stop(context);
+                return;
+            }
+            // the connection may also have been closed by something else, e.g. CLIENT KILL; ask again if so
+            context.awaitExit(Math.min(RETRY_INTERVAL_MILLIS, remainingMillis));
+        }
+    }
+
+    /**
+     * Returns whether the shutdown request was accepted.
+     */
+    private static boolean requestShutdown(StopContext context) {
+        boolean connected = false;
+        try (RespClient client = RespClient.connect(context.host(), context.port(), context.unixSocket().orElse(null), CONNECT_TIMEOUT_MILLIS)) {
+            connected = true;
+            try {
+                client.call("SHUTDOWN", "NOSAVE", "NOW");
+            } catch (RedisCommandException e) {
+                // NOW is only understood by Redis 7 and later
+                client.call("SHUTDOWN", "NOSAVE");
+            }
+            // SHUTDOWN only replies if it failed
+            return false;
+        } catch (IOException e) {
+            // a successful shutdown closes the connection without a reply
+            return connected;
+        } catch (RedisCommandException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package redis.embedded.stop;
+
+import redis.embedded.StopContext;
+import redis.embedded.StopStrategy;
+
+/**
+ * Sends {@code SIGTERM} and kills the process if it has not exited within a timeout. Redis saves a final
+ * snapshot on {@code SIGTERM} if persistence is configured, which can take long for large datasets.
+ */
+public class TerminateStopStrategy implements StopStrategy {
+    private static final long DEFAULT_TIMEOUT_MILLIS = 10000L;
+
+    private final long timeoutMillis;
+
+    public TerminateStopStrategy() {
+        this(DEFAULT_TIMEOUT_MILLIS);
+    }
+
+    public TerminateStopStrategy(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    @Override
+    public void stop(StopContext context) {
+        context.terminate();
+        if (!context.awaitExit(timeoutMillis)) {
+            context.kill();
+            context.awaitExit(Long.MAX_VALUE);
+        }
+    }
+}
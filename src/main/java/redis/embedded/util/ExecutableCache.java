@@ -0,0 +1,226 @@
+package redis.embedded.util;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Resources;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Extracts executables from the classpath into a cache directory shared by all JVMs of the current user,
+ * so that each binary is copied once per machine rather than once per build.
+ *
+ * <p>Entries live under {@code <cache dir>/<version>/<sha256>/<resource>}. The SHA-256 of each resource is
+ * computed once per JVM, and every lookup checks that the cached file still has the expected size and
+ * digest before handing it out. Extraction happens under a file lock and publishes the file with an atomic
+ * rename, so concurrent JVMs never observe a partially written binary.</p>
+ *
+ * <p>The cache directory defaults to {@code embedded-redis-<user>} in {@code java.io.tmpdir} and can be
+ * changed with the {@value #CACHE_DIR_PROPERTY} system property. It holds executables and the state of
+ * running instances, so on POSIX file systems it must belong to the current user and be accessible to
+ * nobody else: it is created with mode {@code 0700}, and checked on every use. A directory of the current
+ * user that others can read but not write is restricted to {@code 0700}; any other directory, e.g. one
+ * another user created first, is not used, and this JVM falls back to a private directory of its own.</p>
+ */
+public class ExecutableCache {
+    public static final String CACHE_DIR_PROPERTY = "embedded.redis.cache.dir";
+
+    private static final Set<PosixFilePermission> OWNER_ONLY = PosixFilePermissions.fromString("rwx------");
+    private static final Set<PosixFilePermission> OTHERS_WRITE = EnumSet.of(
+            PosixFilePermission.GROUP_WRITE, PosixFilePermission.OTHERS_WRITE);
+
+    private static final Map<URL, Digest> digests = new ConcurrentHashMap<URL, Digest>();
+
+    public static synchronized File get(String resource, String version) throws IOException {
+        return extract(resource, version);
+    }
+
+    public static Path cacheDirectory() {
+        final String configured = System.getProperty(CACHE_DIR_PROPERTY);
+        final Path directory = configured != null && !configured.isEmpty()
+                ? Paths.get(configured)
+                : Paths.get(System.getProperty("java.io.tmpdir"), "embedded-redis-" + System.getProperty("user.name"));
+        try {
+            if (isPrivate(directory)) {
+                return directory;
+            }
+        } catch (IOException e) {
+            // not usable, e.g. because it belongs to another user; fall back like for a shared directory
+        }
+        return Fallback.DIRECTORY;
+    }
+
+    private static boolean isPrivate(Path directory) throws IOException {
+        if (!FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            Files.createDirectories(directory);
+            return true;
+        }
+        final Path parent = directory.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        try {
+            // the umask can only take permissions away
+            Files.createDirectory(directory, PosixFilePermissions.asFileAttribute(OWNER_ONLY));
+        } catch (FileAlreadyExistsException e) {
+            // created earlier, by this or another JVM, or by someone else: checked below
+        }
+        final PosixFileAttributes attributes = Files.readAttributes(directory, PosixFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        final UserPrincipal user = FileSystems.getDefault().getUserPrincipalLookupService()
+                .lookupPrincipalByName(System.getProperty("user.name"));
+        if (!attributes.isDirectory() || !attributes.owner().equals(user)) {
+            return false;
+        }
+        final Set<PosixFilePermission> permissions = attributes.permissions();
+        if (permissions.equals(OWNER_ONLY)) {
+            return true;
+        }
+        if (!permissions.containsAll(OWNER_ONLY) || !Collections.disjoint(permissions, OTHERS_WRITE)) {
+            return false;
+        }
+        // nobody else could have put anything into it
+        Files.getFileAttributeView(directory, PosixFileAttributeView.class, LinkOption.NOFOLLOW_LINKS).setPermissions(OWNER_ONLY);
+        return true;
+    }
+
+    /**
+     * A directory only this JVM uses, for when the cache directory cannot be trusted.
+     */
+    private static final class Fallback {
+        private static final Path DIRECTORY = create();
+
+        private static Path create() {
+            try {
+                if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+                    return Files.createTempDirectory("embedded-redis-", PosixFilePermissions.asFileAttribute(OWNER_ONLY));
+                }
+                return Files.createTempDirectory("embedded-redis-");
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to create a private cache directory", e);
+            }
+        }
+    }
+
+    private static File extract(String resource, String version) throws IOException {
+        final URL url = Resources.getResource(resource);
+        final Digest expected = digest(url);
+
+        final Path entryDir = cacheDirectory().resolve(version).resolve(expected.sha256);
+        final Path target = entryDir.resolve(resource);
+        if (isValid(target, expected)) {
+            return target.toFile();
+        }
+
+        Files.createDirectories(entryDir);
+        try (FileChannel lockChannel = FileChannel.open(entryDir.resolve(resource + ".lock"),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            final FileLock lock = lockChannel.lock();
+            try {
+                if (isValid(target, expected)) {
+                    // another JVM extracted it while we waited for the lock
+                    return target.toFile();
+                }
+                extractTo(url, resource, entryDir, target, expected);
+            } finally {
+                lock.release();
+            }
+        }
+        return target.toFile();
+    }
+
+    private static void extractTo(URL url, String resource, Path entryDir, Path target, Digest expected) throws IOException {
+        final Path temp = entryDir.resolve(resource + ".tmp-" + UUID.randomUUID());
+        try {
+            final Hasher hasher = Hashing.sha256().newHasher();
+            try (InputStream in = url.openStream(); OutputStream out = Files.newOutputStream(temp, StandardOpenOption.CREATE_NEW)) {
+                final byte[] buffer = new byte[64 * 1024];
+                int read;
+                while ((read = in.read(buffer)) >= 0) {
+                    hasher.putBytes(buffer, 0, read);
+                    out.write(buffer, 0, read);
+                }
+            }
+            if (!hasher.hash().toString().equals(expected.sha256)) {
+                throw new IOException("Checksum mismatch while extracting " + resource);
+            }
+            temp.toFile().setExecutable(true);
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static boolean isValid(Path target, Digest expected) throws IOException {
+        File file = target.toFile();
+        if (!file.isFile() || file.length() != expected.size || !file.canExecute()) {
+            return false;
+        }
+        try (InputStream in = Files.newInputStream(target)) {
+            return digest(in).sha256.equals(expected.sha256);
+        }
+    }
+
+    private static Digest digest(URL url) throws IOException {
+        Digest digest = digests.get(url);
+        if (digest == null) {
+            try (InputStream in = url.openStream()) {
+                digest = digest(in);
+            }
+            digests.put(url, digest);
+        }
+        return digest;
+    }
+
+    private static Digest digest(InputStream in) throws IOException {
+        final Hasher hasher = Hashing.sha256().newHasher();
+        final byte[] buffer = new byte[64 * 1024];
+        long size = 0;
+        int read;
+        while ((read = in.read(buffer)) >= 0) {
+            hasher.putBytes(buffer, 0, read);
+            size += read;
+        }
+        return new Digest(hasher.hash().toString(), size);
+    }
+
+    private static class Digest {
+        private final String sha256;
+        private final long size;
+
+        private Digest(String sha256, long size) {
+            this.sha256 = sha256;
+            this.size = size;
+        }
+    }
+}
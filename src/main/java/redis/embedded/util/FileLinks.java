@@ -0,0 +1,69 @@
+package redis.embedded.util;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Places a file at another path as cheaply as the file system allows: as a hard link, else as a
+ * copy-on-write clone ({@code cp --reflink} on Linux, {@code cp -c} on macOS), else as a plain copy.
+ *
+ * <p>Redis never rewrites a dump file in place; it saves to a temporary file and renames it over the old
+ * one. Linking a fixture into an instance's directory therefore never modifies the fixture.</p>
+ */
+public class FileLinks {
+    public enum Method {
+        HARD_LINK,
+        REFLINK,
+        COPY
+    }
+
+    /**
+     * Replaces {@code target} with the contents of {@code source} and returns how it was materialized.
+     */
+    public static Method materialize(Path source, Path target) throws IOException {
+        Files.deleteIfExists(target);
+        try {
+            Files.createLink(target, source);
+            return Method.HARD_LINK;
+        } catch (IOException | UnsupportedOperationException | SecurityException e) {
+            // different file system, or links not supported; try cheaper-than-copy alternatives
+        }
+        if (reflink(source, target)) {
+            return Method.REFLINK;
+        }
+        Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+        return Method.COPY;
+    }
+
+    private static boolean reflink(Path source, Path target) throws IOException {
+        final List<String> command;
+        switch (OSDetector.getOS()) {
+            case UNIX:
+                command = Arrays.asList("cp", "--reflink=always", source.toString(), target.toString());
+                break;
+            case MAC_OS_X:
+                command = Arrays.asList("cp", "-c", source.toString(), target.toString());
+                break;
+            default:
+                return false;
+        }
+        try {
+            final Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+            process.getInputStream().close();
+            if (process.waitFor() == 0) {
+                return true;
+            }
+        } catch (IOException e) {
+            // no cp on the path
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while cloning " + source, e);
+        }
+        Files.deleteIfExists(target);
+        return false;
+    }
+}
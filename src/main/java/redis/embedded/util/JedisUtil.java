@@ -3,6 +3,7 @@ package redis.embedded.util;
 import redis.embedded.Redis;
 import redis.embedded.RedisCluster;
 
+import java.nio.file.Path;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -18,6 +19,17 @@ public class JedisUtil {
         return portsToJedisHosts(ports);
     }
 
+    /**
+     * Paths of the Unix domain sockets of {@code redis}, for clients that can connect to them.
+     */
+    public static Set<String> unixSocketPaths(Redis redis) {
+        Set<String> paths = new HashSet<String>();
+        for (Path socket : redis.unixSockets()) {
+            paths.add(socket.toAbsolutePath().toString());
+        }
+        return paths;
+    }
+
     public static Set<String> portsToJedisHosts(List<Integer> ports) {
         Set<String> hosts = new HashSet<String>();
         for(Integer p : ports) {
@@ -2,10 +2,16 @@ package redis.embedded.util;
 
 import redis.embedded.exceptions.OsDetectionException;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 public class OSDetector {
+    private static final int ELF_MACHINE_386 = 0x03;
+    private static final int ELF_MACHINE_X86_64 = 0x3e;
+    private static final int ELF_MACHINE_AARCH64 = 0xb7;
 
     public static OS getOS() {
         String osName = System.getProperty("os.name").toLowerCase();
@@ -46,47 +52,78 @@ public class OSDetector {
         }
     }
 
+    /**
+     * Derives the architecture from the {@code os.arch} of the running JVM, falling back to the ELF header
+     * of the JVM executable on Linux. Neither requires spawning a process.
+     */
     private static Architecture getUnixArchitecture() {
-        try {
-            Process proc = Runtime.getRuntime().exec("uname -m");
-            try (BufferedReader input = new BufferedReader(new InputStreamReader(proc.getInputStream()))) {
-                String machine = input.readLine();
-                switch (machine) {
-                    case "aarch64":
-                        return Architecture.arm64;
-                    case "x86_64":
-                        return Architecture.x86_64;
-                    default:
-                        throw new OsDetectionException("unsupported architecture: " + machine);
-                }
-            }
-        } catch (Exception e) {
-            if (e instanceof OsDetectionException) {
-                throw (OsDetectionException)e;
-            }
-            throw new OsDetectionException(e);
+        String osArch = System.getProperty("os.arch");
+        Architecture arch = parseArchitecture(osArch);
+        if (arch == null) {
+            arch = getElfArchitecture(Paths.get("/proc/self/exe"));
         }
+        if (arch == null) {
+            throw new OsDetectionException("unsupported architecture: " + osArch);
+        }
+        return arch;
     }
 
     private static Architecture getMacOSXArchitecture() {
-        try {
-            Process proc = Runtime.getRuntime().exec("uname -m");
-            try (BufferedReader input = new BufferedReader(new InputStreamReader(proc.getInputStream()))) {
-                String machine = input.readLine();
-                switch (machine) {
-                    case "arm64":
-                        return Architecture.arm64;
-                    case "x86_64":
-                        return Architecture.x86_64;
-                    default:
-                        throw new OsDetectionException("unsupported architecture: " + machine);
-                }
-            }
-        } catch (Exception e) {
-            if (e instanceof OsDetectionException) {
-                throw (OsDetectionException)e;
+        String osArch = System.getProperty("os.arch");
+        Architecture arch = parseArchitecture(osArch);
+        if (arch == null || arch == Architecture.x86) {
+            throw new OsDetectionException("unsupported architecture: " + osArch);
+        }
+        return arch;
+    }
+
+    static Architecture parseArchitecture(String osArch) {
+        if (osArch == null) {
+            return null;
+        }
+        switch (osArch.toLowerCase()) {
+            case "amd64":
+            case "x86_64":
+                return Architecture.x86_64;
+            case "aarch64":
+            case "arm64":
+                return Architecture.arm64;
+            case "x86":
+            case "i386":
+            case "i486":
+            case "i586":
+            case "i686":
+                return Architecture.x86;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Reads {@code e_machine} from the header of an ELF executable.
+     */
+    static Architecture getElfArchitecture(Path elfFile) {
+        byte[] header = new byte[20];
+        try (InputStream in = Files.newInputStream(elfFile)) {
+            if (in.read(header) < header.length || header[0] != 0x7f || header[1] != 'E' || header[2] != 'L' || header[3] != 'F') {
+                return null;
             }
-            throw new OsDetectionException(e);
+        } catch (IOException e) {
+            return null;
+        }
+        // EI_DATA: 1 for little endian, 2 for big endian
+        int machine = header[5] == 2
+                ? ((header[18] & 0xff) << 8) | (header[19] & 0xff)
+                : ((header[19] & 0xff) << 8) | (header[18] & 0xff);
+        switch (machine) {
+            case ELF_MACHINE_X86_64:
+                return Architecture.x86_64;
+            case ELF_MACHINE_AARCH64:
+                return Architecture.arm64;
+            case ELF_MACHINE_386:
+                return Architecture.x86;
+            default:
+                return null;
         }
     }
 }
@@ -2,6 +2,8 @@ package redis.embedded.util;
 
 import com.google.common.base.Preconditions;
 
+import java.util.ServiceLoader;
+
 public class OsArchitecture {
     
     public static final OsArchitecture UNIX_x86 = new OsArchitecture(OS.UNIX, Architecture.x86);
@@ -11,10 +13,31 @@ public class OsArchitecture {
     public static final OsArchitecture MAC_OS_X_x86_64 = new OsArchitecture(OS.MAC_OS_X, Architecture.x86_64);
     public static final OsArchitecture MAC_OS_X_arm64 = new OsArchitecture(OS.MAC_OS_X, Architecture.arm64);
 
+    private static volatile OsArchitecture detected;
+
     private final OS os;
     private final Architecture arch;
-    
+
+    /**
+     * Returns the platform of the running JVM. Asks any {@link OsArchitectureResolver} services first and
+     * uses {@link OSDetector} otherwise; the answer is computed once per JVM.
+     */
     public static OsArchitecture detect() {
+        OsArchitecture result = detected;
+        if (result == null) {
+            result = resolve();
+            detected = result;
+        }
+        return result;
+    }
+
+    private static OsArchitecture resolve() {
+        for (OsArchitectureResolver resolver : ServiceLoader.load(OsArchitectureResolver.class)) {
+            OsArchitecture resolved = resolver.resolve();
+            if (resolved != null) {
+                return resolved;
+            }
+        }
         OS os = OSDetector.getOS();
         Architecture arch = OSDetector.getArchitecture();
         return new OsArchitecture(os, arch);
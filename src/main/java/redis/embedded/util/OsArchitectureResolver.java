@@ -0,0 +1,14 @@
+package redis.embedded.util;
+
+/**
+ * Supplies the platform to pick a Redis executable for, for environments where the built-in detection
+ * gets it wrong. Implementations are discovered with {@link java.util.ServiceLoader}, i.e. by listing them
+ * in {@code META-INF/services/redis.embedded.util.OsArchitectureResolver}.
+ */
+public interface OsArchitectureResolver {
+    /**
+     * Returns the platform, or {@code null} to leave the decision to other resolvers and the built-in
+     * detection.
+     */
+    OsArchitecture resolve();
+}
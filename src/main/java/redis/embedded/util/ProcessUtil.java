@@ -0,0 +1,165 @@
+package redis.embedded.util;
+
+import com.google.common.io.CharStreams;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Optional;
+import java.util.OptionalLong;
+
+public class ProcessUtil {
+    public static final long UNKNOWN_PID = -1L;
+
+    private static final String PROCESS_HANDLE = "java.lang.ProcessHandle";
+    private static final String PROCESS_HANDLE_INFO = "java.lang.ProcessHandle$Info";
+    private static final String VM_RSS = "VmRSS:";
+
+    /**
+     * Returns the operating system pid of the given process, or {@link #UNKNOWN_PID} if it cannot be
+     * determined. Uses {@code Process.pid()} where available and falls back to the {@code pid} field of
+     * the JDK 8 process implementations.
+     */
+    public static long pid(Process process) {
+        try {
+            Method pid = Process.class.getMethod("pid");
+            return ((Number) pid.invoke(process)).longValue();
+        } catch (NoSuchMethodException e) {
+            return legacyPid(process);
+        } catch (Exception e) {
+            return UNKNOWN_PID;
+        }
+    }
+
+    private static long legacyPid(Process process) {
+        try {
+            Field pid = process.getClass().getDeclaredField("pid");
+            pid.setAccessible(true);
+            return pid.getInt(process);
+        } catch (Exception e) {
+            return UNKNOWN_PID;
+        }
+    }
+
+    /**
+     * Returns whether a process with the given pid exists. Uses {@code ProcessHandle} where available and
+     * {@code /proc} otherwise; returns {@code false} if neither is available.
+     */
+    public static boolean isAlive(long pid) {
+        final Optional<Object> handle = processHandle(pid);
+        if (handle != null) {
+            return handle.isPresent() && (Boolean) invoke(PROCESS_HANDLE, handle.get(), "isAlive");
+        }
+        return Files.isDirectory(procDirectory(pid));
+    }
+
+    /**
+     * Returns the path of the executable the given process runs, if it can be determined.
+     */
+    public static Optional<String> executable(long pid) {
+        final Optional<Object> handle = processHandle(pid);
+        if (handle != null) {
+            if (!handle.isPresent()) {
+                return Optional.empty();
+            }
+            @SuppressWarnings("unchecked")
+            final Optional<String> command = (Optional<String>) invoke(PROCESS_HANDLE_INFO, invoke(PROCESS_HANDLE, handle.get(), "info"), "command");
+            return command;
+        }
+        try {
+            String exe = Files.readSymbolicLink(procDirectory(pid).resolve("exe")).toString();
+            // the binary was replaced or removed since the process started
+            if (exe.endsWith(" (deleted)")) {
+                exe = exe.substring(0, exe.length() - " (deleted)".length());
+            }
+            return Optional.of(exe);
+        } catch (IOException | UnsupportedOperationException | SecurityException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Forcibly kills the given process and returns whether the kill was issued.
+     */
+    public static boolean kill(long pid) {
+        final Optional<Object> handle = processHandle(pid);
+        if (handle != null) {
+            return handle.isPresent() && (Boolean) invoke(PROCESS_HANDLE, handle.get(), "destroyForcibly");
+        }
+        try {
+            return new ProcessBuilder("kill", "-9", Long.toString(pid)).start().waitFor() == 0;
+        } catch (IOException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Returns the resident set size of the given process in bytes, if it can be determined. Reads
+     * {@code /proc} where available and asks {@code ps} otherwise.
+     */
+    public static OptionalLong residentBytes(long pid) {
+        final Path status = procDirectory(pid).resolve("status");
+        if (Files.isReadable(status)) {
+            try {
+                for (String line : Files.readAllLines(status, StandardCharsets.UTF_8)) {
+                    if (line.startsWith(VM_RSS)) {
+                        return OptionalLong.of(kibibytes(line.substring(VM_RSS.length()).replace("kB", "")));
+                    }
+                }
+            } catch (IOException | NumberFormatException e) {
+                // the process exited while we read, or is a zombie without a VmRSS line
+            }
+            return OptionalLong.empty();
+        }
+        try {
+            final Process ps = new ProcessBuilder("ps", "-o", "rss=", "-p", Long.toString(pid)).start();
+            final String output = CharStreams.toString(new InputStreamReader(ps.getInputStream(), StandardCharsets.UTF_8));
+            return ps.waitFor() == 0 ? OptionalLong.of(kibibytes(output)) : OptionalLong.empty();
+        } catch (IOException | NumberFormatException e) {
+            return OptionalLong.empty();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return OptionalLong.empty();
+        }
+    }
+
+    private static long kibibytes(String value) {
+        return Long.parseLong(value.trim()) * 1024L;
+    }
+
+    /**
+     * Returns {@code ProcessHandle.of(pid)}, or {@code null} before Java 9.
+     */
+    @SuppressWarnings("unchecked")
+    private static Optional<Object> processHandle(long pid) {
+        try {
+            Method of = Class.forName(PROCESS_HANDLE).getMethod("of", long.class);
+            return (Optional<Object>) of.invoke(null, pid);
+        } catch (ClassNotFoundException | NoSuchMethodException e) {
+            return null;
+        } catch (Exception e) {
+            return Optional.empty();
+        }
+    }
+
+    // looked up on the public interface; the implementation classes are not accessible
+    private static Object invoke(String type, Object target, String method) {
+        try {
+            return Class.forName(type).getMethod(method).invoke(target);
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to call " + type + "." + method, e);
+        }
+    }
+
+    private static Path procDirectory(long pid) {
+        return Paths.get("/proc", Long.toString(pid));
+    }
+}
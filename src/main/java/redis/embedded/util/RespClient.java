@@ -0,0 +1,226 @@
+package redis.embedded.util;
+
+import redis.embedded.exceptions.RedisCommandException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A minimal blocking RESP2 client used to manage embedded instances without depending on a Redis client
+ * library. Replies are mapped to {@link String} (simple and bulk strings), {@link Long}, {@link List} or
+ * {@code null}; error replies are thrown as {@link RedisCommandException}.
+ */
+public class RespClient implements Closeable {
+    private static final byte[] CRLF = {'\r', '\n'};
+
+    // null when connected over a Unix domain socket
+    private final Socket socket;
+    private final Closeable connection;
+    private final InputStream in;
+    private final OutputStream out;
+
+    public RespClient(String host, int port, int timeoutMillis) throws IOException {
+        socket = new Socket();
+        connection = socket;
+        try {
+            socket.setTcpNoDelay(true);
+            socket.connect(new InetSocketAddress(host, port), timeoutMillis);
+            socket.setSoTimeout(timeoutMillis);
+            in = new BufferedInputStream(socket.getInputStream());
+            out = new BufferedOutputStream(socket.getOutputStream());
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    private RespClient(SocketChannel channel) {
+        socket = null;
+        connection = channel;
+        in = new BufferedInputStream(Channels.newInputStream(channel));
+        out = new BufferedOutputStream(Channels.newOutputStream(channel));
+    }
+
+    /**
+     * Connects over the Unix domain socket at {@code path}; see {@link UnixSockets#isSupported()}. Reads on
+     * such a connection do not time out.
+     */
+    public static RespClient unixSocket(Path path) throws IOException {
+        return new RespClient(UnixSockets.connect(path));
+    }
+
+    /**
+     * Connects to the plain TCP port if there is one ({@code port > 0}), and to the Unix domain socket
+     * otherwise.
+     */
+    public static RespClient connect(String host, int port, Path unixSocket, int timeoutMillis) throws IOException {
+        if (port > 0) {
+            return new RespClient(host, port, timeoutMillis);
+        }
+        if (unixSocket != null) {
+            return unixSocket(unixSocket);
+        }
+        throw new IOException("No plain TCP port or Unix domain socket to connect to");
+    }
+
+    /**
+     * Whether {@link #connect(String, int, Path, int)} can reach an instance with these endpoints.
+     */
+    public static boolean canConnect(int port, Path unixSocket) {
+        return port > 0 || (unixSocket != null && UnixSockets.isSupported());
+    }
+
+    public Object call(String... args) throws IOException {
+        write(args);
+        out.flush();
+        return read();
+    }
+
+    /**
+     * Sends all commands before reading any reply. Error replies are returned in place as
+     * {@link RedisCommandException} instances instead of being thrown.
+     */
+    public List<Object> pipeline(List<String[]> commands) throws IOException {
+        for (String[] command : commands) {
+            write(command);
+        }
+        out.flush();
+        final List<Object> replies = new ArrayList<Object>(commands.size());
+        for (int i = 0; i < commands.size(); i++) {
+            try {
+                replies.add(read());
+            } catch (RedisCommandException e) {
+                replies.add(e);
+            }
+        }
+        return replies;
+    }
+
+    /**
+     * Runs {@code INFO section} and returns its {@code field:value} lines.
+     */
+    public Map<String, String> info(String section) throws IOException {
+        return parseInfo((String) call("INFO", section));
+    }
+
+    public static Map<String, String> parseInfo(String info) {
+        final Map<String, String> fields = new LinkedHashMap<String, String>();
+        if (info == null) {
+            return fields;
+        }
+        for (String line : info.split("\r?\n")) {
+            int colon = line.indexOf(':');
+            if (colon > 0 && !line.startsWith("#")) {
+                fields.put(line.substring(0, colon), line.substring(colon + 1).trim());
+            }
+        }
+        return fields;
+    }
+
+    public void setTimeout(int timeoutMillis) throws IOException {
+        if (socket != null) {
+            socket.setSoTimeout(timeoutMillis);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        connection.close();
+    }
+
+    private void write(String[] args) throws IOException {
+        out.write('*');
+        out.write(Integer.toString(args.length).getBytes(StandardCharsets.US_ASCII));
+        out.write(CRLF);
+        for (String arg : args) {
+            byte[] bytes = arg.getBytes(StandardCharsets.UTF_8);
+            out.write('$');
+            out.write(Integer.toString(bytes.length).getBytes(StandardCharsets.US_ASCII));
+            out.write(CRLF);
+            out.write(bytes);
+            out.write(CRLF);
+        }
+    }
+
+    private Object read() throws IOException {
+        int type = in.read();
+        switch (type) {
+            case '+':
+                return readLine();
+            case '-':
+                throw new RedisCommandException(readLine());
+            case ':':
+                return Long.parseLong(readLine());
+            case '$':
+                return readBulk(Integer.parseInt(readLine()));
+            case '*':
+                return readArray(Integer.parseInt(readLine()));
+            case -1:
+                throw new EOFException("Connection closed by Redis");
+            default:
+                throw new IOException("Unexpected RESP type byte: " + type);
+        }
+    }
+
+    private String readBulk(int length) throws IOException {
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        int offset = 0;
+        while (offset < length) {
+            int read = in.read(bytes, offset, length - offset);
+            if (read < 0) {
+                throw new EOFException("Connection closed by Redis");
+            }
+            offset += read;
+        }
+        readLine();
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private List<Object> readArray(int length) throws IOException {
+        if (length < 0) {
+            return null;
+        }
+        final List<Object> elements = new ArrayList<Object>(length);
+        for (int i = 0; i < length; i++) {
+            try {
+                elements.add(read());
+            } catch (RedisCommandException e) {
+                elements.add(e);
+            }
+        }
+        return elements;
+    }
+
+    private String readLine() throws IOException {
+        StringBuilder line = new StringBuilder();
+        int b;
+        while ((b = in.read()) != '\r') {
+            if (b < 0) {
+                throw new EOFException("Connection closed by Redis");
+            }
+            line.append((char) b);
+        }
+        if (in.read() != '\n') {
+            throw new IOException("Malformed RESP line: " + line);
+        }
+        return line.toString();
+    }
+}
@@ -0,0 +1,68 @@
+package redis.embedded.util;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+
+/**
+ * Connects to Unix domain sockets where the running JVM supports them (Java 16 and later). The classes
+ * involved are looked up reflectively, so that this library still runs on Java 8.
+ */
+public final class UnixSockets {
+    private static final Method ADDRESS_OF = lookupAddressOf();
+    private static final Method OPEN_CHANNEL = lookupOpenChannel();
+
+    private UnixSockets() {
+    }
+
+    public static boolean isSupported() {
+        return ADDRESS_OF != null && OPEN_CHANNEL != null;
+    }
+
+    /**
+     * Opens a blocking channel connected to the socket at {@code path}.
+     */
+    public static SocketChannel connect(Path path) throws IOException {
+        if (!isSupported()) {
+            throw new IOException("Unix domain sockets require Java 16 or later");
+        }
+        final SocketChannel channel;
+        try {
+            channel = (SocketChannel) OPEN_CHANNEL.invoke(null, StandardProtocolFamily.valueOf("UNIX"));
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new IOException("Failed to open Unix domain socket channel", e);
+        }
+        try {
+            channel.connect((SocketAddress) ADDRESS_OF.invoke(null, path));
+            return channel;
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            channel.close();
+            throw new IOException("Failed to connect to " + path, e.getCause() != null ? e.getCause() : e);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static Method lookupAddressOf() {
+        try {
+            return Class.forName("java.net.UnixDomainSocketAddress").getMethod("of", Path.class);
+        } catch (ClassNotFoundException | NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    private static Method lookupOpenChannel() {
+        try {
+            StandardProtocolFamily.valueOf("UNIX");
+            return SocketChannel.class.getMethod("open", ProtocolFamily.class);
+        } catch (IllegalArgumentException | NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
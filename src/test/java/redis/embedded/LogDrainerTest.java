@@ -0,0 +1,119 @@
+package redis.embedded;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LogDrainerTest {
+
+    @Test(timeout = 10000L)
+    public void shouldDeliverEveryLineToSink() throws Exception {
+        //given
+        final List<RedisLogLine> received = new CopyOnWriteArrayList<RedisLogLine>();
+        final StringBuilder output = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            output.append("line ").append(i).append("\r\n");
+        }
+
+        //when
+        LogDrainer.Registration registration = LogDrainer.register(new FinishedProcess(output.toString(), "oops"),
+                new LogRingBuffer("test:1"), received::add, new StartupClock(Collections.<StartupPhase, Duration>emptyMap()));
+        while (received.size() < 101) {
+            Thread.sleep(10L);
+        }
+
+        //then
+        assertEquals(0L, registration.dropped());
+        assertTrue(received.stream().anyMatch(line -> line.stream() == RedisLogLine.Stream.STDERR && line.text().equals("oops")));
+        assertEquals("line 99", received.stream().filter(line -> line.stream() == RedisLogLine.Stream.STDOUT)
+                .reduce((first, second) -> second).get().text());
+        assertEquals("test:1", received.get(0).source());
+    }
+
+    @Test(timeout = 10000L)
+    public void shouldDropLinesInsteadOfBlockingWhenSinkFallsBehind() throws Exception {
+        //given
+        final CountDownLatch release = new CountDownLatch(1);
+        final StringBuilder output = new StringBuilder();
+        for (int i = 0; i < LogDrainer.BUFFER_CAPACITY * 2; i++) {
+            output.append("line ").append(i).append('\n');
+        }
+        final StartupClock clock = new StartupClock(Collections.<StartupPhase, Duration>emptyMap());
+
+        try {
+            //when
+            LogDrainer.Registration registration = LogDrainer.register(new FinishedProcess(output.toString(), ""), new LogRingBuffer("test:2"), line -> {
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, clock);
+            while (registration.dropped() < LogDrainer.BUFFER_CAPACITY - 1) {
+                Thread.sleep(10L);
+            }
+
+            //then
+            assertTrue(clock.report().duration(StartupPhase.FIRST_OUTPUT).isPresent());
+        } finally {
+            release.countDown();
+        }
+    }
+
+    private static class FinishedProcess extends Process {
+        private final InputStream stdout;
+        private final InputStream stderr;
+
+        private FinishedProcess(String stdout, String stderr) {
+            this.stdout = new ByteArrayInputStream(stdout.getBytes(StandardCharsets.UTF_8));
+            this.stderr = new ByteArrayInputStream(stderr.getBytes(StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return new ByteArrayOutputStream();
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return stdout;
+        }
+
+        @Override
+        public InputStream getErrorStream() {
+            return stderr;
+        }
+
+        @Override
+        public int waitFor() {
+            return 0;
+        }
+
+        @Override
+        public int exitValue() {
+            return 0;
+        }
+
+        @Override
+        public void destroy() {
+        }
+
+        @Override
+        public boolean isAlive() {
+            return false;
+        }
+    }
+}
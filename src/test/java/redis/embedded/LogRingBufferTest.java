@@ -0,0 +1,70 @@
+package redis.embedded;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LogRingBufferTest {
+
+    @Test
+    public void recentShouldReturnNewestLinesOldestFirst() {
+        //given
+        LogRingBuffer buffer = new LogRingBuffer("test", 4, 1024);
+
+        //when
+        for (int i = 0; i < 10; i++) {
+            append(buffer, i, "line " + i);
+        }
+
+        //then
+        assertEquals("[[test] line 8, [test] line 9]", buffer.recent(2).toString());
+        assertEquals(4, buffer.recent(100).size());
+        assertEquals("line 6", buffer.recent(100).get(0).text());
+        assertTrue(buffer.recent(0).isEmpty());
+    }
+
+    @Test
+    public void appendShouldEvictOldestLinesWhenBytesRunOutAndWrapAround() {
+        //given
+        LogRingBuffer buffer = new LogRingBuffer("test", 100, 16);
+
+        //when
+        append(buffer, 1, "aaaaaa");
+        append(buffer, 2, "bbbbbb");
+        append(buffer, 3, "cccccc");
+
+        //then
+        List<RedisLogLine> lines = buffer.recent(10);
+        assertEquals(2, lines.size());
+        assertEquals("bbbbbb", lines.get(0).text());
+        assertEquals("cccccc", lines.get(1).text());
+        assertEquals(RedisLogLine.Stream.STDOUT, lines.get(1).stream());
+    }
+
+    @Test
+    public void sinceShouldReturnLinesCapturedFromInstant() {
+        //given
+        LogRingBuffer buffer = new LogRingBuffer("test");
+        append(buffer, 1000, "early");
+        append(buffer, 2000, "on time");
+        append(buffer, 3000, "late");
+
+        //when
+        List<RedisLogLine> lines = buffer.since(Instant.ofEpochMilli(2000));
+
+        //then
+        assertEquals(2, lines.size());
+        assertEquals("on time", lines.get(0).text());
+        assertEquals(Instant.ofEpochMilli(3000), lines.get(1).timestamp());
+    }
+
+    private static void append(LogRingBuffer buffer, long epochMillis, String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        buffer.append(RedisLogLine.Stream.STDOUT, epochMillis, bytes, 0, bytes.length);
+    }
+}
@@ -0,0 +1,133 @@
+package redis.embedded;
+
+import org.junit.Test;
+import redis.embedded.exceptions.EmbeddedRedisException;
+import redis.embedded.util.ProcessUtil;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class MemoryBudgetTest {
+
+    @Test
+    public void shouldRejectReservationsBeyondTheBudget() throws Exception {
+        //given
+        MemoryBudget budget = new MemoryBudget(100);
+        budget.reserve(60, "first").get();
+
+        //when
+        CompletableFuture<MemoryBudget.Reservation> second = budget.reserve(60, "second");
+
+        //then
+        assertFailed(second);
+        assertEquals(60, budget.usage().reservedBytes());
+        assertEquals(1, budget.usage().instances());
+    }
+
+    @Test
+    public void shouldAdmitWaitingReservationsInOrderOnRelease() throws Exception {
+        //given
+        MemoryBudget budget = new MemoryBudget(100, Duration.ofSeconds(30));
+        MemoryBudget.Reservation first = budget.reserve(60, "first").get();
+        CompletableFuture<MemoryBudget.Reservation> second = budget.reserve(60, "second");
+        CompletableFuture<MemoryBudget.Reservation> third = budget.reserve(30, "third");
+        assertFalse(second.isDone());
+        assertFalse("waits behind second even though it would fit", third.isDone());
+        assertEquals(2, budget.usage().waiting());
+
+        //when
+        first.release();
+
+        //then
+        second.get(5, TimeUnit.SECONDS);
+        third.get(5, TimeUnit.SECONDS);
+        assertEquals(90, budget.usage().reservedBytes());
+        assertEquals(0, budget.usage().waiting());
+    }
+
+    @Test
+    public void shouldFailWaitingReservationsAfterMaxWait() throws Exception {
+        //given
+        MemoryBudget budget = new MemoryBudget(100, Duration.ofMillis(50));
+        budget.reserve(100, "first").get();
+
+        //when
+        CompletableFuture<MemoryBudget.Reservation> second = budget.reserve(1, "second");
+
+        //then
+        try {
+            second.get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof EmbeddedRedisException);
+        }
+        assertEquals(0, budget.usage().waiting());
+    }
+
+    @Test
+    public void abandonedReservationsShouldNotHoldMemory() throws Exception {
+        //given
+        MemoryBudget budget = new MemoryBudget(100, Duration.ofSeconds(30));
+        MemoryBudget.Reservation first = budget.reserve(100, "first").get();
+        CompletableFuture<MemoryBudget.Reservation> second = budget.reserve(100, "second");
+
+        //when
+        second.completeExceptionally(new EmbeddedRedisException("stopped"));
+        first.release();
+
+        //then
+        assertEquals(0, budget.usage().reservedBytes());
+        assertTrue(budget.reserve(100, "third").isDone());
+    }
+
+    @Test
+    public void shouldAlwaysRejectReservationsLargerThanTheBudget() {
+        assertFailed(new MemoryBudget(100, Duration.ofSeconds(30)).reserve(101, "huge"));
+    }
+
+    @Test
+    public void shouldParseRedisMemorySizes() {
+        assertEquals(100L, MemoryBudget.parseSize("100"));
+        assertEquals(1000L, MemoryBudget.parseSize("1k"));
+        assertEquals(64L * 1024 * 1024, MemoryBudget.parseSize("64mb"));
+        assertEquals(2L * 1024 * 1024 * 1024, MemoryBudget.parseSize("2GB"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectMemorySizesThatOverflow() {
+        MemoryBudget.parseSize("99999999999g");
+    }
+
+    @Test
+    public void shouldAdmitWaitingReservationsWhenResidentMemoryShrinks() throws Exception {
+        //given
+        MemoryBudget budget = new MemoryBudget(1000, Duration.ofSeconds(30));
+        Process process = new ProcessBuilder("sleep", "30").start();
+        try {
+            budget.reserve(1, "first").get().attach(ProcessUtil.pid(process));
+            CompletableFuture<MemoryBudget.Reservation> second = budget.reserve(500, "second");
+            assertFalse("the first instance's resident memory exceeds the budget", second.isDone());
+
+            //when
+            process.destroy();
+            process.waitFor();
+            // past the interval in which resident memory is not sampled again
+            Thread.sleep(600L);
+            budget.usage();
+
+            //then
+            second.get(5, TimeUnit.SECONDS);
+            assertEquals(0, budget.usage().waiting());
+        } finally {
+            process.destroyForcibly();
+        }
+    }
+
+    private static void assertFailed(CompletableFuture<?> future) {
+        assertTrue(future.isCompletedExceptionally());
+    }
+}
@@ -0,0 +1,173 @@
+package redis.embedded;
+
+import com.google.common.io.Files;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import redis.embedded.util.ProcessUtil;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class OrphanReaperTest {
+    private File dir;
+    private Process process;
+    private Process lockHolder;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDir();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (process != null) {
+            process.destroyForcibly().waitFor();
+        }
+        if (lockHolder != null) {
+            lockHolder.destroyForcibly().waitFor();
+        }
+        FileUtils.deleteDirectory(dir);
+    }
+
+    @Test
+    public void reapShouldKillProcessesOfDeadOwners() throws Exception {
+        //given
+        final String executable = RedisExecProvider.defaultProvider().get().getAbsolutePath();
+        process = new ProcessBuilder(executable, "--port", "6390", "--save", "").directory(dir).start();
+        new File(dir, "owner-dead.lock").createNewFile();
+        final File pidFile = writePidFile(ProcessUtil.pid(process), "owner-dead.lock", executable);
+
+        //when
+        final int killed = OrphanReaper.reap(dir.toPath());
+
+        //then
+        assertEquals(1, killed);
+        assertTrue(process.waitFor(10, TimeUnit.SECONDS));
+        assertFalse(pidFile.exists());
+        assertFalse(new File(dir, "owner-dead.lock").exists());
+    }
+
+    @Test
+    public void reapShouldSparePidsReusedByOtherExecutables() throws Exception {
+        //given
+        final String executable = RedisExecProvider.defaultProvider().get().getAbsolutePath();
+        process = new ProcessBuilder("sleep", "30").start();
+        final File pidFile = writePidFile(ProcessUtil.pid(process), "owner-dead.lock", executable);
+
+        //when
+        final int killed = OrphanReaper.reap(dir.toPath());
+
+        //then
+        assertEquals(0, killed);
+        assertTrue(process.isAlive());
+        assertFalse(pidFile.exists());
+    }
+
+    @Test
+    public void reapShouldSpareProcessesOfLiveOwners() throws Exception {
+        //given
+        process = new ProcessBuilder("sleep", "30").start();
+        final File owner = new File(dir, "owner-live.lock");
+        final File pidFile = writePidFile(ProcessUtil.pid(process), owner.getName(), "/bin/sleep");
+
+        try (FileChannel channel = new FileOutputStream(owner).getChannel(); FileLock lock = channel.lock()) {
+            //when
+            final int killed = OrphanReaper.reap(dir.toPath());
+
+            //then
+            assertEquals(0, killed);
+            assertTrue(process.isAlive());
+            assertTrue(pidFile.exists());
+        }
+    }
+
+    @Test
+    public void reapShouldSpareProcessesOfOwnersLockedByOtherJvms() throws Exception {
+        //given
+        process = new ProcessBuilder("sleep", "30").start();
+        final File owner = new File(dir, "owner-other-jvm.lock");
+        final File pidFile = writePidFile(ProcessUtil.pid(process), owner.getName(), "/bin/sleep");
+        final String java = new File(System.getProperty("java.home"), "bin/java").getAbsolutePath();
+        lockHolder = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                LockHolder.class.getName(), owner.getAbsolutePath()).start();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(lockHolder.getInputStream(), StandardCharsets.UTF_8))) {
+            assertEquals("locked", reader.readLine());
+
+            //when
+            final int killed = OrphanReaper.reap(dir.toPath());
+
+            //then
+            assertEquals(0, killed);
+            assertTrue(process.isAlive());
+            assertTrue(pidFile.exists());
+            assertTrue(owner.exists());
+        }
+    }
+
+    @Test
+    public void reapShouldDeleteStaleOwnerFilesThatWereNeverRenamed() throws Exception {
+        //given
+        final File stale = new File(dir, "stale.owner-tmp");
+        final File fresh = new File(dir, "fresh.owner-tmp");
+        final File locked = new File(dir, "locked.owner-tmp");
+        assertTrue(stale.createNewFile());
+        assertTrue(fresh.createNewFile());
+        assertTrue(locked.createNewFile());
+        final long old = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(5);
+        assertTrue(stale.setLastModified(old));
+        assertTrue(locked.setLastModified(old));
+
+        try (FileChannel channel = new FileOutputStream(locked, true).getChannel(); FileLock lock = channel.lock()) {
+            //when
+            OrphanReaper.reap(dir.toPath());
+
+            //then
+            assertFalse(stale.exists());
+            assertTrue(fresh.exists());
+            assertTrue(locked.exists());
+        }
+    }
+
+    private File writePidFile(long pid, String owner, String executable) throws Exception {
+        final Properties properties = new Properties();
+        properties.setProperty("owner", owner);
+        properties.setProperty("executable", executable);
+        final File pidFile = new File(dir, pid + ".pid");
+        try (OutputStream out = new FileOutputStream(pidFile)) {
+            properties.store(out, null);
+        }
+        return pidFile;
+    }
+
+    /**
+     * Holds a lock on the file given as its only argument until it is killed, like the owner file of
+     * another JVM.
+     */
+    public static class LockHolder {
+        public static void main(String[] args) throws Exception {
+            final FileChannel channel = FileChannel.open(Paths.get(args[0]), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            final FileLock lock = channel.lock();
+            System.out.println("locked");
+            System.out.flush();
+            while (lock.isValid()) {
+                Thread.sleep(1000L);
+            }
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package redis.embedded;
+
+import org.junit.After;
+import org.junit.Test;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisCluster;
+import redis.clients.util.JedisClusterCRC16;
+import redis.embedded.exceptions.EmbeddedRedisException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class RedisClusterResharderTest {
+    private RedisShardedCluster cluster;
+
+    @After
+    public void tearDown() throws Exception {
+        if (cluster != null) {
+            cluster.stop();
+        }
+    }
+
+    @Test(timeout = 60000L)
+    public void shouldMigrateSlotsWithTheirKeys() throws Exception {
+        //given
+        cluster = RedisShardedCluster.builder()
+                .shards(2)
+                .startingPort(7400)
+                .build();
+        cluster.start();
+        int keysInRange = 0;
+        try (JedisCluster jedis = new JedisCluster(new HostAndPort("localhost", 7400))) {
+            for (int i = 0; i < 500; i++) {
+                jedis.set("key" + i, "value" + i);
+                if (RedisShardedCluster.slot("key" + i) < 1000) {
+                    keysInRange++;
+                }
+            }
+        }
+        RedisClusterShard target = cluster.shards().get(1);
+
+        //when
+        MigrationReport report = cluster.resharder()
+                .batchSize(10)
+                .measureBytes(true)
+                .migrate(0, 999, target);
+
+        //then
+        assertEquals(1000, report.slots());
+        assertEquals(keysInRange, report.keys());
+        assertTrue(report.bytes() > 0);
+        assertTrue(report.keysPerSecond() > 0);
+        assertTrue(target.ownsSlot(0));
+        assertTrue(target.ownsSlot(999));
+        assertFalse(cluster.shards().get(0).ownsSlot(999));
+        try (JedisCluster jedis = new JedisCluster(new HostAndPort("localhost", 7400))) {
+            for (int i = 0; i < 500; i++) {
+                assertEquals("value" + i, jedis.get("key" + i));
+            }
+        }
+    }
+
+    @Test(timeout = 60000L)
+    public void failedMigrationShouldLeaveNoOpenSlot() throws Exception {
+        //given
+        cluster = RedisShardedCluster.builder()
+                .shards(2)
+                .startingPort(7450)
+                .build();
+        cluster.start();
+        // not valid UTF-8, so MIGRATE cannot find the key under the name GETKEYSINSLOT returns
+        byte[] key = {(byte) 0xff, (byte) 0xfe};
+        int slot = JedisClusterCRC16.getSlot(key);
+        try (JedisCluster jedis = new JedisCluster(new HostAndPort("localhost", 7450))) {
+            jedis.set(key, "value".getBytes(StandardCharsets.UTF_8));
+        }
+        RedisClusterShard source = cluster.shards().get(0).ownsSlot(slot) ? cluster.shards().get(0) : cluster.shards().get(1);
+        RedisClusterShard target = source == cluster.shards().get(0) ? cluster.shards().get(1) : cluster.shards().get(0);
+
+        //when
+        try {
+            cluster.resharder().migrate(slot, slot, target);
+            fail("The migration should not make progress");
+        } catch (EmbeddedRedisException e) {
+            assertTrue(e.getMessage().contains("slot " + slot));
+        }
+
+        //then
+        assertTrue(source.ownsSlot(slot));
+        for (RedisClusterShard shard : cluster.shards()) {
+            try (Jedis jedis = new Jedis("localhost", shard.masterPort())) {
+                assertFalse(jedis.clusterNodes(), jedis.clusterNodes().contains("["));
+            }
+        }
+    }
+
+    @Test(timeout = 120000L)
+    public void shouldAddAndRemoveShardsUnderLoad() throws Exception {
+        //given
+        cluster = RedisShardedCluster.builder()
+                .shards(2)
+                .startingPort(7500)
+                .build();
+        cluster.start();
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicInteger written = new AtomicInteger();
+        AtomicReference<Exception> failure = new AtomicReference<Exception>();
+        Thread load = new Thread(() -> {
+            try (JedisCluster jedis = new JedisCluster(new HostAndPort("localhost", 7500))) {
+                while (running.get()) {
+                    int i = written.get();
+                    jedis.set("key" + i, "value" + i);
+                    written.incrementAndGet();
+                }
+            } catch (Exception e) {
+                failure.set(e);
+            }
+        });
+        load.start();
+
+        //when
+        MigrationReport added = cluster.resharder().addShard();
+        int writtenBeforeRemoval = written.get();
+        // keeps the node the load client was seeded with
+        RedisClusterShard removed = cluster.shards().get(1);
+        MigrationReport removal = cluster.resharder().removeShard(removed);
+        int writtenAfterRemoval = written.get();
+        running.set(false);
+        load.join();
+
+        //then
+        assertNull(failure.get());
+        assertTrue("no writes while the shard was removed", writtenAfterRemoval > writtenBeforeRemoval);
+        assertEquals(RedisShardedCluster.SLOTS - 2 * (RedisShardedCluster.SLOTS / 3), added.slots());
+        assertTrue(added.keys() > 0);
+        assertEquals(RedisShardedCluster.SLOTS / 3, removal.slots());
+        assertEquals(-1, removal.bytes());
+        assertEquals(2, cluster.shards().size());
+        assertFalse(cluster.shards().contains(removed));
+        assertFalse(removed.master().isActive());
+        try (JedisCluster jedis = new JedisCluster(new HostAndPort("localhost", cluster.shards().get(0).masterPort()))) {
+            for (int i = 0; i < written.get(); i++) {
+                assertEquals("value" + i, jedis.get("key" + i));
+            }
+        }
+    }
+}
@@ -6,17 +6,28 @@ import org.junit.Before;
 import org.junit.Test;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisSentinelPool;
+import redis.embedded.exceptions.EmbeddedRedisException;
+import redis.embedded.stop.ShutdownNoSaveStopStrategy;
 import redis.embedded.util.JedisUtil;
 
 import java.io.Closeable;
 import java.net.Inet4Address;
+import java.time.Duration;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 
 public class RedisClusterTest {
@@ -65,6 +76,26 @@ public class RedisClusterTest {
         }
     }
 
+    @Test
+    public void stopWithStrategyShouldStopEntireClusterWithThatStrategy() throws Exception {
+        //given
+        final List<Redis> sentinels = Arrays.asList(sentinel1, sentinel2);
+        final List<Redis> servers = Arrays.asList(master1, master2);
+        instance = new RedisCluster(sentinels, servers);
+        final StopStrategy strategy = new ShutdownNoSaveStopStrategy();
+
+        //when
+        instance.stop(strategy);
+
+        //then
+        for(Redis s : sentinels) {
+            verify(s).stop(strategy);
+        }
+        for(Redis s : servers) {
+            verify(s).stop(strategy);
+        }
+    }
+
     @Test
     public void startShouldStartEntireCluster() throws Exception {
         //given
@@ -84,6 +115,29 @@ public class RedisClusterTest {
         }
     }
 
+    @Test
+    public void startShouldStopStartedInstancesWhenAnyInstanceFailsToStart() throws Exception {
+        //given
+        final List<Redis> sentinels = Arrays.asList(sentinel1, sentinel2);
+        final List<Redis> servers = Arrays.asList(master1, master2);
+        doThrow(new EmbeddedRedisException("boom")).when(master2).start();
+        instance = new RedisCluster(sentinels, servers, Collections.<Redis>emptyList(), 2);
+
+        //when
+        try {
+            instance.start();
+            fail("Cluster start should fail");
+        } catch (EmbeddedRedisException expected) {
+        }
+
+        //then
+        verify(master1).stop();
+        verify(master2, never()).stop();
+        for(Redis s : sentinels) {
+            verify(s, never()).start();
+        }
+    }
+
     @Test
     public void isActiveShouldCheckEntireClusterIfAllActive() throws Exception {
         //given
@@ -266,6 +320,164 @@ public class RedisClusterTest {
         }
     }
 
+    @Test
+    public void testSimpleOperationsAfterRunWithDiscoveredPorts() throws Exception {
+        //given
+        final RedisCluster cluster = RedisCluster.builder().withSentinelBuilder(sentinelBuilder).discovered().sentinelCount(2)
+                .replicationGroup("ourmaster", 1)
+                .build();
+        assertEquals(Collections.<Integer>emptyList(), cluster.ports());
+        cluster.start();
+
+        //when
+        JedisSentinelPool pool = null;
+        Jedis jedis = null;
+        try {
+            assertEquals(4, cluster.ports().size());
+            pool = new JedisSentinelPool("ourmaster", JedisUtil.sentinelHosts(cluster));
+            jedis = testPool(pool);
+
+            //then
+            assertEquals(cluster.serverPorts().get(0), Integer.valueOf(pool.getCurrentHostMaster().getPort()));
+        } finally {
+            closeQuietly(jedis, pool);
+            cluster.stop();
+        }
+    }
+
+    @Test
+    public void fixedServerPortsShouldOverrideDiscoverPortOfServerBuilder() throws Exception {
+        //given
+        final List<Integer> serverPorts = Arrays.asList(6391, 6392);
+        final RedisCluster cluster = RedisCluster.builder().withSentinelBuilder(sentinelBuilder)
+                .withServerBuilder(RedisServer.builder().discoverPort())
+                .sentinelPorts(Collections.singletonList(26383)).serverPorts(serverPorts)
+                .replicationGroup("ourmaster", 1)
+                .build();
+        cluster.start();
+
+        //when
+        JedisSentinelPool pool = null;
+        Jedis jedis = null;
+        try {
+            pool = new JedisSentinelPool("ourmaster", JedisUtil.portsToJedisHosts(Collections.singletonList(26383)));
+            jedis = testPool(pool);
+
+            //then
+            assertEquals(serverPorts, cluster.serverPorts());
+            assertEquals(6391, pool.getCurrentHostMaster().getPort());
+        } finally {
+            closeQuietly(jedis, pool);
+            cluster.stop();
+        }
+    }
+
+    @Test
+    public void replicasShouldHaveSyncedWhenClusterHasStarted() throws Exception {
+        //given
+        final RedisCluster cluster = RedisCluster.builder().withSentinelBuilder(sentinelBuilder).discovered().sentinelCount(1)
+                .replicationGroup("ourmaster", 2)
+                .build();
+
+        //when
+        cluster.start();
+
+        //then
+        try {
+            final Map<Redis, Duration> syncTimes = cluster.replicaSyncTimes();
+            assertEquals(2, syncTimes.size());
+            for (Redis replica : syncTimes.keySet()) {
+                try (Jedis jedis = new Jedis("localhost", replica.ports().get(0))) {
+                    assertTrue(jedis.info("replication").contains("master_link_status:up"));
+                }
+            }
+        } finally {
+            cluster.stop();
+        }
+    }
+
+    @Test(timeout = 60000L)
+    public void sentinelsShouldAgreeOnTopologyAfterConvergence() throws Exception {
+        //given
+        final RedisCluster cluster = RedisCluster.builder().withSentinelBuilder(sentinelBuilder).discovered().sentinelCount(3).quorumSize(2)
+                .replicationGroup("master1", 2)
+                .replicationGroup("master2", 1)
+                .build();
+        cluster.start();
+
+        //when
+        try {
+            cluster.awaitSentinelConvergence();
+
+            //then
+            for (int port : cluster.sentinelPorts()) {
+                try (Jedis sentinel = new Jedis("localhost", port)) {
+                    assertEquals(2, sentinel.sentinelSlaves("master1").size());
+                    assertEquals(1, sentinel.sentinelSlaves("master2").size());
+                    assertEquals(2, sentinel.sentinelMasters().size());
+                }
+            }
+        } finally {
+            cluster.stop();
+        }
+    }
+
+    @Test(timeout = 60000L)
+    public void killingMasterShouldFailOverWithPerGroupTiming() throws Exception {
+        //given
+        final RedisCluster cluster = RedisCluster.builder().withSentinelBuilder(sentinelBuilder).discovered().sentinelCount(3).quorumSize(2)
+                .replicationGroup("fast", 1, 500L, 5000L)
+                .replicationGroup("slow", 1)
+                .build();
+        cluster.start();
+
+        try {
+            //when
+            final FailoverReport report = cluster.failover("fast", FailoverTrigger.KILL_MASTER);
+
+            //then
+            assertNotEquals(report.oldMasterPort(), report.newMasterPort());
+            assertTrue(report.detection().isPresent());
+            assertTrue(report.election().isPresent());
+            assertTrue(report.promotion().isPresent());
+            assertTrue(report.downtime().compareTo(report.total()) <= 0);
+            try (Jedis sentinel = new Jedis("localhost", cluster.sentinelPorts().get(0))) {
+                assertEquals(Integer.toString(report.newMasterPort()), sentinel.sentinelGetMasterAddrByName("fast").get(1));
+                for (Map<String, String> master : sentinel.sentinelMasters()) {
+                    assertEquals("fast".equals(master.get("name")) ? "500" : "60000", master.get("down-after-milliseconds"));
+                }
+            }
+            try (Jedis jedis = new Jedis("localhost", report.newMasterPort())) {
+                assertEquals("OK", jedis.set("abc", "1"));
+            }
+        } finally {
+            cluster.stop();
+        }
+    }
+
+    @Test(timeout = 60000L)
+    public void sentinelFailoverShouldPromoteReplica() throws Exception {
+        //given
+        final RedisCluster cluster = RedisCluster.builder().withSentinelBuilder(sentinelBuilder).discovered().sentinelCount(1)
+                .replicationGroup("ourmaster", 1, 1000L, 5000L)
+                .build();
+        cluster.start();
+
+        try {
+            //when
+            final FailoverReport report = cluster.failover("ourmaster", FailoverTrigger.SENTINEL_FAILOVER);
+
+            //then
+            assertFalse(report.detection().isPresent());
+            assertEquals(cluster.serverPorts().get(1), Integer.valueOf(report.newMasterPort()));
+            try (Jedis jedis = new Jedis("localhost", report.newMasterPort())) {
+                assertTrue(jedis.info("replication").contains("role:master"));
+            }
+        } finally {
+            cluster.stop();
+        }
+    }
+
     private Jedis testPool(JedisSentinelPool pool) {
         Jedis jedis;
         jedis = pool.getResource();
@@ -0,0 +1,121 @@
+package redis.embedded;
+
+import org.junit.Test;
+import redis.embedded.exceptions.RedisBuildingException;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class RedisConfigTest {
+
+    @Test
+    public void shouldRenderTheSameRegardlessOfOrder() {
+        //given
+        RedisConfig first = RedisConfig.builder()
+                .maxmemory("128mb")
+                .appendonly(false)
+                .line("loglevel warning")
+                .build();
+        RedisConfig second = RedisConfig.builder()
+                .line("LOGLEVEL warning")
+                .appendonly(false)
+                .maxmemory("128mb")
+                .build();
+
+        //then
+        assertEquals("appendonly no\nloglevel warning\nmaxmemory 128mb\n", first.render());
+        assertEquals(first, second);
+        assertEquals(first.hash(), second.hash());
+    }
+
+    @Test
+    public void shouldKeepRepeatableDirectivesInOrder() {
+        //given
+        RedisConfig config = RedisConfig.builder()
+                .save(900, 1)
+                .save(60, 10000)
+                .add("rename-command", "FLUSHALL", "")
+                .build();
+
+        //then
+        assertEquals(Arrays.asList("900 1", "60 10000"), config.getAll("save"));
+        assertEquals("rename-command FLUSHALL \"\"\nsave 900 1\nsave 60 10000\n", config.render());
+    }
+
+    @Test
+    public void overridesShouldReplaceWholeDirectives() {
+        //given
+        RedisConfig base = RedisConfig.builder()
+                .maxmemory(1024)
+                .maxmemoryPolicy(RedisConfig.MaxmemoryPolicy.NOEVICTION)
+                .save(900, 1)
+                .save(60, 10000)
+                .build();
+        RedisConfig overrides = RedisConfig.builder()
+                .maxmemoryPolicy(RedisConfig.MaxmemoryPolicy.ALLKEYS_LRU)
+                .disableSnapshots()
+                .build();
+
+        //when
+        RedisConfig merged = base.with(overrides);
+
+        //then
+        assertEquals("1024", merged.get("maxmemory").get());
+        assertEquals("allkeys-lru", merged.get("maxmemory-policy").get());
+        assertEquals(Arrays.asList("\"\""), merged.getAll("save"));
+        assertEquals(merged, base.toBuilder().apply(overrides).build());
+        assertEquals(2, base.diff(merged).entriesDiffering().size());
+        assertNotEquals(base.hash(), merged.hash());
+    }
+
+    @Test(expected = RedisBuildingException.class)
+    public void shouldRejectUnknownDirectives() {
+        RedisConfig.builder().line("maxmemroy 128mb");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectInvalidTypedValues() {
+        RedisConfig.builder().ioThreads(0);
+    }
+
+    @Test
+    public void shouldParseWhatItRenders() {
+        //given
+        RedisConfig config = RedisConfig.builder()
+                .bind("127.0.0.1", "::1")
+                .ioThreads(4)
+                .ioThreadsDoReads(true)
+                .appendfsync(RedisConfig.AppendFsync.EVERYSEC)
+                .line("loadmodule /opt/redis/module.so")
+                .custom("some-future-directive", "a value")
+                .build();
+
+        //when
+        String rendered = config.render();
+
+        //then
+        assertTrue(rendered.startsWith("loadmodule /opt/redis/module.so\n"));
+        assertTrue(rendered.contains("some-future-directive \"a value\"\n"));
+        assertEquals(config.toBuilder().remove("some-future-directive").build(),
+                RedisConfig.parse("# comment\n\n" + rendered.replace("some-future-directive \"a value\"\n", "")));
+    }
+
+    @Test
+    public void shouldShareWrittenFilesBetweenEqualConfigs() throws Exception {
+        //given
+        Path directory = Files.createTempDirectory("redis-config");
+        RedisConfig config = RedisConfig.builder().maxmemory("1gb").build();
+
+        //when
+        Path first = config.writeTo(directory);
+        Path second = RedisConfig.parse("maxmemory 1gb").writeTo(directory);
+
+        //then
+        assertEquals(first, second);
+        assertEquals(config.hash() + ".conf", first.getFileName().toString());
+        assertEquals("maxmemory 1gb\n", new String(Files.readAllBytes(first), "UTF-8"));
+    }
+}
@@ -0,0 +1,69 @@
+package redis.embedded;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RedisInstanceRegistryTest {
+
+    @Test
+    public void liveInstancesShouldListStartedInstancesUntilStopped() throws Exception {
+        //given
+        RedisServer first = new RedisServer(6379);
+        RedisServer second = new RedisServer(6380);
+        first.start();
+        second.start();
+
+        try {
+            //when
+            RedisInstanceRegistry.LiveInstance entry = find(first);
+
+            //then
+            assertEquals(first.pid(), entry.pid());
+            assertEquals(Arrays.asList(6379), entry.ports());
+            assertTrue(entry.isProcessAlive());
+            assertNotNull(find(second));
+
+            second.stop();
+            assertNull(find(second));
+        } finally {
+            first.stop();
+            second.stop();
+        }
+        assertNull(find(first));
+    }
+
+    @Test
+    public void stopAllShouldStopEveryLiveInstance() throws Exception {
+        //given
+        List<RedisServer> servers = Arrays.asList(new RedisServer(6379), new RedisServer(6380), new RedisServer(6381));
+        for (RedisServer server : servers) {
+            server.start();
+        }
+
+        //when
+        RedisInstanceRegistry.stopAll();
+
+        //then
+        for (RedisServer server : servers) {
+            assertFalse(server.isActive());
+            assertNull(find(server));
+        }
+    }
+
+    private static RedisInstanceRegistry.LiveInstance find(Redis redis) {
+        for (RedisInstanceRegistry.LiveInstance entry : RedisInstanceRegistry.liveInstances()) {
+            if (entry.instance() == redis) {
+                return entry;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,90 @@
+package redis.embedded;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RedisServerClonerTest {
+    private static final int KEYS = 10000;
+
+    private RedisServer template;
+    private List<RedisServerClone> clones;
+
+    @Before
+    public void setUp() throws Exception {
+        template = new RedisServer(6379);
+        template.start();
+        try (Jedis jedis = new Jedis("localhost", 6379)) {
+            Pipeline pipeline = jedis.pipelined();
+            for (int i = 0; i < KEYS; i++) {
+                pipeline.set("key:" + i, "value:" + i);
+            }
+            pipeline.sync();
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (clones != null) {
+            for (RedisServerClone clone : clones) {
+                clone.server().stop();
+            }
+        }
+        template.stop();
+    }
+
+    @Test
+    public void cloneShouldCopyDatasetIntoIndependentMasters() throws Exception {
+        //when
+        clones = new RedisServerCloner(template).clone(3);
+
+        //then
+        assertEquals(3, clones.size());
+        for (RedisServerClone clone : clones) {
+            try (Jedis jedis = new Jedis("localhost", clone.port())) {
+                assertEquals(KEYS, jedis.dbSize().longValue());
+                assertTrue(jedis.info("replication").contains("role:master"));
+                jedis.set("key:0", "changed");
+            }
+            assertTrue(clone.syncBytes() > 0);
+            assertTrue(clone.syncBytesPerSecond() > 0);
+        }
+        try (Jedis jedis = new Jedis("localhost", 6379)) {
+            assertEquals("value:0", jedis.get("key:0"));
+            assertTrue(jedis.info("replication").contains("connected_slaves:0"));
+        }
+    }
+
+    @Test
+    public void cloneShouldRestoreTemplateReplicationSettings() throws Exception {
+        //when
+        clones = new RedisServerCloner(template).clone(1);
+
+        //then
+        try (Jedis jedis = new Jedis("localhost", 6379)) {
+            assertEquals("5", jedis.configGet("repl-diskless-sync-delay").get(1));
+            assertEquals("0", jedis.configGet("repl-diskless-sync-max-replicas").get(1));
+        }
+    }
+
+    @Test
+    public void cloneShouldKeepServerBuilderSettings() throws Exception {
+        //when
+        clones = new RedisServerCloner(template)
+                .withServerBuilder(RedisServer.builder().setting("maxmemory-policy allkeys-lru"))
+                .clone(1);
+
+        //then
+        try (Jedis jedis = new Jedis("localhost", clones.get(0).port())) {
+            assertEquals(KEYS, jedis.dbSize().longValue());
+            assertEquals("allkeys-lru", jedis.configGet("maxmemory-policy").get(1));
+        }
+    }
+}
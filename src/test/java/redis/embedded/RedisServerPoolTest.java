@@ -0,0 +1,143 @@
+package redis.embedded;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import redis.clients.jedis.Jedis;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class RedisServerPoolTest {
+    private RedisServerPool pool;
+
+    @Before
+    public void setUp() throws Exception {
+        pool = RedisServerPool.builder()
+                .minIdle(1)
+                .maxSize(4)
+                .build();
+        pool.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        pool.close();
+    }
+
+    @Test
+    public void acquireShouldLeaseStartedServer() throws Exception {
+        try (RedisServerLease lease = pool.acquire();
+             Jedis jedis = new Jedis("localhost", lease.port())) {
+            assertTrue(lease.server().isActive());
+            assertEquals("PONG", jedis.ping());
+        }
+        assertEquals(1, pool.stats().leases());
+    }
+
+    @Test
+    public void returnedServerShouldBeResetBeforeReuse() throws Exception {
+        //given
+        final RedisServer first;
+        try (RedisServerLease lease = pool.acquire();
+             Jedis jedis = new Jedis("localhost", lease.port())) {
+            first = lease.server();
+            jedis.set("abc", "1");
+            jedis.configSet("maxmemory-policy", "allkeys-lru");
+        }
+
+        //when
+        RedisServerLease lease = pool.acquire();
+        while (lease.server() != first) {
+            // the first server may still be resetting; keep the other lease so the pool has to reuse it
+            RedisServerLease other = pool.acquire();
+            lease.close();
+            lease = other;
+        }
+
+        //then
+        try (Jedis jedis = new Jedis("localhost", lease.port())) {
+            assertSame(first, lease.server());
+            assertNull(jedis.get("abc"));
+            assertEquals("noeviction", jedis.configGet("maxmemory-policy").get(1));
+        } finally {
+            lease.close();
+        }
+    }
+
+    @Test
+    public void statsShouldCountHitsAndMisses() throws Exception {
+        //given
+        try (RedisServerLease lease = pool.acquire()) {
+            lease.port();
+        }
+        awaitIdleServer(pool);
+
+        //when
+        try (RedisServerLease lease = pool.acquire()) {
+            assertTrue(lease.isHit());
+        }
+
+        //then
+        RedisServerPoolStats stats = pool.stats();
+        assertEquals(2, stats.leases());
+        assertTrue(stats.hits() >= 1);
+        assertFalse(stats.maxLeaseWait().isNegative());
+    }
+
+    @Test
+    public void pooledServersShouldKeepTemplateSettings() throws Exception {
+        //given
+        final RedisServerPool configured = RedisServerPool.builder()
+                .withServerBuilder(RedisServer.builder().setting("maxmemory-policy allkeys-lru"))
+                .minIdle(0)
+                .maxSize(1)
+                .build();
+        configured.start();
+
+        //when
+        try (RedisServerLease lease = configured.acquire();
+             Jedis jedis = new Jedis("localhost", lease.port())) {
+
+            //then
+            assertEquals("allkeys-lru", jedis.configGet("maxmemory-policy").get(1));
+        } finally {
+            configured.close();
+        }
+    }
+
+    @Test(timeout = 60000L)
+    public void poolShouldShrinkBackAfterBurst() throws Exception {
+        //given
+        final List<RedisServerLease> burst = new ArrayList<RedisServerLease>();
+        for (int i = 0; i < 4; i++) {
+            burst.add(pool.acquire());
+        }
+
+        //when
+        for (RedisServerLease lease : burst) {
+            lease.close();
+        }
+
+        //then
+        while (pool.stats().idle() + pool.stats().starting() > 2) {
+            Thread.sleep(100L);
+        }
+        assertTrue(pool.stats().retired() >= 2);
+    }
+
+    private static void awaitIdleServer(RedisServerPool pool) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (pool.stats().idle() == 0) {
+            assertTrue("No pooled server became idle in time", System.nanoTime() < deadline);
+            Thread.sleep(10L);
+        }
+    }
+}
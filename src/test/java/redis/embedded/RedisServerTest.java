@@ -4,13 +4,36 @@ import com.google.common.io.Resources;
 import org.junit.Test;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
+import redis.embedded.affinity.SpreadingCpuAffinity;
+import redis.embedded.affinity.Taskset;
+import redis.embedded.exceptions.EmbeddedRedisException;
 import redis.embedded.exceptions.RedisBuildingException;
+import redis.embedded.ports.PredefinedPortProvider;
+import redis.embedded.readiness.LogLineReadinessStrategy;
+import redis.embedded.stop.KillStopStrategy;
+import redis.embedded.stop.ShutdownNoSaveStopStrategy;
 import redis.embedded.util.Architecture;
 import redis.embedded.util.OS;
+import redis.embedded.util.OSDetector;
+import redis.embedded.util.RespClient;
+import redis.embedded.util.UnixSockets;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.*;
 
@@ -94,6 +117,557 @@ public class RedisServerTest {
         assertFalse(redisServer.isActive());
     }
 
+    @Test
+    public void startAsyncShouldCompleteOnceServerIsReady() throws Exception {
+        redisServer = new RedisServer(6379);
+        try {
+            RedisServer started = redisServer.startAsync().get(10, TimeUnit.SECONDS);
+            assertSame(redisServer, started);
+            assertTrue(started.isActive());
+            assertTrue(started.pid() > 0);
+            assertEquals(Collections.singletonList(6379), started.ports());
+        } finally {
+            redisServer.stopAsync().get(10, TimeUnit.SECONDS);
+        }
+        assertFalse(redisServer.isActive());
+    }
+
+    @Test
+    public void startAsyncShouldFailWhenAlreadyRunning() throws Exception {
+        redisServer = new RedisServer(6379);
+        redisServer.start();
+        try {
+            redisServer.startAsync().get(10, TimeUnit.SECONDS);
+            fail("Second start should fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof EmbeddedRedisException);
+        } finally {
+            redisServer.stop();
+        }
+    }
+
+    @Test(timeout = 10000L)
+    public void shouldBecomeReadyWhenReadinessLogLineIsNotPrinted() throws Exception {
+        redisServer = RedisServer.builder()
+                .port(6379)
+                .setting("loglevel warning")
+                .build();
+        redisServer.start();
+        try {
+            assertTrue(redisServer.isActive());
+        } finally {
+            redisServer.stop();
+        }
+    }
+
+    @Test
+    public void shouldApplyTypedConfig() throws Exception {
+        RedisConfig base = RedisConfig.builder()
+                .maxmemory("64mb")
+                .maxmemoryPolicy(RedisConfig.MaxmemoryPolicy.NOEVICTION)
+                .build();
+        redisServer = RedisServer.builder()
+                .port(6379)
+                .config(base)
+                .config(RedisConfig.builder().maxmemoryPolicy(RedisConfig.MaxmemoryPolicy.ALLKEYS_LRU).build())
+                .build();
+        redisServer.start();
+        try (Jedis jedis = new Jedis("localhost", 6379)) {
+            assertEquals(Arrays.asList("maxmemory", "67108864"), jedis.configGet("maxmemory"));
+            assertEquals(Arrays.asList("maxmemory-policy", "allkeys-lru"), jedis.configGet("maxmemory-policy"));
+        } finally {
+            redisServer.stop();
+        }
+    }
+
+    @Test
+    public void shouldPinServerToItsCpus() throws Exception {
+        redisServer = RedisServer.builder()
+                .port(6379)
+                .ioThreads(2)
+                .ioThreadsDoReads(true)
+                .cpuAffinity(new SpreadingCpuAffinity())
+                .build();
+        redisServer.start();
+        try (Jedis jedis = new Jedis("localhost", 6379)) {
+            assertEquals(Arrays.asList("io-threads", "2"), jedis.configGet("io-threads"));
+            assertEquals(Arrays.asList("io-threads-do-reads", "yes"), jedis.configGet("io-threads-do-reads"));
+            assertEquals(Taskset.isAvailable(), redisServer.cpuSet().isPresent());
+            if (Taskset.isAvailable()) {
+                List<String> status = Files.readAllLines(Paths.get("/proc/" + redisServer.pid() + "/status"));
+                assertTrue(status.contains("Cpus_allowed_list:\t" + redisServer.cpuSet().get().toList()));
+            }
+        } finally {
+            redisServer.stop();
+        }
+    }
+
+    @Test
+    public void shouldCapServersUnderMemoryBudget() throws Exception {
+        MemoryBudget budget = new MemoryBudget(100L * 1024 * 1024);
+        RedisServer first = RedisServer.builder().port(6379).memoryBudget(budget, 64L * 1024 * 1024).build();
+        RedisServer second = RedisServer.builder().port(6380).memoryBudget(budget, 64L * 1024 * 1024).build();
+        first.start();
+        try (Jedis jedis = new Jedis("localhost", 6379)) {
+            assertEquals(Arrays.asList("maxmemory", "67108864"), jedis.configGet("maxmemory"));
+            assertEquals(Arrays.asList("maxmemory-policy", "noeviction"), jedis.configGet("maxmemory-policy"));
+            try {
+                second.start();
+                fail();
+            } catch (EmbeddedRedisException e) {
+                assertFalse(second.isActive());
+            }
+            assertEquals(1, budget.usage().instances());
+            if (OS.UNIX == OSDetector.getOS()) {
+                assertTrue(budget.usage().residentBytes() > 0);
+            }
+        } finally {
+            first.stop();
+        }
+        second.start();
+        second.stop();
+        assertEquals(0, budget.usage().reservedBytes());
+    }
+
+    @Test
+    public void shouldQueueStartsUntilBudgetIsReleased() throws Exception {
+        MemoryBudget budget = new MemoryBudget(100L * 1024 * 1024, Duration.ofSeconds(30));
+        RedisServer first = RedisServer.builder().port(6379).memoryBudget(budget, 64L * 1024 * 1024).build();
+        RedisServer second = RedisServer.builder().port(6380).memoryBudget(budget, 64L * 1024 * 1024).build();
+        first.start();
+        CompletableFuture<? extends Redis> queued = second.startAsync();
+        try {
+            assertFalse(queued.isDone());
+            assertEquals(1, budget.usage().waiting());
+            first.stop();
+            queued.get(10, TimeUnit.SECONDS);
+            assertTrue(second.isActive());
+        } finally {
+            first.stop();
+            second.stop();
+        }
+    }
+
+    @Test
+    public void waitForMemoryShouldNotCountAgainstStartupTimeout() throws Exception {
+        MemoryBudget budget = new MemoryBudget(100L * 1024 * 1024, Duration.ofSeconds(30));
+        RedisServer first = RedisServer.builder().port(6379).memoryBudget(budget, 64L * 1024 * 1024).build();
+        RedisServer second = RedisServer.builder().port(6380).memoryBudget(budget, 64L * 1024 * 1024)
+                .startupTimeoutMilliseconds(1000L).build();
+        first.start();
+        try {
+            CompletableFuture<? extends Redis> queued = second.startAsync();
+            // longer than the startup timeout
+            Thread.sleep(1500L);
+            assertFalse(queued.isDone());
+            first.stop();
+            queued.get(10, TimeUnit.SECONDS);
+
+            StartupReport report = second.startupReport();
+            assertTrue(report.duration(StartupPhase.QUEUE).get().toMillis() >= 1500L);
+            assertFalse(report.overrunPhase().isPresent());
+        } finally {
+            first.stop();
+            second.stop();
+        }
+    }
+
+    @Test
+    public void stoppingQueuedStartShouldGiveUpItsPlace() throws Exception {
+        MemoryBudget budget = new MemoryBudget(100L * 1024 * 1024, Duration.ofSeconds(30));
+        RedisServer first = RedisServer.builder().port(6379).memoryBudget(budget, 64L * 1024 * 1024).build();
+        RedisServer second = RedisServer.builder().port(6380).memoryBudget(budget, 64L * 1024 * 1024).build();
+        first.start();
+        try {
+            CompletableFuture<? extends Redis> queued = second.startAsync();
+            second.stop();
+            assertTrue(queued.isCompletedExceptionally());
+            assertEquals(0, budget.usage().waiting());
+            assertFalse(second.isActive());
+        } finally {
+            first.stop();
+        }
+        assertEquals(0, budget.usage().reservedBytes());
+    }
+
+    @Test
+    public void stoppingAdmittedStartShouldNotLeaveProcessBehind() throws Exception {
+        MemoryBudget budget = new MemoryBudget(100L * 1024 * 1024, Duration.ofSeconds(30));
+        RedisServer first = RedisServer.builder().port(6379).memoryBudget(budget, 64L * 1024 * 1024).build();
+        RedisServer second = RedisServer.builder().port(6380).memoryBudget(budget, 64L * 1024 * 1024).build();
+        first.start();
+        CompletableFuture<? extends Redis> queued = second.startAsync();
+
+        // admits the queued start, which the stop below may catch before or after it spawned
+        first.stop();
+        second.stop();
+
+        try {
+            queued.get(10, TimeUnit.SECONDS);
+            second.stop();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof EmbeddedRedisException);
+        }
+        assertFalse(second.isActive());
+        for (RedisInstanceRegistry.LiveInstance live : RedisInstanceRegistry.liveInstances()) {
+            assertNotSame(second, live.instance());
+        }
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (budget.usage().reservedBytes() > 0) {
+            assertTrue(System.nanoTime() < deadline);
+            Thread.sleep(10L);
+        }
+    }
+
+    @Test(expected = RedisBuildingException.class)
+    public void shouldRejectMistypedSettingForBundledExecutable() throws Exception {
+        RedisServer.builder().setting("maxmemroy 64mb").build();
+    }
+
+    @Test
+    public void shouldPassUnknownSettingsToOtherExecutables() throws Exception {
+        //given
+        RedisExecProvider customProvider = RedisExecProvider.defaultProvider()
+                .override(OS.UNIX, Architecture.x86, Resources.getResource("redis-server-" + RedisExecProvider.redisVersion + "-linux-386").getFile())
+                .override(OS.UNIX, Architecture.x86_64, Resources.getResource("redis-server-" + RedisExecProvider.redisVersion + "-linux-amd64").getFile())
+                .override(OS.UNIX, Architecture.arm64, Resources.getResource("redis-server-" + RedisExecProvider.redisVersion + "-linux-arm64").getFile())
+                .override(OS.MAC_OS_X, Architecture.x86_64, Resources.getResource("redis-server-" + RedisExecProvider.redisVersion + "-darwin-amd64").getFile())
+                .override(OS.MAC_OS_X, Architecture.arm64, Resources.getResource("redis-server-" + RedisExecProvider.redisVersion + "-darwin-arm64").getFile());
+
+        //when
+        redisServer = RedisServer.builder()
+                .redisExecProvider(customProvider)
+                .setting("some-future-directive yes")
+                .build();
+
+        //then
+        assertTrue(new String(Files.readAllBytes(Paths.get(redisServer.args.get(1))), "UTF-8").contains("some-future-directive yes\n"));
+    }
+
+    @Test
+    public void shouldBecomeReadyWithLogLineReadinessStrategy() throws Exception {
+        redisServer = RedisServer.builder()
+                .port(6379)
+                .readinessStrategy(new LogLineReadinessStrategy(".*Ready to accept connections.*"))
+                .build();
+        redisServer.start();
+        try {
+            assertTrue(redisServer.isActive());
+        } finally {
+            redisServer.stop();
+        }
+    }
+
+    @Test(expected = EmbeddedRedisException.class)
+    public void shouldFailWhenPortIsTakenByAnotherInstance() throws Exception {
+        RedisServer other = new RedisServer(6379);
+        other.start();
+        try {
+            redisServer = new RedisServer(6379);
+            redisServer.start();
+        } finally {
+            other.stop();
+        }
+    }
+
+    @Test
+    public void discoveredPortShouldSkipPortsTakenByAnotherInstance() throws Exception {
+        //given
+        RedisServer other = new RedisServer(6379);
+        other.start();
+        redisServer = RedisServer.builder()
+                .discoverPort(new PredefinedPortProvider(Arrays.asList(6379, 6380)))
+                .build();
+        assertTrue(redisServer.ports().isEmpty());
+
+        try {
+            //when
+            redisServer.start();
+
+            //then
+            assertEquals(Collections.singletonList(6380), redisServer.ports());
+            try (Jedis jedis = new Jedis("localhost", 6380)) {
+                assertEquals("6380", jedis.configGet("port").get(1));
+            }
+        } finally {
+            redisServer.stop();
+            other.stop();
+        }
+    }
+
+    @Test
+    public void discoveredPortShouldBeReadFromLogoAndNameTheInstance() throws Exception {
+        //given
+        redisServer = RedisServer.builder()
+                .discoverPort(new PredefinedPortProvider(Collections.singletonList(6381)))
+                .setting("always-show-logo yes")
+                .build();
+
+        try {
+            //when
+            redisServer.start();
+
+            //then
+            assertEquals(Collections.singletonList(6381), redisServer.ports());
+            assertEquals("RedisServer:6381", redisServer.recentLogs(1).get(0).source());
+        } finally {
+            redisServer.stop();
+        }
+    }
+
+    @Test
+    public void startupReportShouldRecordEveryPhase() throws Exception {
+        redisServer = RedisServer.builder()
+                .port(6379)
+                .readinessStrategy(new LogLineReadinessStrategy(".*Ready to accept connections.*"))
+                .build();
+        redisServer.start();
+        try {
+            StartupReport report = redisServer.startupReport();
+            for (StartupPhase phase : StartupPhase.values()) {
+                assertEquals(phase + " should be recorded", phase != StartupPhase.SEED && phase != StartupPhase.QUEUE && phase != StartupPhase.REPLICA_SYNC,
+                        report.duration(phase).isPresent());
+            }
+            assertFalse(report.overrunPhase().isPresent());
+        } finally {
+            redisServer.stop();
+        }
+    }
+
+    @Test(timeout = 30000L)
+    public void replicaShouldHoldMastersDataWhenStarted() throws Exception {
+        redisServer = RedisServer.builder().port(6379).build();
+        RedisServer replica = RedisServer.builder().port(6380).slaveOf("localhost", 6379).awaitReplicaSync(true).build();
+        redisServer.start();
+        try {
+            try (Jedis jedis = new Jedis("localhost", 6379)) {
+                for (int i = 0; i < 1000; i++) {
+                    jedis.set("key" + i, "value" + i);
+                }
+            }
+
+            replica.start();
+
+            try (Jedis jedis = new Jedis("localhost", 6380)) {
+                assertEquals(1000L, jedis.dbSize().longValue());
+            }
+            assertTrue(replica.startupReport().duration(StartupPhase.REPLICA_SYNC).isPresent());
+        } finally {
+            replica.stop();
+            redisServer.stop();
+        }
+    }
+
+    @Test(timeout = 10000L)
+    public void shouldKillInstanceThatDoesNotBecomeReadyBeforeStartupTimeout() throws Exception {
+        redisServer = RedisServer.builder()
+                .port(6379)
+                .readinessStrategy(new LogLineReadinessStrategy("never printed"))
+                .startupTimeoutMilliseconds(500L)
+                .build();
+        try {
+            redisServer.start();
+            fail("Start should time out");
+        } catch (EmbeddedRedisException e) {
+            assertEquals(StartupPhase.READY, redisServer.startupReport().overrunPhase().get());
+        }
+        assertFalse(redisServer.isActive());
+
+        // the port must have been released by the killed process
+        RedisServer other = new RedisServer(6379);
+        other.start();
+        other.stop();
+    }
+
+    @Test(timeout = 10000L)
+    public void logSinkShouldReceiveOutputWrittenAfterStartup() throws Exception {
+        //given
+        final List<RedisLogLine> lines = new CopyOnWriteArrayList<RedisLogLine>();
+        redisServer = RedisServer.builder()
+                .port(6379)
+                .logSink(lines::add)
+                .build();
+        redisServer.start();
+
+        try {
+            //when
+            try (Jedis jedis = new Jedis("localhost", 6379)) {
+                jedis.save();
+            }
+
+            //then
+            while (lines.stream().noneMatch(line -> line.text().contains("DB saved on disk"))) {
+                Thread.sleep(10L);
+            }
+            assertEquals("RedisServer:6379", lines.get(0).source());
+            assertEquals(0L, redisServer.droppedLogLines());
+        } finally {
+            redisServer.stop();
+        }
+    }
+
+    @Test(timeout = 10000L)
+    public void recentLogsShouldReturnOutputOfThisInstance() throws Exception {
+        //given
+        final Instant beforeStart = Instant.now().minusMillis(1);
+        redisServer = new RedisServer(6379);
+        RedisServer other = new RedisServer(6380);
+
+        //when
+        redisServer.start();
+        other.start();
+
+        //then
+        try {
+            while (redisServer.recentLogs(1).isEmpty()
+                    || !redisServer.recentLogs(1).get(0).text().contains("Ready to accept connections")) {
+                Thread.sleep(10L);
+            }
+            List<RedisLogLine> lines = redisServer.logsSince(beforeStart);
+            assertTrue(lines.size() > 1);
+            assertTrue(lines.stream().allMatch(line -> line.source().equals("RedisServer:6379")));
+            assertTrue(lines.stream().anyMatch(line -> line.text().contains("port=6379")));
+            assertEquals(lines.subList(lines.size() - 2, lines.size()).toString(), redisServer.recentLogs(2).toString());
+            assertTrue(redisServer.logsSince(Instant.now().plusSeconds(1)).isEmpty());
+        } finally {
+            redisServer.stop();
+            other.stop();
+        }
+    }
+
+    @Test(timeout = 10000L)
+    public void unixSocketOnlyServerShouldAcceptCommandsOnItsSocket() throws Exception {
+        //given
+        redisServer = RedisServer.builder()
+                .port(0)
+                .unixSocket(Paths.get("redis.sock"))
+                .stopStrategy(new ShutdownNoSaveStopStrategy())
+                .build();
+
+        //when
+        redisServer.start();
+
+        //then
+        try {
+            assertTrue(redisServer.ports().isEmpty());
+            assertEquals(1, redisServer.unixSockets().size());
+            Path socket = redisServer.unixSockets().get(0);
+            assertTrue(socket.toFile().exists());
+            if (UnixSockets.isSupported()) {
+                try (RespClient client = RespClient.unixSocket(socket)) {
+                    assertEquals("OK", client.call("SET", "abc", "1"));
+                    assertEquals("1", client.call("GET", "abc"));
+                }
+            }
+        } finally {
+            redisServer.stop();
+        }
+        assertFalse(redisServer.stopReport().get().isKilled());
+    }
+
+    @Test(timeout = 10000L)
+    public void shutdownNoSaveShouldStopWithoutWritingSnapshot() throws Exception {
+        //given
+        redisServer = RedisServer.builder().port(6379).build();
+        redisServer.start();
+        try (Jedis jedis = new Jedis("localhost", 6379)) {
+            jedis.set("abc", "1");
+        }
+
+        //when
+        redisServer.stop(new ShutdownNoSaveStopStrategy());
+
+        //then
+        assertFalse(redisServer.isActive());
+        assertFalse(new File(redisServer.workingDirectory(), "dump.rdb").exists());
+        StopReport report = redisServer.stopReport().get();
+        assertEquals("ShutdownNoSaveStopStrategy", report.strategy());
+        assertFalse(report.isKilled());
+        // the process was not signalled, so its shutdown output was captured
+        while (redisServer.recentLogs(1).isEmpty() || !redisServer.recentLogs(1).get(0).text().contains("ready to exit")) {
+            Thread.sleep(10L);
+        }
+    }
+
+    @Test
+    public void defaultStopShouldTerminateGracefully() throws Exception {
+        //given
+        redisServer = RedisServer.builder().port(6379).build();
+        redisServer.start();
+        try (Jedis jedis = new Jedis("localhost", 6379)) {
+            jedis.set("abc", "1");
+        }
+
+        //when
+        redisServer.stop();
+
+        //then
+        assertTrue(new File(redisServer.workingDirectory(), "dump.rdb").exists());
+        assertEquals("TerminateStopStrategy", redisServer.stopReport().get().strategy());
+    }
+
+    @Test
+    public void killStopShouldReportKilledInstance() throws Exception {
+        //given
+        redisServer = RedisServer.builder().port(6379).stopStrategy(new KillStopStrategy()).build();
+        redisServer.start();
+
+        //when
+        redisServer.stop();
+
+        //then
+        assertFalse(redisServer.isActive());
+        assertTrue(redisServer.stopReport().get().isKilled());
+        RedisServer other = new RedisServer(6379);
+        other.start();
+        other.stop();
+    }
+
+    @Test
+    public void seededServersShouldLoadFixtureAtBoot() throws Exception {
+        //given
+        RedisServer fixtureServer = new RedisServer(6379);
+        fixtureServer.start();
+        try (Jedis jedis = new Jedis("localhost", 6379)) {
+            jedis.set("fixture", "loaded");
+            jedis.save();
+        } finally {
+            fixtureServer.stop();
+        }
+        Path fixture = new File(fixtureServer.workingDirectory(), "dump.rdb").toPath();
+
+        //when
+        RedisServer first = RedisServer.builder().port(6380).seedFrom(fixture).build();
+        RedisServer second = RedisServer.builder().port(6381).seedFrom(fixture).build();
+        first.start();
+        second.start();
+
+        //then
+        try (Jedis firstClient = new Jedis("localhost", 6380);
+             Jedis secondClient = new Jedis("localhost", 6381)) {
+            firstClient.set("fixture", "changed");
+            firstClient.save();
+            assertEquals("loaded", secondClient.get("fixture"));
+            assertTrue(first.startupReport().duration(StartupPhase.SEED).isPresent());
+        } finally {
+            first.stop();
+            second.stop();
+        }
+        // saving replaced the linked file rather than writing through it
+        RedisServer restarted = RedisServer.builder().port(6380).seedFrom(fixture).build();
+        restarted.start();
+        try (Jedis jedis = new Jedis("localhost", 6380)) {
+            assertEquals("loaded", jedis.get("fixture"));
+        } finally {
+            restarted.stop();
+        }
+    }
+
+    @Test(expected = RedisBuildingException.class)
+    public void shouldFailWhenSeedDoesNotExist() throws Exception {
+        RedisServer.builder().seedFrom(new File("does-not-exist.rdb").toPath()).build();
+    }
+
     @Test
     public void shouldOverrideDefaultExecutable() throws Exception {
         RedisExecProvider customProvider = RedisExecProvider.defaultProvider()
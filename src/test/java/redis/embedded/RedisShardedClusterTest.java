@@ -0,0 +1,108 @@
+package redis.embedded;
+
+import com.google.common.collect.Range;
+import com.google.common.collect.TreeRangeSet;
+import org.junit.After;
+import org.junit.Test;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisCluster;
+
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class RedisShardedClusterTest {
+    private RedisShardedCluster cluster;
+
+    @After
+    public void tearDown() throws Exception {
+        if (cluster != null) {
+            cluster.stop();
+        }
+    }
+
+    @Test(timeout = 60000L)
+    public void shouldFormClusterWithEvenlySplitSlots() throws Exception {
+        //given
+        cluster = RedisShardedCluster.builder()
+                .shards(3)
+                .replicasPerShard(1)
+                .startingPort(7100)
+                .build();
+
+        //when
+        cluster.start();
+
+        //then
+        assertTrue(cluster.isActive());
+        assertEquals(6, cluster.nodes().size());
+        TreeRangeSet<Integer> allSlots = TreeRangeSet.create();
+        for (RedisClusterShard shard : cluster.shards()) {
+            assertEquals(40, shard.masterId().length());
+            assertEquals(1, shard.replicaIds().size());
+            assertEquals(1, shard.slots().asRanges().size());
+            allSlots.addAll(shard.slots());
+            try (Jedis replica = new Jedis("localhost", shard.replicas().get(0).ports().get(0))) {
+                assertEquals(shard.masterId(), RedisShardedCluster.followedMaster(replica.clusterNodes()));
+            }
+        }
+        assertEquals(Collections.singleton(Range.closedOpen(0, RedisShardedCluster.SLOTS)), allSlots.asRanges());
+    }
+
+    @Test(timeout = 60000L)
+    public void keysShouldLandOnTheShardThatOwnsTheirSlot() throws Exception {
+        //given
+        cluster = RedisShardedCluster.builder()
+                .shards(3)
+                .startingPort(7200)
+                .build();
+        cluster.start();
+
+        //when
+        try (JedisCluster jedis = new JedisCluster(new HostAndPort("localhost", 7200))) {
+            for (int i = 0; i < 30; i++) {
+                jedis.set("key" + i, "value" + i);
+            }
+        }
+
+        //then
+        for (int i = 0; i < 30; i++) {
+            RedisClusterShard shard = cluster.shardForKey("key" + i);
+            try (Jedis jedis = new Jedis("localhost", shard.masterPort())) {
+                assertEquals("value" + i, jedis.get("key" + i));
+            }
+        }
+    }
+
+    @Test(timeout = 60000L)
+    public void shouldFormAgainAfterRestart() throws Exception {
+        //given
+        cluster = RedisShardedCluster.builder()
+                .shards(2)
+                .replicasPerShard(1)
+                .startingPort(7300)
+                .build();
+        cluster.start();
+        String masterId = cluster.shards().get(0).masterId();
+
+        //when
+        cluster.stop();
+        cluster.start();
+
+        //then
+        assertEquals(masterId, cluster.shards().get(0).masterId());
+        assertTrue(cluster.shards().get(0).ownsSlot(0));
+    }
+
+    @Test
+    public void shouldComputeRedisHashSlots() {
+        assertEquals(12182, RedisShardedCluster.slot("foo"));
+        assertEquals(12739, RedisShardedCluster.slot("123456789"));
+        assertEquals(3443, RedisShardedCluster.slot("{user1000}.following"));
+        assertEquals(RedisShardedCluster.slot("{user1000}.following"), RedisShardedCluster.slot("{user1000}.followers"));
+        // an empty hash tag does not count, so the whole key is hashed
+        assertEquals(8029, RedisShardedCluster.slot("{}.a"));
+        assertEquals(12094, RedisShardedCluster.slot("{}.b"));
+    }
+}
@@ -0,0 +1,68 @@
+package redis.embedded;
+
+import org.junit.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.junit.Assert.assertEquals;
+
+public class WriteOutagesTest {
+    private static final Instant T0 = Instant.parse("2026-01-01T00:00:00Z");
+
+    @Test
+    public void longestShouldKeepTheLongestOfSeveralOutages() {
+        //given
+        WriteOutages outages = new WriteOutages();
+        outages.succeeded(at(0));
+        outages.failed(at(100));
+        outages.succeeded(at(300));
+        outages.failed(at(400));
+        outages.failed(at(500));
+        outages.succeeded(at(1400));
+        outages.failed(at(1500));
+        outages.succeeded(at(1600));
+
+        //when
+        Duration longest = outages.longest(at(0), at(2000));
+
+        //then
+        assertEquals(Duration.ofMillis(1100), longest);
+    }
+
+    @Test
+    public void longestShouldOnlyCountOutagesFromTheGivenInstantOn() {
+        //given
+        WriteOutages outages = new WriteOutages();
+        outages.succeeded(at(0));
+        outages.failed(at(100));
+        outages.succeeded(at(1100));
+        outages.failed(at(1300));
+        outages.succeeded(at(1500));
+
+        //when
+        Duration longest = outages.longest(at(1000), at(2000));
+
+        //then
+        assertEquals(Duration.ofMillis(400), longest);
+    }
+
+    @Test
+    public void longestShouldLetAnOngoingOutageLastUntilNow() {
+        //given
+        WriteOutages outages = new WriteOutages();
+        outages.failed(at(100));
+        outages.succeeded(at(200));
+        outages.failed(at(300));
+
+        //when
+        Duration longest = outages.longest(at(0), at(1000));
+
+        //then
+        assertEquals(Duration.ofMillis(800), longest);
+    }
+
+    private static Instant at(long millis) {
+        return T0.plusMillis(millis);
+    }
+}
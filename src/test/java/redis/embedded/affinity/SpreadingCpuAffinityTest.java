@@ -0,0 +1,134 @@
+package redis.embedded.affinity;
+
+import com.google.common.collect.ImmutableSortedSet;
+import org.junit.Test;
+import redis.embedded.CpuSet;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SpreadingCpuAffinityTest {
+
+    /**
+     * Two nodes of two cores with two hardware threads each: 0/2 and 1/3 on node 0, 4/6 and 5/7 on node 1.
+     */
+    private static CpuTopology twoNodes() {
+        return new CpuTopology(Arrays.asList(
+                new CpuTopology.Cpu(0, 0, 0), new CpuTopology.Cpu(1, 0, 0),
+                new CpuTopology.Cpu(2, 0, 1), new CpuTopology.Cpu(3, 0, 1),
+                new CpuTopology.Cpu(4, 1, 0), new CpuTopology.Cpu(5, 1, 0),
+                new CpuTopology.Cpu(6, 1, 1), new CpuTopology.Cpu(7, 1, 1)));
+    }
+
+    @Test
+    public void shouldSpreadInstancesOverNodesAndCores() {
+        //given
+        SpreadingCpuAffinity affinity = new SpreadingCpuAffinity(twoNodes(), true);
+
+        //when
+        CpuSet first = affinity.acquire(1).get();
+        CpuSet second = affinity.acquire(1).get();
+        CpuSet third = affinity.acquire(1).get();
+        CpuSet fourth = affinity.acquire(1).get();
+        CpuSet fifth = affinity.acquire(1).get();
+
+        //then
+        assertEquals(new CpuSet(Collections.singleton(0), Collections.singleton(0)), first);
+        assertEquals(new CpuSet(Collections.singleton(4), Collections.singleton(1)), second);
+        assertEquals("1", third.toList());
+        assertEquals("5", fourth.toList());
+        assertEquals("hyper-threading siblings come last", "2", fifth.toList());
+    }
+
+    @Test
+    public void shouldHandOutDisjointSetsUntilCpusRunOut() {
+        //given
+        SpreadingCpuAffinity affinity = new SpreadingCpuAffinity(twoNodes(), true);
+
+        //when
+        CpuSet first = affinity.acquire(4).get();
+        CpuSet second = affinity.acquire(4).get();
+        CpuSet shared = affinity.acquire(2).get();
+
+        //then
+        assertEquals("0-3", first.toList());
+        assertEquals(ImmutableSortedSet.of(0), first.numaNodes());
+        assertEquals("4-7", second.toList());
+        assertEquals(2, shared.cpus().size());
+    }
+
+    @Test
+    public void shouldReuseReleasedCpus() {
+        //given
+        SpreadingCpuAffinity affinity = new SpreadingCpuAffinity(twoNodes(), true);
+        CpuSet first = affinity.acquire(2).get();
+        affinity.acquire(6);
+
+        //when
+        affinity.release(first);
+        CpuSet next = affinity.acquire(2).get();
+
+        //then
+        assertEquals(first.cpus(), next.cpus());
+    }
+
+    @Test
+    public void shouldSpanNodesOnlyWhenOneIsTooSmall() {
+        //given
+        SpreadingCpuAffinity affinity = new SpreadingCpuAffinity(twoNodes(), true);
+
+        //when
+        CpuSet large = affinity.acquire(6).get();
+
+        //then
+        Set<Integer> node0 = new HashSet<Integer>(Arrays.asList(0, 1, 2, 3));
+        assertTrue(large.cpus().containsAll(node0));
+        assertEquals(ImmutableSortedSet.of(0, 1), large.numaNodes());
+    }
+
+    @Test
+    public void shouldLeaveInstancesUnpinnedWithoutPinningSupport() {
+        assertFalse(new SpreadingCpuAffinity(twoNodes(), false).acquire(1).isPresent());
+    }
+
+    @Test
+    public void shouldDetectTopologyFromSysfs() throws Exception {
+        //given
+        Path sysfs = Files.createTempDirectory("sysfs");
+        write(sysfs.resolve("node/node0/cpulist"), "0-1\n");
+        write(sysfs.resolve("node/node1/cpulist"), "2-3\n");
+        write(sysfs.resolve("cpu/cpu1/topology/thread_siblings_list"), "0-1\n");
+        Path status = sysfs.resolve("status");
+        write(status, "Name:\tjava\nCpus_allowed_list:\t1-3\n");
+
+        //when
+        CpuTopology topology = CpuTopology.detect(sysfs, status);
+
+        //then
+        assertEquals(3, topology.cpus().size());
+        assertEquals(1, topology.cpus().get(0).id);
+        assertEquals(0, topology.cpus().get(0).node);
+        assertEquals(1, topology.cpus().get(0).siblingRank);
+        assertEquals(1, topology.cpus().get(2).node);
+    }
+
+    @Test
+    public void cpuListsShouldRoundTrip() {
+        CpuSet cpuSet = new CpuSet(CpuSet.parseList("0-3,8,10-11"), Collections.<Integer>emptySet());
+        assertEquals("0-3,8,10-11", cpuSet.toList());
+    }
+
+    private static void write(Path file, String contents) throws Exception {
+        Files.createDirectories(file.getParent());
+        Files.write(file, contents.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,130 @@
+package redis.embedded.ports;
+
+import com.google.common.io.Files;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import redis.embedded.exceptions.RedisBuildingException;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class LeasedPortProviderTest {
+    private File dir;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDir();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(dir);
+    }
+
+    @Test
+    public void providersSharingDirectoryShouldHandOutDisjointBlocks() throws Exception {
+        //given
+        final LeasedPortProvider first = new LeasedPortProvider(dir.toPath(), 21000, 21099, 10);
+        final LeasedPortProvider second = new LeasedPortProvider(dir.toPath(), 21000, 21099, 10);
+
+        try {
+            //when
+            final Set<Integer> firstPorts = new HashSet<Integer>();
+            final Set<Integer> secondPorts = new HashSet<Integer>();
+            for (int i = 0; i < 15; i++) {
+                firstPorts.add(first.next());
+                secondPorts.add(second.next());
+            }
+
+            //then
+            assertEquals(15, firstPorts.size());
+            assertEquals(15, secondPorts.size());
+            for (Integer port : firstPorts) {
+                assertFalse(secondPorts.contains(port));
+                assertTrue(port >= 21000 && port <= 21099);
+            }
+        } finally {
+            first.release();
+            second.release();
+        }
+    }
+
+    @Test
+    public void releasedBlocksShouldBeLeasedAgain() throws Exception {
+        //given
+        final LeasedPortProvider first = new LeasedPortProvider(dir.toPath(), 21000, 21009, 10);
+        first.next();
+        first.release();
+
+        //when
+        final LeasedPortProvider second = new LeasedPortProvider(dir.toPath(), 21000, 21009, 10);
+        try {
+            final int port = second.next();
+
+            //then
+            assertTrue(port >= 21000 && port <= 21009);
+        } finally {
+            second.release();
+        }
+    }
+
+    @Test
+    public void nextShouldSkipPortsInUse() throws Exception {
+        //given
+        final LeasedPortProvider provider = new LeasedPortProvider(dir.toPath(), 21000, 21009, 10);
+        try (ServerSocket taken = new ServerSocket()) {
+            taken.bind(new InetSocketAddress(21000));
+
+            //when
+            final int port = provider.next();
+
+            //then
+            assertTrue(port > 21000 && port <= 21009);
+        } finally {
+            provider.release();
+        }
+    }
+
+    @Test(expected = RedisBuildingException.class)
+    public void nextShouldFailWhenEveryBlockIsLeased() throws Exception {
+        final LeasedPortProvider first = new LeasedPortProvider(dir.toPath(), 21000, 21001, 2);
+        final LeasedPortProvider second = new LeasedPortProvider(dir.toPath(), 21000, 21001, 2);
+        try {
+            first.next();
+            second.next();
+        } finally {
+            first.release();
+            second.release();
+        }
+    }
+
+    @Test
+    public void nextShouldReportLeaseFilesThatCannotBeOpened() throws Exception {
+        //given
+        assertTrue(new File(dir, "21000.lease").mkdir());
+        final LeasedPortProvider provider = new LeasedPortProvider(dir.toPath(), 21000, 21009, 10);
+
+        try {
+            //when
+            provider.next();
+            fail();
+        } catch (RedisBuildingException e) {
+            //then
+            assertTrue(e.getMessage().contains("21000.lease"));
+            assertTrue(e.getCause() instanceof IOException);
+        } finally {
+            provider.release();
+        }
+    }
+}
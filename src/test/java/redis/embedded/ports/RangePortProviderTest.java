@@ -0,0 +1,29 @@
+package redis.embedded.ports;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RangePortProviderTest {
+
+    @Test
+    public void nextShouldCycleThroughEveryPortOfTheRange() throws Exception {
+        //given
+        final RangePortProvider provider = new RangePortProvider(7000, 7009);
+
+        //when
+        final Set<Integer> ports = new HashSet<Integer>();
+        for (int i = 0; i < 20; i++) {
+            final int port = provider.next();
+            assertTrue(port >= 7000 && port <= 7009);
+            ports.add(port);
+        }
+
+        //then
+        assertEquals(10, ports.size());
+    }
+}
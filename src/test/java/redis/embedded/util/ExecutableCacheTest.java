@@ -0,0 +1,145 @@
+package redis.embedded.util;
+
+import com.google.common.io.Files;
+import com.google.common.io.Resources;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ExecutableCacheTest {
+    private static final String RESOURCE = "redis-2.x-standalone-startup-output.txt";
+
+    private File cacheDir;
+    private String previousCacheDir;
+
+    @Before
+    public void setUp() throws Exception {
+        cacheDir = Files.createTempDir();
+        previousCacheDir = System.getProperty(ExecutableCache.CACHE_DIR_PROPERTY);
+        System.setProperty(ExecutableCache.CACHE_DIR_PROPERTY, cacheDir.getAbsolutePath());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (previousCacheDir == null) {
+            System.clearProperty(ExecutableCache.CACHE_DIR_PROPERTY);
+        } else {
+            System.setProperty(ExecutableCache.CACHE_DIR_PROPERTY, previousCacheDir);
+        }
+        FileUtils.deleteDirectory(cacheDir);
+    }
+
+    @Test
+    public void getShouldExtractExecutableCopyOfResource() throws Exception {
+        //when
+        final File file = ExecutableCache.get(RESOURCE, "cache-test-1");
+
+        //then
+        assertTrue(file.getAbsolutePath().startsWith(cacheDir.getAbsolutePath()));
+        assertTrue(file.canExecute());
+        assertArrayEquals(Resources.toByteArray(Resources.getResource(RESOURCE)), Files.toByteArray(file));
+    }
+
+    @Test
+    public void getShouldReuseCachedFile() throws Exception {
+        //given
+        final File first = ExecutableCache.get(RESOURCE, "cache-test-2");
+        final long lastModified = first.lastModified();
+
+        //when
+        final File second = ExecutableCache.get(RESOURCE, "cache-test-2");
+
+        //then
+        assertEquals(first, second);
+        assertEquals(lastModified, second.lastModified());
+    }
+
+    @Test
+    public void getShouldExtractAgainWhenCachedFileWasRemoved() throws Exception {
+        //given
+        final File first = ExecutableCache.get(RESOURCE, "cache-test-3");
+        assertTrue(first.delete());
+
+        //when
+        final File second = ExecutableCache.get(RESOURCE, "cache-test-3");
+
+        //then
+        assertArrayEquals(Resources.toByteArray(Resources.getResource(RESOURCE)), Files.toByteArray(second));
+    }
+
+    @Test
+    public void getShouldExtractAgainWhenCachedFileIsCorrupted() throws Exception {
+        //given
+        final byte[] expected = Resources.toByteArray(Resources.getResource(RESOURCE));
+        final File reference = ExecutableCache.get(RESOURCE, "cache-test-4");
+        final File corrupted = new File(cacheDir, "cache-test-5/" + reference.getParentFile().getName() + "/" + RESOURCE);
+        final byte[] garbage = expected.clone();
+        garbage[0] ^= 0x7f;
+        Files.createParentDirs(corrupted);
+        Files.write(garbage, corrupted);
+        assertTrue(corrupted.setExecutable(true));
+
+        //when
+        final File file = ExecutableCache.get(RESOURCE, "cache-test-5");
+
+        //then
+        assertEquals(corrupted, file);
+        assertArrayEquals(expected, Files.toByteArray(file));
+    }
+
+    @Test
+    public void getShouldExtractAgainWhenCachedFileWasReplacedInTheSameJvm() throws Exception {
+        //given
+        final byte[] expected = Resources.toByteArray(Resources.getResource(RESOURCE));
+        final File first = ExecutableCache.get(RESOURCE, "cache-test-6");
+        final byte[] forged = expected.clone();
+        forged[forged.length - 1] ^= 0x7f;
+        Files.write(forged, first);
+
+        //when
+        final File second = ExecutableCache.get(RESOURCE, "cache-test-6");
+
+        //then
+        assertEquals(first, second);
+        assertArrayEquals(expected, Files.toByteArray(second));
+    }
+
+    @Test
+    public void cacheDirectoryShouldBeAccessibleToOwnerOnly() throws Exception {
+        //given
+        java.nio.file.Files.setPosixFilePermissions(cacheDir.toPath(), PosixFilePermissions.fromString("rwxr-xr-x"));
+
+        //when
+        final Path directory = ExecutableCache.cacheDirectory();
+
+        //then
+        assertEquals(cacheDir.toPath(), directory);
+        assertEquals(PosixFilePermissions.fromString("rwx------"), java.nio.file.Files.getPosixFilePermissions(directory));
+    }
+
+    @Test
+    public void cacheDirectoryShouldNotBeUsedWhenOthersCanWriteIt() throws Exception {
+        //given
+        java.nio.file.Files.setPosixFilePermissions(cacheDir.toPath(), PosixFilePermissions.fromString("rwxrwxrwx"));
+
+        //when
+        final File file = ExecutableCache.get(RESOURCE, "cache-test-7");
+
+        //then
+        assertNotEquals(cacheDir.toPath(), ExecutableCache.cacheDirectory());
+        assertFalse(file.getAbsolutePath().startsWith(cacheDir.getAbsolutePath()));
+        assertEquals(PosixFilePermissions.fromString("rwx------"),
+                java.nio.file.Files.getPosixFilePermissions(ExecutableCache.cacheDirectory()));
+    }
+}
@@ -0,0 +1,58 @@
+package redis.embedded.util;
+
+import com.google.common.io.Files;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FileLinksTest {
+    private File dir;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDir();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(dir);
+    }
+
+    @Test
+    public void materializeShouldHardLinkWithinOneFileSystem() throws Exception {
+        //given
+        final Path source = new File(dir, "source.rdb").toPath();
+        Files.asCharSink(source.toFile(), StandardCharsets.UTF_8).write("fixture");
+        final Path target = new File(dir, "target.rdb").toPath();
+
+        //when
+        final FileLinks.Method method = FileLinks.materialize(source, target);
+
+        //then
+        assertEquals(FileLinks.Method.HARD_LINK, method);
+        assertTrue(java.nio.file.Files.isSameFile(source, target));
+    }
+
+    @Test
+    public void materializeShouldReplaceExistingTarget() throws Exception {
+        //given
+        final Path source = new File(dir, "source.rdb").toPath();
+        Files.asCharSink(source.toFile(), StandardCharsets.UTF_8).write("fixture");
+        final Path target = new File(dir, "target.rdb").toPath();
+        Files.asCharSink(target.toFile(), StandardCharsets.UTF_8).write("stale");
+
+        //when
+        FileLinks.materialize(source, target);
+
+        //then
+        assertEquals("fixture", Files.asCharSource(target.toFile(), StandardCharsets.UTF_8).read());
+    }
+}
@@ -0,0 +1,48 @@
+package redis.embedded.util;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assume.assumeTrue;
+
+public class OSDetectorTest {
+
+    @Test
+    public void parseArchitectureShouldMapJvmArchitectureNames() throws Exception {
+        assertEquals(Architecture.x86_64, OSDetector.parseArchitecture("amd64"));
+        assertEquals(Architecture.x86_64, OSDetector.parseArchitecture("x86_64"));
+        assertEquals(Architecture.arm64, OSDetector.parseArchitecture("aarch64"));
+        assertEquals(Architecture.x86, OSDetector.parseArchitecture("i386"));
+        assertNull(OSDetector.parseArchitecture("ppc64le"));
+        assertNull(OSDetector.parseArchitecture(null));
+    }
+
+    @Test
+    public void getElfArchitectureShouldAgreeWithJvmArchitectureOnLinux() throws Exception {
+        final Path jvm = Paths.get("/proc/self/exe");
+        assumeTrue(Files.exists(jvm));
+
+        assertEquals(OSDetector.parseArchitecture(System.getProperty("os.arch")), OSDetector.getElfArchitecture(jvm));
+    }
+
+    @Test
+    public void getElfArchitectureShouldIgnoreNonElfFiles() throws Exception {
+        final File notElf = File.createTempFile("embedded-redis-not-elf", ".txt");
+        notElf.deleteOnExit();
+        Files.write(notElf.toPath(), "definitely not an executable".getBytes());
+
+        assertNull(OSDetector.getElfArchitecture(notElf.toPath()));
+    }
+
+    @Test
+    public void detectShouldBeComputedOncePerJvm() throws Exception {
+        assertSame(OsArchitecture.detect(), OsArchitecture.detect());
+    }
+}
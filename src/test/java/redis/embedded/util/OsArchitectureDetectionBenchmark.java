@@ -0,0 +1,41 @@
+package redis.embedded.util;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the per-build cost of platform detection with the {@code uname -m} fork it replaced. Run with
+ * {@code mvn test-compile exec:java -Dexec.mainClass=redis.embedded.util.OsArchitectureDetectionBenchmark
+ * -Dexec.classpathScope=test}.
+ */
+public class OsArchitectureDetectionBenchmark {
+    private static final int WARMUP_ITERATIONS = 50;
+    private static final int ITERATIONS = 500;
+
+    public static void main(String[] args) throws Exception {
+        report("fork uname -m (before)", () -> {
+            Process proc = Runtime.getRuntime().exec("uname -m");
+            try (BufferedReader input = new BufferedReader(new InputStreamReader(proc.getInputStream()))) {
+                return input.readLine();
+            } finally {
+                proc.waitFor();
+            }
+        });
+        report("OSDetector.getArchitecture()", OSDetector::getArchitecture);
+        report("OsArchitecture.detect() (after)", OsArchitecture::detect);
+    }
+
+    private static void report(String name, Callable<?> detection) throws Exception {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            detection.call();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            detection.call();
+        }
+        long perCall = (System.nanoTime() - start) / ITERATIONS;
+        System.out.printf("%-35s %,12d ns/build (%d us)%n", name, perCall, TimeUnit.NANOSECONDS.toMicros(perCall));
+    }
+}